@@ -206,7 +206,7 @@ public abstract class BaseCameraActivity extends Activity implements OnPictureLi
         // 拍照及录像
         mbCapture = findViewById(R.id.mb_record);
         mbCapture.setMaxLongClickTime(mOptions.getMaxVideoRecordTime());
-        mbCapture.setOnMagicClickedListener(new MagicButton.OnMagicClickedListener() {
+        mbCapture.setOnMagicClickedListener(new MagicButton.OnLongClickPrepareListener() {
             @Override
             public void onClicked() {
                 if (mOptions.getCameraMode() == Camera.Options.CAMERA_MODE_VIDEO_INFINITE) {
@@ -220,6 +220,17 @@ public abstract class BaseCameraActivity extends Activity implements OnPictureLi
                 }
             }
 
+            @Override
+            public void onLongClickPrepare() {
+                // 长按等待期间提前准备录像器。
+                mCameraManager.prewarmVideoRecord();
+            }
+
+            @Override
+            public void onLongClickCancel() {
+                mCameraManager.cancelVideoRecordPrewarm();
+            }
+
             @Override
             public void onLongClickStart() {
                 startVideoRecord();
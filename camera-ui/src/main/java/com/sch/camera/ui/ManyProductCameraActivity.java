@@ -31,6 +31,7 @@ import com.sch.camera.ui.widget.RoundImageView;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by StoneHui on 2018/8/1.
@@ -47,6 +48,10 @@ public class ManyProductCameraActivity extends BaseCameraActivity implements Pro
      * 照片/视频缩略图文件地址列表。
      */
     private List<String> mProductThumbFileList = new ArrayList<>();
+    /**
+     * 文件序号。拍照回调可能在多个保存线程中同时执行，用序号保证文件名不重复。
+     */
+    private final AtomicInteger mFileIndex = new AtomicInteger();
 
     /**
      * 视图
@@ -109,18 +114,20 @@ public class ManyProductCameraActivity extends BaseCameraActivity implements Pro
 
     @Override
     public void onPictureTaken(File file, File thumbFile) {
-        // 保存并预览拍摄的图片。
-        saveProduct(file, mProductFileList);
-        saveProduct(thumbFile, mProductThumbFileList);
-        showProduct(BitmapFactory.decodeFile(thumbFile.getAbsolutePath()), false);
+        // 保存并预览拍摄的图片，没有缩略图时用原图代替。
+        String path = saveProduct(file);
+        if (thumbFile == null) {
+            showProduct(path, path, null, false);
+            return;
+        }
+        showProduct(path, saveProduct(thumbFile), BitmapFactory.decodeFile(thumbFile.getAbsolutePath()), false);
     }
 
     @Override
     public void onVideoRecorded(File file, File thumbFile) {
         // 保存并预览拍摄的视频。
-        saveProduct(file, mProductFileList);
-        saveProduct(thumbFile, mProductThumbFileList);
-        showProduct(BitmapFactory.decodeFile(thumbFile.getAbsolutePath()), true);
+        showProduct(saveProduct(file), saveProduct(thumbFile),
+                BitmapFactory.decodeFile(thumbFile.getAbsolutePath()), true);
     }
 
     @Override
@@ -135,30 +142,36 @@ public class ManyProductCameraActivity extends BaseCameraActivity implements Pro
     /**
      * 保存图片/视频。
      *
-     * @param file     待保存文件。
-     * @param saveList 保存到此列表。
+     * @param file 待保存文件。
+     * @return 保存后的文件地址。
      */
-    private void saveProduct(File file, List<String> saveList) {
+    private String saveProduct(File file) {
         String fileName = file.getName();
         final String fileNameSuffix = fileName.substring(fileName.indexOf("."));
-        final File targetFile = new File(cameraDir, System.currentTimeMillis() + fileNameSuffix);
-
-        saveList.add(targetFile.getAbsolutePath());
+        final File targetFile = new File(cameraDir,
+                System.currentTimeMillis() + "_" + mFileIndex.incrementAndGet() + fileNameSuffix);
 
         // 保存文件
         CameraFileUtils.copyFile(targetFile, file);
+
+        return targetFile.getAbsolutePath();
     }
 
     /**
      * 显示图片/视频。
      *
-     * @param thumb   缩略图。
-     * @param isVideo 是否是视频。
+     * @param path      照片/视频文件地址。
+     * @param thumbPath 缩略图文件地址。
+     * @param thumb     缩略图。
+     * @param isVideo   是否是视频。
      */
-    private void showProduct(final Bitmap thumb, final boolean isVideo) {
+    private void showProduct(final String path, final String thumbPath, final Bitmap thumb, final boolean isVideo) {
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
+                // 文件列表只在主线程中修改。
+                mProductFileList.add(path);
+                mProductThumbFileList.add(thumbPath);
                 tvCount.setText(String.valueOf(mProductFileList.size()));
                 ivVideoLogo.setVisibility(isVideo ? View.VISIBLE : View.GONE);
                 ivProduct.setImageBitmap(thumb);
@@ -65,6 +65,23 @@ public class MagicButton extends View implements Runnable {
         void onLongClickStop();
     }
 
+    /**
+     * 可选的长按准备监听。{@link #setOnMagicClickedListener(OnMagicClickedListener)} 传入的监听实现此接口时才会回调。
+     */
+    public interface OnLongClickPrepareListener extends OnMagicClickedListener {
+
+        /**
+         * 按下，可能即将开始长按。可以在这里做长按的准备工作。
+         */
+        void onLongClickPrepare();
+
+        /**
+         * 按下后没有进入长按就松开，在 {@link #onClicked()} 之前调用。
+         */
+        void onLongClickCancel();
+
+    }
+
     // 作为计时器时的计时颜色
     private final int COLOR_TIMING = Color.parseColor("#FF4500");
 
@@ -174,6 +191,9 @@ public class MagicButton extends View implements Runnable {
                 isTouching = true;
                 // 启动进入长按事件的任务。
                 if (isLongClickable()) {
+                    if (mOnMagicClickedListener instanceof OnLongClickPrepareListener) {
+                        ((OnLongClickPrepareListener) mOnMagicClickedListener).onLongClickPrepare();
+                    }
                     mHandler.postDelayed(this, 150L);
                 }
                 break;
@@ -184,8 +204,13 @@ public class MagicButton extends View implements Runnable {
                 mHandler.removeCallbacks(this);
                 if (isLongClicking) {
                     onLongClickStop();
-                } else if (isClickable()) {
-                    onClicked();
+                } else {
+                    if (isLongClickable() && mOnMagicClickedListener instanceof OnLongClickPrepareListener) {
+                        ((OnLongClickPrepareListener) mOnMagicClickedListener).onLongClickCancel();
+                    }
+                    if (isClickable()) {
+                        onClicked();
+                    }
                 }
                 isTouching = false;
             default:
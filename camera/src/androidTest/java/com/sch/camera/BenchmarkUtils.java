@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 性能对比测试共用的工具方法。
+ */
+final class BenchmarkUtils {
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * 生成纯灰色的 JPEG，放在直接缓冲区中，与 Image plane 一致。
+     *
+     * @param width  宽度。
+     * @param height 高度。
+     */
+    static ByteBuffer createJpeg(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(0xFF808080);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, output);
+        bitmap.recycle();
+        return toDirectBuffer(output.toByteArray());
+    }
+
+    /**
+     * 复制到直接缓冲区。
+     */
+    static ByteBuffer toDirectBuffer(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    /**
+     * 依次写入数据片段，不修改片段的 position。
+     */
+    static void writeSegments(ByteBuffer[] segments, File file) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            FileChannel channel = output.getChannel();
+            for (ByteBuffer segment : segments) {
+                ByteBuffer duplicate = segment.duplicate();
+                while (duplicate.hasRemaining()) {
+                    channel.write(duplicate);
+                }
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = input.read(bytes, offset, bytes.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
+            }
+        } finally {
+            input.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * 开始统计当前线程在 Java 堆上分配的字节数。
+     */
+    @SuppressWarnings("deprecation")
+    static void startAllocCounting() {
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+    }
+
+    /**
+     * 结束统计。
+     *
+     * @return 从 {@link #startAllocCounting()} 开始当前线程分配的字节数。
+     */
+    @SuppressWarnings("deprecation")
+    static long stopAllocCounting() {
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocSize();
+    }
+
+    /**
+     * 中位数，纳秒转换为毫秒。
+     */
+    static double median(long[] values) {
+        return medianOf(values) / 1e6;
+    }
+
+    /**
+     * 中位数。
+     */
+    static long medianOf(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.sch.camera.frame.FrameKernels;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static com.sch.camera.BenchmarkUtils.median;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 对比 {@link FrameKernels} 单线程和使用所有 CPU 核心时处理 1080p 预览帧的耗时。结果输出到 logcat，标签为 FrameKernelsBenchmark。
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameKernelsBenchmark {
+
+    private static final String TAG = "FrameKernelsBenchmark";
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 30;
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    private byte[] mNv21;
+    private FrameKernels mSingleKernels;
+    private FrameKernels mParallelKernels;
+
+    @Before
+    public void setUp() {
+        mNv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(1).nextBytes(mNv21);
+        mSingleKernels = new FrameKernels(1);
+        mParallelKernels = new FrameKernels();
+    }
+
+    @After
+    public void tearDown() {
+        mSingleKernels.release();
+        mParallelKernels.release();
+    }
+
+    @Test
+    public void compareNv21ToArgb() {
+        int[] single = new int[WIDTH * HEIGHT];
+        int[] parallel = new int[WIDTH * HEIGHT];
+        long[] singleNs = new long[ROUNDS];
+        long[] parallelNs = new long[ROUNDS];
+        for (int i = -WARMUP; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            mSingleKernels.nv21ToArgb(mNv21, WIDTH, HEIGHT, single);
+            long singleTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            mParallelKernels.nv21ToArgb(mNv21, WIDTH, HEIGHT, parallel);
+            long parallelTime = System.nanoTime() - start;
+            if (i >= 0) {
+                singleNs[i] = singleTime;
+                parallelNs[i] = parallelTime;
+            }
+        }
+        Log.i(TAG, String.format("nv21ToArgb %dx%d, 1 thread median %.2f ms, %d threads median %.2f ms",
+                WIDTH, HEIGHT, median(singleNs), Runtime.getRuntime().availableProcessors(), median(parallelNs)));
+        assertArrayEquals(single, parallel);
+    }
+
+    @Test
+    public void compareDownscale() {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        mSingleKernels.nv21ToLuma(mNv21, WIDTH, HEIGHT, luma);
+        int dstWidth = WIDTH / 4;
+        int dstHeight = HEIGHT / 4;
+        byte[] single = new byte[dstWidth * dstHeight];
+        byte[] parallel = new byte[dstWidth * dstHeight];
+        long[] boxNs = new long[ROUNDS];
+        long[] bilinearNs = new long[ROUNDS];
+        for (int i = -WARMUP; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            mParallelKernels.downscaleBox(luma, WIDTH, HEIGHT, parallel, dstWidth, dstHeight);
+            long box = System.nanoTime() - start;
+            start = System.nanoTime();
+            mParallelKernels.downscaleBilinear(luma, WIDTH, HEIGHT, parallel, dstWidth, dstHeight);
+            long bilinear = System.nanoTime() - start;
+            if (i >= 0) {
+                boxNs[i] = box;
+                bilinearNs[i] = bilinear;
+            }
+        }
+        Log.i(TAG, String.format("luma %dx%d -> %dx%d, box median %.2f ms, bilinear median %.2f ms",
+                WIDTH, HEIGHT, dstWidth, dstHeight, median(boxNs), median(bilinearNs)));
+        mSingleKernels.downscaleBilinear(luma, WIDTH, HEIGHT, single, dstWidth, dstHeight);
+        assertArrayEquals(single, parallel);
+    }
+
+}
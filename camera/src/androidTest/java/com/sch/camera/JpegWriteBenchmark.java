@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.sch.camera.BenchmarkUtils.createJpeg;
+import static com.sch.camera.BenchmarkUtils.median;
+import static com.sch.camera.BenchmarkUtils.medianOf;
+import static com.sch.camera.BenchmarkUtils.readFile;
+import static com.sch.camera.BenchmarkUtils.startAllocCounting;
+import static com.sch.camera.BenchmarkUtils.stopAllocCounting;
+import static com.sch.camera.BenchmarkUtils.writeSegments;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 对比保存 JPEG 的两种方式：复制 Image plane 到 byte[] 后用 FileOutputStream 写入（原实现），
+ * 以及直接用 FileChannel 写入 plane 的 ByteBuffer（现实现）。
+ * 记录耗时和 Java 堆上分配的字节数，结果输出到 logcat，标签为 JpegWriteBenchmark。
+ */
+@RunWith(AndroidJUnit4.class)
+public class JpegWriteBenchmark {
+
+    private static final String TAG = "JpegWriteBenchmark";
+    private static final int WARMUP = 3;
+    private static final int ROUNDS = 20;
+
+    private ByteBuffer mJpeg;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        // 模拟 12M 像素的照片，Image plane 是直接缓冲区。
+        mJpeg = createJpeg(4000, 3000);
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "jpeg_write_benchmark.jpg");
+    }
+
+    @After
+    public void tearDown() {
+        // noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void compareWrite() throws IOException {
+        long[] copyNs = new long[ROUNDS];
+        long[] channelNs = new long[ROUNDS];
+        long[] copyBytes = new long[ROUNDS];
+        long[] channelBytes = new long[ROUNDS];
+        for (int i = -WARMUP; i < ROUNDS; i++) {
+            startAllocCounting();
+            long start = System.nanoTime();
+            writeByCopy(mJpeg.duplicate(), mFile);
+            long copy = System.nanoTime() - start;
+            long copyAllocated = stopAllocCounting();
+            startAllocCounting();
+            start = System.nanoTime();
+            writeByChannel(mJpeg.duplicate(), mFile);
+            long channel = System.nanoTime() - start;
+            long channelAllocated = stopAllocCounting();
+            if (i >= 0) {
+                copyNs[i] = copy;
+                channelNs[i] = channel;
+                copyBytes[i] = copyAllocated;
+                channelBytes[i] = channelAllocated;
+            }
+        }
+        Log.i(TAG, String.format("%d bytes, copy+stream median %.2f ms / %d bytes allocated, "
+                        + "FileChannel median %.2f ms / %d bytes allocated",
+                mJpeg.remaining(), median(copyNs), medianOf(copyBytes), median(channelNs), medianOf(channelBytes)));
+
+        // 两种方式写出的文件都与原数据相同。
+        byte[] expected = new byte[mJpeg.remaining()];
+        mJpeg.duplicate().get(expected);
+        writeByCopy(mJpeg.duplicate(), mFile);
+        assertArrayEquals(expected, readFile(mFile));
+        writeByChannel(mJpeg.duplicate(), mFile);
+        assertArrayEquals(expected, readFile(mFile));
+    }
+
+    private static void writeByCopy(ByteBuffer buffer, File file) throws IOException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void writeByChannel(ByteBuffer buffer, File file) throws IOException {
+        writeSegments(new ByteBuffer[]{buffer}, file);
+    }
+
+}
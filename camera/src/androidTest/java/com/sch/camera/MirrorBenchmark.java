@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.sch.camera.BenchmarkUtils.median;
+import static com.sch.camera.BenchmarkUtils.medianOf;
+import static com.sch.camera.BenchmarkUtils.readFile;
+import static com.sch.camera.BenchmarkUtils.startAllocCounting;
+import static com.sch.camera.BenchmarkUtils.stopAllocCounting;
+import static com.sch.camera.BenchmarkUtils.toDirectBuffer;
+import static com.sch.camera.BenchmarkUtils.writeSegments;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 对比前置摄像头照片的两种翻转方式：解码、翻转后以质量 100 重新编码（原实现），
+ * 以及只修改 EXIF 方向（现实现）。
+ * 记录耗时、Java 堆上分配的字节数和同时持有的最大内存，结果输出到 logcat，标签为 MirrorBenchmark。
+ */
+@RunWith(AndroidJUnit4.class)
+public class MirrorBenchmark {
+
+    private static final String TAG = "MirrorBenchmark";
+    private static final int WARMUP = 2;
+    private static final int ROUNDS = 10;
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "mirror_benchmark.jpg");
+    }
+
+    @After
+    public void tearDown() {
+        // noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void compareMirror() throws IOException {
+        // 前置摄像头常见的 8M 像素照片，竖拍时 EXIF 方向为 6。
+        ByteBuffer jpeg = createOrientedJpeg(3264, 2448, ExifInterface.ORIENTATION_ROTATE_90);
+        long[] decodeNs = new long[ROUNDS];
+        long[] exifNs = new long[ROUNDS];
+        long[] decodeBytes = new long[ROUNDS];
+        long[] exifBytes = new long[ROUNDS];
+        long decodePeak = 0;
+        long exifPeak = 0;
+        for (int i = -WARMUP; i < ROUNDS; i++) {
+            startAllocCounting();
+            long start = System.nanoTime();
+            long decodeHeld = mirrorByDecode(jpeg.duplicate(), mFile);
+            long decode = System.nanoTime() - start;
+            long decodeAllocated = stopAllocCounting();
+            startAllocCounting();
+            start = System.nanoTime();
+            long exifHeld = mirrorByExif(jpeg.duplicate(), mFile);
+            long exif = System.nanoTime() - start;
+            long exifAllocated = stopAllocCounting();
+            if (i >= 0) {
+                decodeNs[i] = decode;
+                exifNs[i] = exif;
+                decodeBytes[i] = decodeAllocated;
+                exifBytes[i] = exifAllocated;
+                decodePeak = Math.max(decodePeak, decodeHeld);
+                exifPeak = Math.max(exifPeak, exifHeld);
+            }
+        }
+        // 8.0 起 Bitmap 像素分配在 native 堆，不计入分配字节数，所以另外记录同时持有的最大内存。
+        Log.i(TAG, String.format("%d bytes, decode+flip median %.2f ms / %d bytes allocated / peak %d bytes held, "
+                        + "EXIF median %.2f ms / %d bytes allocated / peak %d bytes held",
+                jpeg.remaining(), median(decodeNs), medianOf(decodeBytes), decodePeak,
+                median(exifNs), medianOf(exifBytes), exifPeak));
+
+        // EXIF 方式写出的照片方向为原方向的水平翻转。
+        assertEquals(ExifInterface.ORIENTATION_TRANSVERSE, ExifHelper.getOrientation(ByteBuffer.wrap(readFile(mFile))));
+    }
+
+    @Test
+    public void mirrorRotate270() throws IOException {
+        ByteBuffer jpeg = createOrientedJpeg(640, 480, ExifInterface.ORIENTATION_ROTATE_270);
+        mirrorByExif(jpeg, mFile);
+        assertEquals(ExifInterface.ORIENTATION_TRANSPOSE, ExifHelper.getOrientation(ByteBuffer.wrap(readFile(mFile))));
+    }
+
+    /**
+     * 生成带 EXIF 方向的 JPEG。
+     */
+    private ByteBuffer createOrientedJpeg(int width, int height, int orientation) throws IOException {
+        writeSegments(new ByteBuffer[]{BenchmarkUtils.createJpeg(width, height)}, mFile);
+        ExifInterface exif = new ExifInterface(mFile.getPath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+        exif.saveAttributes();
+        ByteBuffer jpeg = toDirectBuffer(readFile(mFile));
+        assertEquals(orientation, ExifHelper.getOrientation(jpeg.duplicate()));
+        return jpeg;
+    }
+
+    /**
+     * @return 同时持有的最大字节数。
+     */
+    private static long mirrorByDecode(ByteBuffer buffer, File file) throws IOException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        Matrix matrix = new Matrix();
+        matrix.setScale(-1, 1);
+        Bitmap mirrored = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
+        long held = (long) bytes.length + bitmap.getByteCount() + mirrored.getByteCount();
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            mirrored.compress(Bitmap.CompressFormat.JPEG, 100, output);
+        } finally {
+            output.close();
+            bitmap.recycle();
+            mirrored.recycle();
+        }
+        return held;
+    }
+
+    /**
+     * @return 同时持有的最大字节数。
+     */
+    private static long mirrorByExif(ByteBuffer buffer, File file) throws IOException {
+        ByteBuffer[] segments = ExifHelper.mirror(buffer);
+        assertNotNull(segments);
+        writeSegments(segments, file);
+        // 片段都是原缓冲区的视图，只有新的 APP1 段是另外分配的。
+        long held = 0;
+        for (ByteBuffer segment : segments) {
+            if (!segment.isDirect()) {
+                held += segment.remaining();
+            }
+        }
+        return held;
+    }
+
+}
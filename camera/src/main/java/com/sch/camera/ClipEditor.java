@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * MP4 视频的无损剪辑和拼接，直接复制编码数据，不重新编码，耗时只与文件读写有关。
+ * <p>
+ * 剪辑只能从关键帧开始，实际起点是不晚于指定起点的最后一个关键帧，时间戳的计算见 {@link ClipTimeline}。
+ */
+@RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class ClipEditor {
+
+    /**
+     * 读取编码数据的缓冲区大小。
+     */
+    private static final int MAX_SAMPLE_SIZE = 2 * 1024 * 1024;
+
+    private ClipEditor() {
+    }
+
+    /**
+     * 剪辑视频。
+     *
+     * @param input   输入视频。
+     * @param output  输出视频，不能与输入视频相同。
+     * @param startMs 起点，单位 ms，不能小于 0，实际从不晚于该点的最后一个关键帧开始。
+     * @param endMs   终点，单位 ms，需要大于起点，不大于 0 时剪辑到结尾。
+     * @throws IOException              读取或写入失败，输出视频已被删除。
+     * @throws IllegalArgumentException 剪辑范围无效或输出视频与输入视频相同。
+     */
+    public static void trim(@NonNull File input, @NonNull File output, long startMs, long endMs) throws IOException {
+        edit(Collections.singletonList(input), new long[]{startMs * 1000},
+                new long[]{endMs > 0 ? endMs * 1000 : Long.MAX_VALUE}, output);
+    }
+
+    /**
+     * 按顺序拼接视频，后一个视频的时间戳紧接在前一个视频之后。
+     * 所有视频需要由同一个录像器以相同的配置录制，音视频格式和方向以第一个视频为准。
+     *
+     * @param inputs 输入视频，至少一个。
+     * @param output 输出视频，不能是输入视频之一。
+     * @throws IOException              读取或写入失败，输出视频已被删除。
+     * @throws IllegalArgumentException 没有输入视频或输出视频是输入视频之一。
+     */
+    public static void concat(@NonNull List<File> inputs, @NonNull File output) throws IOException {
+        long[] startUs = new long[inputs.size()];
+        long[] endUs = new long[inputs.size()];
+        Arrays.fill(endUs, Long.MAX_VALUE);
+        edit(inputs, startUs, endUs, output);
+    }
+
+    /**
+     * 剪辑并拼接视频。
+     *
+     * @param inputs  输入视频，至少一个。
+     * @param startUs 每个视频的剪辑起点，单位 us。
+     * @param endUs   每个视频的剪辑终点，单位 us。
+     * @param output  输出视频，失败时删除。
+     * @throws IOException 读取或写入失败。
+     */
+    private static void edit(List<File> inputs, long[] startUs, long[] endUs, File output) throws IOException {
+        // 参数在创建输出文件之前检查，无效时不会覆盖已有的文件。
+        checkClips(inputs, startUs, endUs, output);
+        MediaMuxer muxer = new MediaMuxer(output.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        boolean isStarted = false;
+        boolean isSucceeded = false;
+        try {
+            muxer.setOrientationHint(getRotation(inputs.get(0)));
+            int[] muxerTracks = {-1, -1};
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_SAMPLE_SIZE);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            long offsetUs = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                MediaExtractor extractor = new MediaExtractor();
+                try {
+                    extractor.setDataSource(inputs.get(i).getPath());
+                    int[] inputTracks = findTracks(extractor);
+                    if (!isStarted) {
+                        for (int track = ClipTimeline.TRACK_VIDEO; track <= ClipTimeline.TRACK_AUDIO; track++) {
+                            if (inputTracks[track] >= 0) {
+                                muxerTracks[track] = muxer.addTrack(extractor.getTrackFormat(inputTracks[track]));
+                            }
+                        }
+                        muxer.start();
+                        isStarted = true;
+                    }
+                    long clipStartUs = startUs[i];
+                    if (inputTracks[ClipTimeline.TRACK_VIDEO] >= 0) {
+                        clipStartUs = findStartKeyFrame(extractor, inputTracks[ClipTimeline.TRACK_VIDEO], clipStartUs);
+                    }
+                    ClipTimeline timeline = new ClipTimeline(clipStartUs, endUs[i], offsetUs);
+                    for (int track = ClipTimeline.TRACK_VIDEO; track <= ClipTimeline.TRACK_AUDIO; track++) {
+                        if (inputTracks[track] >= 0) {
+                            extractor.selectTrack(inputTracks[track]);
+                        }
+                    }
+                    if (clipStartUs > 0) {
+                        extractor.seekTo(clipStartUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    }
+                    copySamples(extractor, inputTracks, timeline, muxer, muxerTracks, buffer, info);
+                    offsetUs = timeline.getOutputEndUs();
+                } finally {
+                    extractor.release();
+                }
+            }
+            isSucceeded = true;
+        } finally {
+            try {
+                if (isStarted) {
+                    muxer.stop();
+                }
+            } catch (IllegalStateException e) {
+                // 没有写入任何样本时结束失败，输出文件不完整。
+                e.printStackTrace();
+                isSucceeded = false;
+            }
+            muxer.release();
+            if (!isSucceeded) {
+                // noinspection ResultOfMethodCallIgnored
+                output.delete();
+            }
+        }
+        if (!isSucceeded) {
+            throw new IOException("Failed to finish " + output.getPath());
+        }
+    }
+
+    /**
+     * 检查输入视频和剪辑范围。
+     *
+     * @throws IllegalArgumentException 没有输入视频、剪辑范围无效或输出视频是输入视频之一。
+     */
+    static void checkClips(List<File> inputs, long[] startUs, long[] endUs, File output) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input clip");
+        }
+        File outputFile = output.getAbsoluteFile();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (startUs[i] < 0 || startUs[i] >= endUs[i]) {
+                throw new IllegalArgumentException("Invalid clip range " + startUs[i] + "-" + endUs[i] + "us");
+            }
+            if (inputs.get(i).getAbsoluteFile().equals(outputFile)) {
+                throw new IllegalArgumentException("Output is the same as input " + inputs.get(i).getPath());
+            }
+        }
+    }
+
+    /**
+     * 查找视频轨和音轨。
+     *
+     * @return 下标为 ClipTimeline.TRACK_*，没有对应轨道时为 -1。
+     */
+    private static int[] findTracks(MediaExtractor extractor) {
+        int[] tracks = {-1, -1};
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime == null) {
+                continue;
+            }
+            if (tracks[ClipTimeline.TRACK_VIDEO] < 0 && mime.startsWith("video/")) {
+                tracks[ClipTimeline.TRACK_VIDEO] = i;
+            } else if (tracks[ClipTimeline.TRACK_AUDIO] < 0 && mime.startsWith("audio/")) {
+                tracks[ClipTimeline.TRACK_AUDIO] = i;
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * 扫描视频轨的关键帧，计算实际起点。只读取样本信息，不读取编码数据。
+     *
+     * @param videoTrack 视频轨。
+     * @param startUs    剪辑起点。
+     */
+    private static long findStartKeyFrame(MediaExtractor extractor, int videoTrack, long startUs) {
+        if (startUs <= 0) {
+            return 0;
+        }
+        extractor.selectTrack(videoTrack);
+        long[] keyFrameTimesUs = new long[64];
+        int count = 0;
+        long timeUs;
+        while ((timeUs = extractor.getSampleTime()) >= 0) {
+            if ((extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                if (count == keyFrameTimesUs.length) {
+                    keyFrameTimesUs = Arrays.copyOf(keyFrameTimesUs, count * 2);
+                }
+                keyFrameTimesUs[count++] = timeUs;
+            }
+            if (timeUs > startUs) {
+                break;
+            }
+            extractor.advance();
+        }
+        extractor.unselectTrack(videoTrack);
+        extractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        return ClipTimeline.alignToKeyFrame(keyFrameTimesUs, count, startUs);
+    }
+
+    /**
+     * 复制剪辑范围内的样本，两路都超过终点后结束。
+     */
+    private static void copySamples(MediaExtractor extractor, int[] inputTracks, ClipTimeline timeline,
+                                    MediaMuxer muxer, int[] muxerTracks, ByteBuffer buffer,
+                                    MediaCodec.BufferInfo info) {
+        boolean[] isEnded = {inputTracks[ClipTimeline.TRACK_VIDEO] < 0, inputTracks[ClipTimeline.TRACK_AUDIO] < 0};
+        while (!isEnded[ClipTimeline.TRACK_VIDEO] || !isEnded[ClipTimeline.TRACK_AUDIO]) {
+            int trackIndex = extractor.getSampleTrackIndex();
+            if (trackIndex < 0) {
+                break;
+            }
+            int track = trackIndex == inputTracks[ClipTimeline.TRACK_VIDEO]
+                    ? ClipTimeline.TRACK_VIDEO : ClipTimeline.TRACK_AUDIO;
+            long timeUs = extractor.getSampleTime();
+            if (timeline.isPastEnd(timeUs)) {
+                isEnded[track] = true;
+            } else {
+                long outputTimeUs = timeline.map(track, timeUs);
+                if (outputTimeUs >= 0 && muxerTracks[track] >= 0) {
+                    int size = extractor.readSampleData(buffer, 0);
+                    int flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                            ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                    info.set(0, size, outputTimeUs, flags);
+                    muxer.writeSampleData(muxerTracks[track], buffer, info);
+                }
+            }
+            extractor.advance();
+        }
+    }
+
+    /**
+     * 获取视频的方向。
+     */
+    private static int getRotation(File file) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(file.getPath());
+            String rotation = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+            return rotation == null ? 0 : Integer.parseInt(rotation);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return 0;
+        } finally {
+            retriever.release();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 无损剪辑一个视频片段时的时间戳计算，不依赖 Android API。
+ * <p>
+ * 不重新编码时只能从关键帧开始剪辑，实际起点是不晚于剪辑起点的最后一个关键帧，音频也从该点开始以保持同步。
+ * 输出时间戳为样本时间戳减去实际起点再加上片段在输出中的偏移，拼接时下一个片段的偏移即上一个片段的结束时间。
+ */
+final class ClipTimeline {
+
+    static final int TRACK_VIDEO = 0;
+    static final int TRACK_AUDIO = 1;
+
+    /**
+     * 实际起点和剪辑终点，单位 us。
+     */
+    private final long mStartUs;
+    private final long mEndUs;
+    /**
+     * 片段在输出中的偏移，单位 us。
+     */
+    private final long mOffsetUs;
+
+    /**
+     * 各轨道最后写入样本的原时间戳和样本间隔，用于计算结束时间。
+     */
+    private final long[] mLastTimeUs = {-1, -1};
+    private final long[] mIntervalUs = {0, 0};
+
+    /**
+     * 初始化。
+     *
+     * @param startUs  实际起点，通过 {@link #alignToKeyFrame(long[], int, long)} 计算。
+     * @param endUs    剪辑终点，不包括该时间的样本，Long.MAX_VALUE 表示到结尾。
+     * @param offsetUs 片段在输出中的偏移。
+     */
+    ClipTimeline(long startUs, long endUs, long offsetUs) {
+        if (endUs <= startUs) {
+            throw new IllegalArgumentException("Empty clip range: " + startUs + " - " + endUs);
+        }
+        mStartUs = startUs;
+        mEndUs = endUs;
+        mOffsetUs = offsetUs;
+    }
+
+    /**
+     * 计算实际起点，即不晚于剪辑起点的最后一个关键帧；剪辑起点早于所有关键帧时使用第一个关键帧。
+     *
+     * @param keyFrameTimesUs 关键帧的时间戳，升序排列。
+     * @param count           关键帧数量。
+     * @param startUs         剪辑起点。
+     * @return 实际起点，没有关键帧时返回剪辑起点。
+     */
+    static long alignToKeyFrame(long[] keyFrameTimesUs, int count, long startUs) {
+        if (count <= 0) {
+            return startUs;
+        }
+        // 二分查找最后一个不大于 startUs 的关键帧。
+        int low = 0;
+        int high = count - 1;
+        int found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keyFrameTimesUs[mid] <= startUs) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return keyFrameTimesUs[found];
+    }
+
+    /**
+     * 计算样本在输出中的时间戳。
+     *
+     * @param track  {@link #TRACK_VIDEO} 或 {@link #TRACK_AUDIO}。
+     * @param timeUs 样本的原时间戳。
+     * @return 输出时间戳，样本不在剪辑范围内时返回 -1。
+     */
+    long map(int track, long timeUs) {
+        if (timeUs < mStartUs || timeUs >= mEndUs) {
+            return -1;
+        }
+        long lastTimeUs = mLastTimeUs[track];
+        if (lastTimeUs >= 0 && timeUs > lastTimeUs) {
+            mIntervalUs[track] = timeUs - lastTimeUs;
+        }
+        mLastTimeUs[track] = Math.max(lastTimeUs, timeUs);
+        return timeUs - mStartUs + mOffsetUs;
+    }
+
+    /**
+     * 样本是否已经超过剪辑终点，超过后不需要继续读取。
+     *
+     * @param timeUs 样本的原时间戳。
+     */
+    boolean isPastEnd(long timeUs) {
+        return timeUs >= mEndUs;
+    }
+
+    /**
+     * 片段在输出中的结束时间，取各轨道最后一个样本的时间戳加上样本间隔，作为下一个片段的偏移。
+     */
+    long getOutputEndUs() {
+        long endUs = mOffsetUs;
+        for (int track = TRACK_VIDEO; track <= TRACK_AUDIO; track++) {
+            if (mLastTimeUs[track] >= 0) {
+                endUs = Math.max(endUs, mLastTimeUs[track] + mIntervalUs[track] - mStartUs + mOffsetUs);
+            }
+        }
+        return endUs;
+    }
+
+}
@@ -16,8 +16,11 @@
 
 package com.sch.camera;
 
+import android.support.annotation.IntRange;
+
 import com.sch.camera.annotation.Facing;
 import com.sch.camera.annotation.Flash;
+import com.sch.camera.annotation.PersistPolicy;
 
 import java.io.Serializable;
 
@@ -54,11 +57,35 @@ public class DefOptions implements Serializable {
      */
     public static final int FLASH_TORCH = 3;
 
+    /**
+     * 保存队列已满时，阻塞提交任务的线程，直到队列有空位。
+     */
+    public static final int PERSIST_POLICY_BLOCK = 0;
+    /**
+     * 保存队列已满时，丢弃优先级最低的队列中最早提交的任务（优先丢弃同步任务），不会丢弃优先级更高的任务。
+     */
+    public static final int PERSIST_POLICY_DROP_OLDEST = 1;
+    /**
+     * 保存队列已满时，拒绝新提交的任务。
+     */
+    public static final int PERSIST_POLICY_REJECT = 2;
+
     private boolean isAutoFocus = true;
     @Facing
     private int facing = FACING_BACK;
     @Flash
     private int flash = FLASH_OFF;
+    private boolean isZeroShutterLag = false;
+    private int maxPicturesInFlight = 1;
+    private int persistThreadCount = 1;
+    private int persistQueueSize = 4;
+    @PersistPolicy
+    private int persistPolicy = PERSIST_POLICY_BLOCK;
+    private long videoSegmentDuration = 0;
+    private long videoSegmentSize = 0;
+    private long videoPreRollDuration = 0;
+    private long videoPreRollSize = 8 * 1024 * 1024;
+    private boolean isPreferHevc = false;
 
     /**
      * 是否支持自动对焦。
@@ -110,4 +137,174 @@ public class DefOptions implements Serializable {
         this.flash = flash;
     }
 
+    /**
+     * 是否启用零延迟拍照。
+     */
+    public boolean isZeroShutterLag() {
+        return isZeroShutterLag;
+    }
+
+    /**
+     * 设置是否启用零延迟拍照（仅 Camera2 有效），默认 false。
+     * 启用后预览时持续缓存最近的几帧，拍照时直接使用按下快门时的那一帧，不再对焦测光。
+     * 需要设备支持 YUV 重处理，不支持时仍使用普通拍照。
+     * 缓存的帧和照片都是预览尺寸，与 Camera2 普通拍照的照片尺寸相同，不会输出传感器全尺寸的照片。
+     *
+     * @param zeroShutterLag 是否启用零延迟拍照。
+     */
+    public void setZeroShutterLag(boolean zeroShutterLag) {
+        isZeroShutterLag = zeroShutterLag;
+    }
+
+    /**
+     * 获取最多同时处理的照片数量。
+     */
+    public int getMaxPicturesInFlight() {
+        return maxPicturesInFlight;
+    }
+
+    /**
+     * 设置最多同时处理（已拍摄但尚未保存完毕）的照片数量，默认 1。
+     * 大于 1 时每张照片保存到独立的文件，下一次拍照不必等待上一张照片保存完毕。
+     *
+     * @param maxPicturesInFlight 最多同时处理的照片数量。
+     */
+    public void setMaxPicturesInFlight(@IntRange(from = 1) int maxPicturesInFlight) {
+        this.maxPicturesInFlight = maxPicturesInFlight;
+    }
+
+    /**
+     * 获取保存照片的工作线程数量。
+     */
+    public int getPersistThreadCount() {
+        return persistThreadCount;
+    }
+
+    /**
+     * 设置保存照片的工作线程数量，默认 1。
+     *
+     * @param persistThreadCount 工作线程数量。
+     */
+    public void setPersistThreadCount(@IntRange(from = 1) int persistThreadCount) {
+        this.persistThreadCount = persistThreadCount;
+    }
+
+    /**
+     * 获取保存队列的容量。
+     */
+    public int getPersistQueueSize() {
+        return persistQueueSize;
+    }
+
+    /**
+     * 设置保存队列的容量，默认 4。
+     *
+     * @param persistQueueSize 保存队列的容量。
+     */
+    public void setPersistQueueSize(@IntRange(from = 1) int persistQueueSize) {
+        this.persistQueueSize = persistQueueSize;
+    }
+
+    /**
+     * 获取保存队列已满时的处理策略。
+     */
+    @PersistPolicy
+    public int getPersistPolicy() {
+        return persistPolicy;
+    }
+
+    /**
+     * 设置保存队列已满时的处理策略，默认 PERSIST_POLICY_BLOCK。
+     *
+     * @param persistPolicy 处理策略。
+     */
+    public void setPersistPolicy(@PersistPolicy int persistPolicy) {
+        this.persistPolicy = persistPolicy;
+    }
+
+    /**
+     * 获取录像分段的时长。
+     */
+    public long getVideoSegmentDuration() {
+        return videoSegmentDuration;
+    }
+
+    /**
+     * 设置录像分段的时长（仅 Camera2 使用 MediaCodec 编码时有效），默认 0 不分段。
+     * 录像达到该时长后在下一个关键帧切换到新文件，每个分段结束后立即通过 OnVideoListener 回调，适合不限时长的录像。
+     *
+     * @param videoSegmentDuration 分段时长，单位 ms。
+     */
+    public void setVideoSegmentDuration(@IntRange(from = 0) long videoSegmentDuration) {
+        this.videoSegmentDuration = videoSegmentDuration;
+    }
+
+    /**
+     * 获取录像分段的大小。
+     */
+    public long getVideoSegmentSize() {
+        return videoSegmentSize;
+    }
+
+    /**
+     * 设置录像分段的大小（仅 Camera2 使用 MediaCodec 编码时有效），默认 0 不分段。
+     * 分段文件达到该大小后在下一个关键帧切换到新文件，可以与分段时长同时使用。
+     *
+     * @param videoSegmentSize 分段大小，单位 byte。
+     */
+    public void setVideoSegmentSize(@IntRange(from = 0) long videoSegmentSize) {
+        this.videoSegmentSize = videoSegmentSize;
+    }
+
+    /**
+     * 获取录像预录的时长。
+     */
+    public long getVideoPreRollDuration() {
+        return videoPreRollDuration;
+    }
+
+    /**
+     * 设置录像预录的时长（仅 Camera2 使用 MediaCodec 编码时有效），默认 0 不预录。
+     * 预览期间持续编码并在内存中保留最近这段时间的数据，开始录像时从其中最早的关键帧开始写入文件。
+     * 预览期间编码器和麦克风一直工作，耗电会增加。
+     *
+     * @param videoPreRollDuration 预录时长，单位 ms。
+     */
+    public void setVideoPreRollDuration(@IntRange(from = 0) long videoPreRollDuration) {
+        this.videoPreRollDuration = videoPreRollDuration;
+    }
+
+    /**
+     * 获取录像预录最多占用的内存。
+     */
+    public long getVideoPreRollSize() {
+        return videoPreRollSize;
+    }
+
+    /**
+     * 设置录像预录最多占用的内存，默认 8MB。超出时丢弃最早的数据，实际预录时长可能小于预录时长。
+     *
+     * @param videoPreRollSize 内存大小，单位 byte。
+     */
+    public void setVideoPreRollSize(@IntRange(from = 1) long videoPreRollSize) {
+        this.videoPreRollSize = videoPreRollSize;
+    }
+
+    /**
+     * 是否优先使用 HEVC 编码录像。
+     */
+    public boolean isPreferHevc() {
+        return isPreferHevc;
+    }
+
+    /**
+     * 设置是否优先使用 HEVC 编码录像（仅 Camera2 使用 MediaCodec 编码且 Android 7.0 及以上有效），默认 false 使用 H.264。
+     * HEVC 相同画质下文件更小，但部分播放器和服务端不支持，确认视频的使用方都支持后再启用。
+     *
+     * @param preferHevc 是否优先使用 HEVC。
+     */
+    public void setPreferHevc(boolean preferHevc) {
+        isPreferHevc = preferHevc;
+    }
+
 }
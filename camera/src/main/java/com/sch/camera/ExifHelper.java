@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera;
+
+import android.graphics.Matrix;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by StoneHui on 2018/9/7.
+ * <p>
+ * JPEG 的 EXIF 方向处理类，不解码像素。
+ */
+public class ExifHelper {
+
+    /**
+     * EXIF 方向，正常。
+     */
+    public static final int ORIENTATION_NORMAL = 1;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    /**
+     * 水平翻转后的 EXIF 方向，下标为原方向。
+     * 翻转的是显示后的图片，即在原方向的变换之后再水平翻转：
+     * 1(正常)↔2(水平翻转)，3(旋转 180)↔4(垂直翻转)，5(转置)↔6(旋转 90)，7(反转置)↔8(旋转 270)。
+     */
+    private static final int[] MIRRORED_ORIENTATION = {ORIENTATION_NORMAL, 2, 1, 4, 3, 6, 5, 8, 7};
+
+    /**
+     * 只包含方向标签（水平翻转）的 APP1 段，不包括 SOI。
+     */
+    private static final byte[] MIRRORED_APP1 = {
+            (byte) 0xFF, (byte) MARKER_APP1, 0x00, 0x22,
+            'E', 'x', 'i', 'f', 0x00, 0x00,
+            // TIFF 头，大端，IFD0 偏移 8。
+            'M', 'M', 0x00, 0x2A, 0x00, 0x00, 0x00, 0x08,
+            // IFD0，1 个条目：Orientation, SHORT, 1, 2。
+            0x00, 0x01,
+            0x01, 0x12, 0x00, 0x03, 0x00, 0x00, 0x00, 0x01, 0x00, 0x02, 0x00, 0x00,
+            // 没有下一个 IFD。
+            0x00, 0x00, 0x00, 0x00
+    };
+
+    /**
+     * 通过修改 EXIF 方向将 JPEG 水平翻转，不解码像素，也不修改原数据。
+     *
+     * @param jpeg JPEG 数据，position 到 limit 之间的内容。
+     * @return 依次写入即为翻转后 JPEG 的数据片段，除方向标签外与原数据共享内容；无法解析时返回 null。
+     */
+    @Nullable
+    public static ByteBuffer[] mirror(ByteBuffer jpeg) {
+        int base = jpeg.position();
+        int end = jpeg.limit();
+        int[] exif = findExif(jpeg);
+        if (exif == null) {
+            return null;
+        }
+        if (exif[0] < 0) {
+            // 没有 EXIF，插入只包含方向标签的 APP1 段，JFIF 要求 APP0 紧跟 SOI，有 APP0 时插入到它之后。
+            int insert = base + 2;
+            if (insert + 4 <= end && u8(jpeg, insert) == 0xFF && u8(jpeg, insert + 1) == MARKER_APP0) {
+                insert = Math.min(end, insert + 2 + u16(jpeg, insert + 2, false));
+            }
+            return new ByteBuffer[]{slice(jpeg, base, insert), ByteBuffer.wrap(MIRRORED_APP1), slice(jpeg, insert, end)};
+        }
+        int valueOffset = findTag(jpeg, exif[0], exif[1], false, TAG_ORIENTATION);
+        if (valueOffset < 0) {
+            // 有 EXIF 但没有方向标签，插入新的标签需要重写 IFD，交由调用方处理。
+            return null;
+        }
+        boolean littleEndian = isLittleEndian(jpeg, exif[0]);
+        int mirrored = mirrorOrientation(u16(jpeg, valueOffset, littleEndian));
+        ByteBuffer value = ByteBuffer.allocate(2);
+        if (littleEndian) {
+            value.put((byte) mirrored).put((byte) 0);
+        } else {
+            value.put((byte) 0).put((byte) mirrored);
+        }
+        value.flip();
+        return new ByteBuffer[]{slice(jpeg, base, valueOffset), value, slice(jpeg, valueOffset + 2, end)};
+    }
+
+    /**
+     * 获取水平翻转后的 EXIF 方向。
+     *
+     * @param orientation EXIF 方向。
+     */
+    public static int mirrorOrientation(int orientation) {
+        if (orientation < 1 || orientation >= MIRRORED_ORIENTATION.length) {
+            orientation = ORIENTATION_NORMAL;
+        }
+        return MIRRORED_ORIENTATION[orientation];
+    }
+
+    /**
+     * 读取 JPEG 的 EXIF 方向。
+     *
+     * @param jpeg JPEG 数据，position 到 limit 之间的内容。
+     * @return EXIF 方向，没有方向标签时返回 {@link #ORIENTATION_NORMAL}。
+     */
+    public static int getOrientation(ByteBuffer jpeg) {
+        int[] exif = findExif(jpeg);
+        if (exif == null || exif[0] < 0) {
+            return ORIENTATION_NORMAL;
+        }
+        int valueOffset = findTag(jpeg, exif[0], exif[1], false, TAG_ORIENTATION);
+        if (valueOffset < 0) {
+            return ORIENTATION_NORMAL;
+        }
+        int orientation = u16(jpeg, valueOffset, isLittleEndian(jpeg, exif[0]));
+        return orientation < 1 || orientation >= MIRRORED_ORIENTATION.length ? ORIENTATION_NORMAL : orientation;
+    }
+
+    /**
+     * 获取 EXIF 中内嵌的 JPEG 缩略图。
+     *
+     * @param jpeg JPEG 数据，position 到 limit 之间的内容。
+     * @return 与原数据共享内容的缩略图数据，没有缩略图时返回 null。
+     */
+    @Nullable
+    public static ByteBuffer getThumbnail(ByteBuffer jpeg) {
+        int[] exif = findExif(jpeg);
+        if (exif == null || exif[0] < 0) {
+            return null;
+        }
+        int tiffOffset = exif[0];
+        int end = exif[1];
+        boolean littleEndian = isLittleEndian(jpeg, tiffOffset);
+        int offsetValue = findTag(jpeg, tiffOffset, end, true, TAG_THUMBNAIL_OFFSET);
+        int lengthValue = findTag(jpeg, tiffOffset, end, true, TAG_THUMBNAIL_LENGTH);
+        if (offsetValue < 0 || lengthValue < 0) {
+            return null;
+        }
+        long offset = u32(jpeg, offsetValue, littleEndian);
+        long length = u32(jpeg, lengthValue, littleEndian);
+        if (offset <= 0 || length <= 0 || tiffOffset + offset + length > end) {
+            return null;
+        }
+        return slice(jpeg, (int) (tiffOffset + offset), (int) (tiffOffset + offset + length));
+    }
+
+    /**
+     * 获取将图片按 EXIF 方向显示的 Matrix。
+     *
+     * @param orientation EXIF 方向。
+     * @return Matrix，正常方向时返回 null。
+     */
+    @Nullable
+    public static Matrix getOrientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case 2:
+                matrix.setScale(-1, 1);
+                break;
+            case 3:
+                matrix.setRotate(180);
+                break;
+            case 4:
+                matrix.setScale(1, -1);
+                break;
+            case 5:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case 6:
+                matrix.setRotate(90);
+                break;
+            case 7:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case 8:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return null;
+        }
+        return matrix;
+    }
+
+    /**
+     * 查找 EXIF 的 TIFF 头。
+     *
+     * @param jpeg JPEG 数据。
+     * @return {TIFF 头的位置, APP1 段的结束位置}，没有 EXIF 时位置为 -1；不是有效的 JPEG 时返回 null。
+     */
+    @Nullable
+    private static int[] findExif(ByteBuffer jpeg) {
+        int base = jpeg.position();
+        int end = jpeg.limit();
+        if (end - base < 4 || u8(jpeg, base) != 0xFF || u8(jpeg, base + 1) != MARKER_SOI) {
+            return null;
+        }
+        int offset = base + 2;
+        while (offset + 4 <= end) {
+            if (u8(jpeg, offset) != 0xFF) {
+                return null;
+            }
+            int marker = u8(jpeg, offset + 1);
+            if (marker == MARKER_SOS || marker < 0xE0 || marker > 0xEF) {
+                // APPn 段之后不会再有 EXIF。
+                break;
+            }
+            int segmentEnd = Math.min(end, offset + 2 + u16(jpeg, offset + 2, false));
+            if (marker == MARKER_APP1 && isExif(jpeg, offset + 4, segmentEnd)) {
+                int tiffOffset = offset + 10;
+                if (tiffOffset + 8 > segmentEnd || !(isLittleEndian(jpeg, tiffOffset)
+                        || (u8(jpeg, tiffOffset) == 'M' && u8(jpeg, tiffOffset + 1) == 'M'))) {
+                    return null;
+                }
+                return new int[]{tiffOffset, segmentEnd};
+            }
+            offset = segmentEnd;
+        }
+        return new int[]{-1, end};
+    }
+
+    /**
+     * 是否是 EXIF 的 APP1 段。
+     */
+    private static boolean isExif(ByteBuffer jpeg, int offset, int end) {
+        return offset + 6 <= end && u8(jpeg, offset) == 'E' && u8(jpeg, offset + 1) == 'x'
+                && u8(jpeg, offset + 2) == 'i' && u8(jpeg, offset + 3) == 'f'
+                && u8(jpeg, offset + 4) == 0 && u8(jpeg, offset + 5) == 0;
+    }
+
+    /**
+     * TIFF 头是否为小端字节序。
+     */
+    private static boolean isLittleEndian(ByteBuffer jpeg, int tiffOffset) {
+        return u8(jpeg, tiffOffset) == 'I' && u8(jpeg, tiffOffset + 1) == 'I';
+    }
+
+    /**
+     * 在 IFD0 或 IFD1 中查找标签。
+     *
+     * @param jpeg       JPEG 数据。
+     * @param tiffOffset TIFF 头的位置。
+     * @param end        APP1 段的结束位置。
+     * @param isIfd1     是否在 IFD1（缩略图）中查找。
+     * @param tag        标签。
+     * @return 标签值的位置，没有找到时返回 -1。
+     */
+    private static int findTag(ByteBuffer jpeg, int tiffOffset, int end, boolean isIfd1, int tag) {
+        boolean littleEndian = isLittleEndian(jpeg, tiffOffset);
+        long ifdOffset = u32(jpeg, tiffOffset + 4, littleEndian);
+        if (ifdOffset < 8 || tiffOffset + ifdOffset + 2 > end) {
+            return -1;
+        }
+        int ifd = (int) (tiffOffset + ifdOffset);
+        int count = u16(jpeg, ifd, littleEndian);
+        if (isIfd1) {
+            int next = ifd + 2 + count * 12;
+            if (next + 4 > end) {
+                return -1;
+            }
+            ifdOffset = u32(jpeg, next, littleEndian);
+            if (ifdOffset < 8 || tiffOffset + ifdOffset + 2 > end) {
+                return -1;
+            }
+            ifd = (int) (tiffOffset + ifdOffset);
+            count = u16(jpeg, ifd, littleEndian);
+        }
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                return -1;
+            }
+            if (u16(jpeg, entry, littleEndian) == tag) {
+                return entry + 8;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(to);
+        duplicate.position(from);
+        return duplicate.slice();
+    }
+
+    private static int u8(ByteBuffer buffer, int index) {
+        return buffer.get(index) & 0xFF;
+    }
+
+    private static int u16(ByteBuffer buffer, int index, boolean littleEndian) {
+        int b0 = u8(buffer, index);
+        int b1 = u8(buffer, index + 1);
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long u32(ByteBuffer buffer, int index, boolean littleEndian) {
+        long high = u16(buffer, index, littleEndian);
+        long low = u16(buffer, index + 2, littleEndian);
+        return littleEndian ? (low << 16) | high : (high << 16) | low;
+    }
+
+}
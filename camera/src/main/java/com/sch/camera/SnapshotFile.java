@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 设备能力的快照文件。
+ * <p>
+ * 文件头依次为标识、格式版本和 Build.FINGERPRINT，任意一项不符时视为失效，系统升级后自动重新探测；
+ * 写入时先写临时文件再重命名，避免中断时留下不完整的快照。
+ * <p>
+ * 只供库内 manager 和 encoder 包使用，不是公开 API。
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class SnapshotFile {
+
+    /**
+     * 读取快照内容。
+     */
+    public interface Reader<T> {
+
+        /**
+         * 读取文件头之后的内容。
+         *
+         * @param in 输入流。
+         * @return 快照内容。
+         * @throws IOException 读取失败或内容不完整。
+         */
+        T read(@NonNull DataInputStream in) throws IOException;
+    }
+
+    /**
+     * 写入快照内容。
+     */
+    public interface Writer {
+
+        /**
+         * 写入文件头之后的内容。
+         *
+         * @param out 输出流。
+         * @throws IOException 写入失败。
+         */
+        void write(@NonNull DataOutputStream out) throws IOException;
+    }
+
+    private final File mFile;
+    private final int mMagic;
+    private final int mVersion;
+
+    /**
+     * 初始化。
+     *
+     * @param file    快照文件。
+     * @param magic   文件标识。
+     * @param version 格式版本，修改字段后需要递增。
+     */
+    public SnapshotFile(@NonNull File file, int magic, int version) {
+        mFile = file;
+        mMagic = magic;
+        mVersion = version;
+    }
+
+    /**
+     * 读取快照。
+     *
+     * @param reader 读取文件头之后的内容。
+     * @return 快照内容，文件不存在、格式不符、系统版本已变化或读取失败时返回 null。
+     */
+    @Nullable
+    public <T> T read(@NonNull Reader<T> reader) {
+        if (!mFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != mMagic || in.readInt() != mVersion || !Build.FINGERPRINT.equals(in.readUTF())) {
+                return null;
+            }
+            return reader.read(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * 写入快照。
+     *
+     * @param writer 写入文件头之后的内容。
+     * @return 是否写入成功。
+     */
+    public boolean write(@NonNull Writer writer) {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(mMagic);
+            out.writeInt(mVersion);
+            out.writeUTF(Build.FINGERPRINT);
+            writer.write(out);
+            out.close();
+            out = null;
+            if (tempFile.renameTo(mFile)) {
+                return true;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeQuietly(out);
+        }
+        // noinspection ResultOfMethodCallIgnored
+        tempFile.delete();
+        return false;
+    }
+
+    /**
+     * 删除快照文件。
+     *
+     * @return 文件已不存在时返回 true。
+     */
+    public boolean delete() {
+        return !mFile.exists() || mFile.delete();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
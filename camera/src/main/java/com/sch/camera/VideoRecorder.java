@@ -19,22 +19,30 @@ package com.sch.camera;
 import android.hardware.Camera;
 import android.media.MediaRecorder;
 import android.os.Build;
+import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 import android.view.Surface;
 
+import com.sch.camera.encoder.EncoderProfile;
+import com.sch.camera.encoder.MediaCodecRecorder;
+
 import java.io.IOException;
 
 /**
  * Created by StoneHui on 2018/8/10.
  * <p>
- * 视频录制。
+ * 视频录制。指定编码配置时使用 MediaCodec 和 MediaMuxer 编码，否则使用 MediaRecorder 的固定配置。
  */
 public class VideoRecorder {
 
-    private MediaRecorder mMediaRecorder = new MediaRecorder();
+    private MediaRecorder mMediaRecorder;
+
+    private MediaCodecRecorder mCodecRecorder;
 
     private boolean isRecording = false;
 
+    private boolean isPrepared = false;
+
     /**
      * 初始化。
      *
@@ -44,6 +52,7 @@ public class VideoRecorder {
      * @param filePath    视频文件保存路径。
      */
     public VideoRecorder(Camera camera, int orientation, Size size, String filePath) {
+        mMediaRecorder = new MediaRecorder();
         mMediaRecorder.setCamera(camera);
         init(orientation, size, filePath, MediaRecorder.VideoSource.CAMERA);
     }
@@ -57,7 +66,38 @@ public class VideoRecorder {
      */
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     public VideoRecorder(int orientation, Size size, String filePath) {
+        mMediaRecorder = new MediaRecorder();
+        init(orientation, size, filePath, MediaRecorder.VideoSource.SURFACE);
+    }
+
+    /**
+     * 初始化，使用持久输入 Surface 作为视频源。
+     *
+     * @param orientation  摄像方向。
+     * @param size         视频尺寸。
+     * @param filePath     视频文件保存路径。
+     * @param inputSurface MediaCodec.createPersistentInputSurface() 创建的 Surface。
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    public VideoRecorder(int orientation, Size size, String filePath, Surface inputSurface) {
+        mMediaRecorder = new MediaRecorder();
         init(orientation, size, filePath, MediaRecorder.VideoSource.SURFACE);
+        mMediaRecorder.setInputSurface(inputSurface);
+    }
+
+    /**
+     * 初始化，使用 MediaCodec 和 MediaMuxer 编码。
+     *
+     * @param orientation         摄像方向。
+     * @param profile             视频编码配置。
+     * @param filePath            视频文件保存路径。
+     * @param inputSurface        MediaCodec.createPersistentInputSurface() 创建的 Surface，为 null 时使用 {@link #getSurface()}。
+     * @param isTimestampRealtime 相机帧的时间戳是否与 SystemClock.elapsedRealtimeNanos() 使用相同的时间基准。
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public VideoRecorder(int orientation, EncoderProfile profile, String filePath, @Nullable Surface inputSurface,
+                         boolean isTimestampRealtime) {
+        mCodecRecorder = new MediaCodecRecorder(profile, orientation, filePath, inputSurface, isTimestampRealtime);
     }
 
     private void init(int orientation, Size size, String filePath, int videoSource) {
@@ -78,6 +118,49 @@ public class VideoRecorder {
         mMediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
     }
 
+    /**
+     * 设置分段录制，需要在 {@link #start()} 之前调用。只有使用 MediaCodec 编码时支持分段。
+     *
+     * @param durationMs 分段时长，单位 ms，0 表示不限。
+     * @param size       分段大小，单位 byte，0 表示不限。
+     * @param listener   分段监听，包括结束录制时的最后一个分段。
+     * @return 是否支持分段。
+     */
+    public boolean setSegmentLimit(long durationMs, long size, MediaCodecRecorder.OnSegmentListener listener) {
+        if (mCodecRecorder == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        mCodecRecorder.setSegmentLimit(durationMs, size, listener);
+        return true;
+    }
+
+    /**
+     * 设置预录，需要在 {@link #prepare()} 之前调用。只有使用 MediaCodec 编码时支持预录。
+     *
+     * @param durationMs 预录时长，单位 ms。
+     * @param maxBytes   缓冲区最多占用的内存，单位 byte。
+     * @return 是否支持预录。
+     */
+    public boolean setPreRoll(long durationMs, long maxBytes) {
+        if (mCodecRecorder == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        mCodecRecorder.setPreRoll(durationMs, maxBytes);
+        return true;
+    }
+
+    /**
+     * 预录期间调用，开始写入文件，预录的数据从最早的关键帧开始写入。
+     *
+     * @param orientation 摄像方向。
+     * @throws IOException 无法创建输出文件。
+     */
+    public void startOutput(int orientation) throws IOException {
+        if (mCodecRecorder != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mCodecRecorder.startOutput(orientation);
+        }
+    }
+
     /**
      * 是否正在录制。
      */
@@ -86,21 +169,70 @@ public class VideoRecorder {
     }
 
     /**
-     * 开始录制。
+     * 准备录制。可以提前调用，使 {@link #start()} 只需启动录制。
      *
      * @throws IOException MediaRecorder.prepare() 可能抛出异常。
      */
-    public void start() throws IOException {
+    public void prepare() throws IOException {
+        if (isPrepared) {
+            return;
+        }
         try {
-            mMediaRecorder.prepare();
-            mMediaRecorder.start();
-            isRecording = true;
+            if (mCodecRecorder != null) {
+                mCodecRecorder.prepare();
+            } else {
+                mMediaRecorder.prepare();
+            }
+            isPrepared = true;
         } catch (IOException e) {
             release();
             throw e;
         }
     }
 
+    /**
+     * 开始录制。
+     *
+     * @throws IOException MediaRecorder.prepare() 可能抛出异常。
+     */
+    public void start() throws IOException {
+        prepare();
+        if (mCodecRecorder != null) {
+            mCodecRecorder.start();
+        } else {
+            mMediaRecorder.start();
+        }
+        isRecording = true;
+    }
+
+    /**
+     * 暂停录制。MediaCodec 编码时保持编码器运行；MediaRecorder 需要 Android 7.0 以上。
+     *
+     * @return 是否支持暂停，不支持时录制继续。
+     */
+    public boolean pause() {
+        if (mCodecRecorder != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mCodecRecorder.pause();
+            return true;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mMediaRecorder.pause();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 恢复 {@link #pause()} 暂停的录制。
+     */
+    public void resume() {
+        if (mCodecRecorder != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mCodecRecorder.resume();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mMediaRecorder.resume();
+        }
+    }
+
     /**
      * 结束录制。
      *
@@ -109,26 +241,38 @@ public class VideoRecorder {
     public void stop() throws Exception {
         try {
             // 录制时间太短，stop 会抛异常。
-            mMediaRecorder.stop();
+            if (mCodecRecorder != null) {
+                mCodecRecorder.stop();
+            } else {
+                mMediaRecorder.stop();
+            }
         } finally {
             release();
         }
     }
 
     /**
-     * 释放资源。
+     * 释放资源，已准备但未开始的录制也通过该方法丢弃。
      */
-    private void release() {
+    public void release() {
         isRecording = false;
+        isPrepared = false;
         if (mMediaRecorder != null) {
             mMediaRecorder.reset();
             mMediaRecorder.release();
             mMediaRecorder = null;
         }
+        if (mCodecRecorder != null) {
+            mCodecRecorder.release();
+            mCodecRecorder = null;
+        }
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     public Surface getSurface() {
+        if (mCodecRecorder != null) {
+            return mCodecRecorder.getSurface();
+        }
         return mMediaRecorder == null ? null : mMediaRecorder.getSurface();
     }
 
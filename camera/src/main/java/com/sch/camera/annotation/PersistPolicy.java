@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.annotation;
+
+import android.support.annotation.IntDef;
+
+import com.sch.camera.DefOptions;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by StoneHui on 2018/9/3.
+ * <p>
+ * 保存队列已满时的处理策略。
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.METHOD, ElementType.FIELD, ElementType.PARAMETER})
+@IntDef({DefOptions.PERSIST_POLICY_BLOCK, DefOptions.PERSIST_POLICY_DROP_OLDEST, DefOptions.PERSIST_POLICY_REJECT})
+public @interface PersistPolicy {
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.encoder;
+
+import android.media.MediaCodec;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 已编码音视频帧的环形缓冲区，用于录像的预录。
+ * <p>
+ * 按时长和字节数两个上限淘汰最旧的帧；被淘汰帧的数组会被复用，避免持续分配，复用的数组同样计入字节数。
+ * 取出时从最早的视频关键帧开始，保证写入文件的第一帧可以独立解码。
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+class EncodedSampleRing {
+
+    /**
+     * 最多复用的数组数量。
+     */
+    private static final int MAX_FREE_COUNT = 8;
+
+    /**
+     * 一帧编码数据。
+     */
+    static final class Sample {
+        boolean isVideo;
+        byte[] data;
+        int size;
+        long presentationTimeUs;
+        int flags;
+
+        boolean isKeyFrame() {
+            return (flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        }
+    }
+
+    private final long mDurationUs;
+    private final long mMaxBytes;
+    private final ArrayDeque<Sample> mSamples = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> mFreeArrays = new ArrayDeque<>();
+    private long mBytes = 0;
+    private long mFreeBytes = 0;
+    private long mLatestVideoTimeUs = -1;
+
+    /**
+     * @param durationMs 最多缓存的时长，单位 ms。
+     * @param maxBytes   最多缓存的字节数。
+     */
+    EncodedSampleRing(long durationMs, long maxBytes) {
+        mDurationUs = durationMs * 1000;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 复制并缓存一帧编码数据。
+     */
+    void add(boolean isVideo, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if (info.size > mMaxBytes) {
+            return;
+        }
+        Sample sample = new Sample();
+        sample.isVideo = isVideo;
+        sample.data = obtainArray(info.size);
+        sample.size = info.size;
+        sample.presentationTimeUs = info.presentationTimeUs;
+        sample.flags = info.flags;
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        buffer.get(sample.data, 0, info.size);
+        mSamples.addLast(sample);
+        mBytes += sample.size;
+        if (isVideo) {
+            mLatestVideoTimeUs = info.presentationTimeUs;
+        }
+        trim();
+    }
+
+    /**
+     * 淘汰超出时长或字节数的帧。
+     */
+    private void trim() {
+        while (true) {
+            if (mBytes + mFreeBytes > mMaxBytes && !mFreeArrays.isEmpty()) {
+                mFreeBytes -= mFreeArrays.pollFirst().length;
+                continue;
+            }
+            Sample oldest = mSamples.peekFirst();
+            if (oldest == null) {
+                return;
+            }
+            boolean isExpired = mLatestVideoTimeUs >= 0 && mLatestVideoTimeUs - oldest.presentationTimeUs > mDurationUs;
+            if (mBytes <= mMaxBytes && !isExpired) {
+                return;
+            }
+            mSamples.pollFirst();
+            mBytes -= oldest.size;
+            recycle(oldest.data);
+        }
+    }
+
+    /**
+     * 取出缓存的帧，从最早的视频关键帧开始，之前的帧被丢弃。取出后缓冲区为空。
+     *
+     * @return 按写入顺序排列的帧。
+     */
+    ArrayDeque<Sample> drainFromKeyFrame() {
+        Iterator<Sample> iterator = mSamples.iterator();
+        long keyFrameTimeUs = -1;
+        while (iterator.hasNext()) {
+            Sample sample = iterator.next();
+            if (sample.isVideo && sample.isKeyFrame()) {
+                keyFrameTimeUs = sample.presentationTimeUs;
+                break;
+            }
+        }
+        ArrayDeque<Sample> result = new ArrayDeque<>(mSamples.size());
+        if (keyFrameTimeUs >= 0) {
+            for (Sample sample : mSamples) {
+                if (sample.presentationTimeUs >= keyFrameTimeUs) {
+                    result.addLast(sample);
+                }
+            }
+        }
+        mSamples.clear();
+        mFreeArrays.clear();
+        mBytes = 0;
+        mFreeBytes = 0;
+        mLatestVideoTimeUs = -1;
+        return result;
+    }
+
+    /**
+     * 清空缓冲区。
+     */
+    void clear() {
+        mSamples.clear();
+        mFreeArrays.clear();
+        mBytes = 0;
+        mFreeBytes = 0;
+        mLatestVideoTimeUs = -1;
+    }
+
+    private byte[] obtainArray(int size) {
+        Iterator<byte[]> iterator = mFreeArrays.iterator();
+        while (iterator.hasNext()) {
+            byte[] array = iterator.next();
+            if (array.length >= size) {
+                iterator.remove();
+                mFreeBytes -= array.length;
+                return array;
+            }
+        }
+        return new byte[size];
+    }
+
+    private void recycle(byte[] array) {
+        if (mFreeArrays.size() >= MAX_FREE_COUNT) {
+            mFreeBytes -= mFreeArrays.pollFirst().length;
+        }
+        mFreeArrays.addLast(array);
+        mFreeBytes += array.length;
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.encoder;
+
+import android.content.Context;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import com.sch.camera.SnapshotFile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 设备的视频编码能力。
+ * <p>
+ * 首次使用时遍历 MediaCodecList 探测 H.264 和 HEVC 的硬件编码器，结果序列化到应用的私有目录并以 Build.FINGERPRINT 校验，
+ * 之后直接从文件加载。录像时按探测到的编码器名称创建编码器，保证使用的就是探测的编码器。
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class EncoderCapabilities {
+
+    /**
+     * 快照文件名。
+     */
+    private static final String SNAPSHOT_FILE_NAME = "sch_encoder_capabilities";
+    /**
+     * 快照文件的标识。
+     */
+    private static final int SNAPSHOT_MAGIC = 0x53434543;
+    /**
+     * 快照格式的版本，修改字段后需要递增。
+     */
+    private static final int SNAPSHOT_VERSION = 2;
+
+    /**
+     * 关键帧间隔，单位 s。间隔较短，分段、剪辑时可以更精确地从关键帧切分。
+     */
+    private static final int I_FRAME_INTERVAL = 1;
+
+    /**
+     * 30fps 下 H.264 的码率阶梯，按像素数递增。
+     */
+    private static final int[][] BIT_RATE_LADDER = {
+            {320 * 240, 1000000},
+            {640 * 480, 2500000},
+            {1280 * 720, 5000000},
+            {1920 * 1080, 10000000},
+            {3840 * 2160, 35000000},
+    };
+    /**
+     * 相同画质下 HEVC 相对 H.264 的码率。
+     */
+    private static final float HEVC_BIT_RATE_FACTOR = 0.6F;
+
+    private static EncoderCapabilities sInstance;
+
+    /**
+     * H.264 编码器，不支持时为 null。
+     */
+    private final CodecInfo mAvcInfo;
+    /**
+     * HEVC 编码器，不支持时为 null。
+     */
+    private final CodecInfo mHevcInfo;
+
+    /**
+     * 获取设备的视频编码能力，首次调用时加载或探测。
+     *
+     * @param context Context。
+     */
+    @NonNull
+    public static synchronized EncoderCapabilities get(@NonNull Context context) {
+        if (sInstance == null) {
+            SnapshotFile snapshotFile = new SnapshotFile(new File(context.getNoBackupFilesDir(), SNAPSHOT_FILE_NAME),
+                    SNAPSHOT_MAGIC, SNAPSHOT_VERSION);
+            sInstance = readSnapshot(snapshotFile);
+            if (sInstance == null) {
+                sInstance = new EncoderCapabilities(probe(MediaFormat.MIMETYPE_VIDEO_AVC),
+                        probe(MediaFormat.MIMETYPE_VIDEO_HEVC));
+                writeSnapshot(snapshotFile, sInstance);
+            }
+        }
+        return sInstance;
+    }
+
+    private EncoderCapabilities(CodecInfo avcInfo, CodecInfo hevcInfo) {
+        mAvcInfo = avcInfo;
+        mHevcInfo = hevcInfo;
+    }
+
+    /**
+     * 选择编码配置，默认使用 H.264。MediaMuxer 从 Android 7.0 开始支持 HEVC，允许时优先使用 HEVC。
+     *
+     * @param width      视频宽度。
+     * @param height     视频高度。
+     * @param frameRate  帧率。
+     * @param preferHevc 是否优先使用 HEVC。
+     * @return 编码配置，设备没有可以编码该尺寸的编码器时返回 null。
+     */
+    @Nullable
+    public EncoderProfile selectProfile(int width, int height, int frameRate, boolean preferHevc) {
+        if (preferHevc && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && mHevcInfo != null && mHevcInfo.isSizeSupported(width, height)) {
+            return createProfile(mHevcInfo, width, height, frameRate, HEVC_BIT_RATE_FACTOR);
+        }
+        if (mAvcInfo != null && mAvcInfo.isSizeSupported(width, height)) {
+            return createProfile(mAvcInfo, width, height, frameRate, 1F);
+        }
+        return null;
+    }
+
+    private static EncoderProfile createProfile(CodecInfo info, int width, int height, int frameRate, float factor) {
+        int bitRate = (int) (getLadderBitRate(width * height) * factor * frameRate / 30);
+        if (info.mMaxBitRate > 0) {
+            bitRate = Math.min(bitRate, info.mMaxBitRate);
+        }
+        return new EncoderProfile(info.mCodecName, info.mMimeType, width, height, bitRate, frameRate, I_FRAME_INTERVAL,
+                info.mProfile, info.mLevel);
+    }
+
+    /**
+     * 获取 30fps 下 H.264 的码率，在阶梯之间按像素数线性插值。
+     *
+     * @param pixels 每帧的像素数。
+     */
+    static int getLadderBitRate(int pixels) {
+        if (pixels <= BIT_RATE_LADDER[0][0]) {
+            return BIT_RATE_LADDER[0][1];
+        }
+        for (int i = 1; i < BIT_RATE_LADDER.length; i++) {
+            int[] low = BIT_RATE_LADDER[i - 1];
+            int[] high = BIT_RATE_LADDER[i];
+            if (pixels <= high[0]) {
+                return low[1] + (int) ((long) (high[1] - low[1]) * (pixels - low[0]) / (high[0] - low[0]));
+            }
+        }
+        return BIT_RATE_LADDER[BIT_RATE_LADDER.length - 1][1];
+    }
+
+    /**
+     * 探测指定格式的硬件编码器，跳过软件编码器。
+     *
+     * @param mimeType 编码格式。
+     * @return 编码器能力，不支持时返回 null。
+     */
+    private static CodecInfo probe(String mimeType) {
+        try {
+            MediaCodecInfo[] infoArray = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+            for (MediaCodecInfo info : infoArray) {
+                if (!info.isEncoder() || isSoftwareCodec(info.getName()) || !isSupportedType(info, mimeType)) {
+                    continue;
+                }
+                MediaCodecInfo.CodecCapabilities capabilities = info.getCapabilitiesForType(mimeType);
+                MediaCodecInfo.VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
+                if (videoCapabilities == null) {
+                    continue;
+                }
+                int profile = 0;
+                int level = 0;
+                if (MediaFormat.MIMETYPE_VIDEO_AVC.equals(mimeType)) {
+                    // High profile 同等画质下码率更低。
+                    for (MediaCodecInfo.CodecProfileLevel profileLevel : capabilities.profileLevels) {
+                        if (profileLevel.profile == MediaCodecInfo.CodecProfileLevel.AVCProfileHigh
+                                && profileLevel.level > level) {
+                            profile = profileLevel.profile;
+                            level = profileLevel.level;
+                        }
+                    }
+                }
+                return new CodecInfo(info.getName(), mimeType,
+                        videoCapabilities.getSupportedWidths().getUpper(),
+                        videoCapabilities.getSupportedHeights().getUpper(),
+                        videoCapabilities.getWidthAlignment(),
+                        videoCapabilities.getHeightAlignment(),
+                        videoCapabilities.getBitrateRange().getUpper(),
+                        profile, level);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 是否是软件编码器。Android 10 之前没有公开的接口，按系统软件编码器的命名规则判断。
+     */
+    static boolean isSoftwareCodec(String name) {
+        String lowerName = name.toLowerCase(Locale.US);
+        return lowerName.startsWith("omx.google.") || lowerName.startsWith("c2.android.")
+                || lowerName.startsWith("omx.ffmpeg.") || lowerName.contains(".sw.");
+    }
+
+    private static boolean isSupportedType(MediaCodecInfo info, String mimeType) {
+        for (String type : info.getSupportedTypes()) {
+            if (type.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取快照文件。
+     *
+     * @return 编码能力，文件不存在、格式不符或系统版本已变化时返回 null。
+     */
+    private static EncoderCapabilities readSnapshot(SnapshotFile snapshotFile) {
+        return snapshotFile.read(new SnapshotFile.Reader<EncoderCapabilities>() {
+            @Override
+            public EncoderCapabilities read(@NonNull DataInputStream in) throws IOException {
+                CodecInfo avcInfo = CodecInfo.read(in);
+                CodecInfo hevcInfo = CodecInfo.read(in);
+                return new EncoderCapabilities(avcInfo, hevcInfo);
+            }
+        });
+    }
+
+    /**
+     * 写入快照文件。
+     */
+    private static void writeSnapshot(SnapshotFile snapshotFile, final EncoderCapabilities capabilities) {
+        snapshotFile.write(new SnapshotFile.Writer() {
+            @Override
+            public void write(@NonNull DataOutputStream out) throws IOException {
+                CodecInfo.write(out, capabilities.mAvcInfo);
+                CodecInfo.write(out, capabilities.mHevcInfo);
+            }
+        });
+    }
+
+    /**
+     * 单个编码器的能力。
+     */
+    private static final class CodecInfo {
+
+        private final String mCodecName;
+        private final String mMimeType;
+        private final int mMaxWidth;
+        private final int mMaxHeight;
+        private final int mWidthAlignment;
+        private final int mHeightAlignment;
+        private final int mMaxBitRate;
+        private final int mProfile;
+        private final int mLevel;
+
+        private CodecInfo(String codecName, String mimeType, int maxWidth, int maxHeight, int widthAlignment,
+                          int heightAlignment, int maxBitRate, int profile, int level) {
+            mCodecName = codecName;
+            mMimeType = mimeType;
+            mMaxWidth = maxWidth;
+            mMaxHeight = maxHeight;
+            mWidthAlignment = Math.max(1, widthAlignment);
+            mHeightAlignment = Math.max(1, heightAlignment);
+            mMaxBitRate = maxBitRate;
+            mProfile = profile;
+            mLevel = level;
+        }
+
+        /**
+         * 是否支持编码指定尺寸。宽高的上限可能与方向有关，两个方向都检查。
+         */
+        private boolean isSizeSupported(int width, int height) {
+            if (width % mWidthAlignment != 0 || height % mHeightAlignment != 0) {
+                return false;
+            }
+            int max = Math.max(mMaxWidth, mMaxHeight);
+            int min = Math.min(mMaxWidth, mMaxHeight);
+            return Math.max(width, height) <= max && Math.min(width, height) <= min;
+        }
+
+        private static CodecInfo read(DataInputStream in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            return new CodecInfo(in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt(), in.readInt(), in.readInt());
+        }
+
+        private static void write(DataOutputStream out, CodecInfo info) throws IOException {
+            out.writeBoolean(info != null);
+            if (info == null) {
+                return;
+            }
+            out.writeUTF(info.mCodecName);
+            out.writeUTF(info.mMimeType);
+            out.writeInt(info.mMaxWidth);
+            out.writeInt(info.mMaxHeight);
+            out.writeInt(info.mWidthAlignment);
+            out.writeInt(info.mHeightAlignment);
+            out.writeInt(info.mMaxBitRate);
+            out.writeInt(info.mProfile);
+            out.writeInt(info.mLevel);
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.encoder;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 视频编码配置，由 {@link EncoderCapabilities#selectProfile(int, int, int, boolean)} 根据设备的编码能力生成。
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class EncoderProfile {
+
+    private final String mCodecName;
+    private final String mMimeType;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mBitRate;
+    private final int mFrameRate;
+    private final int mIFrameInterval;
+    private final int mProfile;
+    private final int mLevel;
+
+    /**
+     * @param codecName      编码器名称，MediaCodecInfo.getName()。
+     * @param mimeType       编码格式，MediaFormat.MIMETYPE_VIDEO_*。
+     * @param width          视频宽度。
+     * @param height         视频高度。
+     * @param bitRate        码率，单位 bit/s。
+     * @param frameRate      帧率。
+     * @param iFrameInterval 关键帧间隔，单位 s。
+     * @param profile        编码 profile，0 表示使用编码器默认值。
+     * @param level          编码 level，0 表示使用编码器默认值。
+     */
+    EncoderProfile(String codecName, String mimeType, int width, int height, int bitRate, int frameRate,
+                   int iFrameInterval, int profile, int level) {
+        mCodecName = codecName;
+        mMimeType = mimeType;
+        mWidth = width;
+        mHeight = height;
+        mBitRate = bitRate;
+        mFrameRate = frameRate;
+        mIFrameInterval = iFrameInterval;
+        mProfile = profile;
+        mLevel = level;
+    }
+
+    /**
+     * 编码器名称，用于 MediaCodec.createByCodecName(String)。
+     */
+    public String getCodecName() {
+        return mCodecName;
+    }
+
+    public String getMimeType() {
+        return mMimeType;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    public int getIFrameInterval() {
+        return mIFrameInterval;
+    }
+
+    /**
+     * 创建视频编码器的配置，输入为 Surface。
+     */
+    @NonNull
+    public MediaFormat createVideoFormat() {
+        MediaFormat format = MediaFormat.createVideoFormat(mMimeType, mWidth, mHeight);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, mBitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, mFrameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, mIFrameInterval);
+        // 低版本的编码器会忽略 profile，甚至因此配置失败。
+        if (mProfile != 0 && mLevel != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            format.setInteger(MediaFormat.KEY_PROFILE, mProfile);
+            format.setInteger(MediaFormat.KEY_LEVEL, mLevel);
+        }
+        return format;
+    }
+
+    @Override
+    public String toString() {
+        return mCodecName + " " + mMimeType + " " + mWidth + "x" + mHeight + " " + mBitRate / 1000 + "kbps " + mFrameRate + "fps"
+                + " gop=" + mIFrameInterval + "s";
+    }
+
+}
@@ -0,0 +1,838 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.encoder;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 基于 MediaCodec 和 MediaMuxer 的录像器。视频从输入 Surface 编码，音频从麦克风采集后编码为 AAC。
+ * <p>
+ * 音视频各有一个线程取出编码数据，两路的格式都确定后才启动 MediaMuxer；
+ * 时间戳以第一帧视频为起点，早于第一帧视频的音频被丢弃。
+ * <p>
+ * 设置分段后，录制达到时长或大小时在下一个关键帧切换到新文件，每个分段都是完整的 MP4 文件；
+ * 上一个分段在音频追上切换点后才关闭，分段边界不丢帧。
+ * <p>
+ * 设置预录后，编码数据先写入内存中的环形缓冲区，调用 {@link #startOutput(int)} 时创建输出文件，
+ * 从缓冲区中最早的关键帧开始写入，之后的数据直接写入文件。
+ * <p>
+ * 暂停期间的编码数据被丢弃，恢复后从新的关键帧开始写入，并减去暂停的时长，时间戳保持连续。
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class MediaCodecRecorder {
+
+    /**
+     * 分段监听。
+     */
+    public interface OnSegmentListener {
+
+        /**
+         * 一个分段已经写入完毕，在编码线程或调用 {@link #stop()} 的线程回调，回调时不持有录像器内部的锁。
+         *
+         * @param file  分段文件。
+         * @param index 分段序号，从 0 开始。
+         */
+        void onSegmentFinished(@NonNull File file, int index);
+    }
+
+    private static final int AUDIO_SAMPLE_RATE = 44100;
+    private static final int AUDIO_BIT_RATE = 64000;
+    /**
+     * AAC 每帧的采样数。
+     */
+    private static final int AUDIO_SAMPLES_PER_FRAME = 1024;
+    /**
+     * 单声道 16 位 PCM 每帧的字节数。
+     */
+    private static final int AUDIO_BYTES_PER_FRAME = AUDIO_SAMPLES_PER_FRAME * 2;
+    /**
+     * 等待编码器缓冲区的超时时间，单位 us。
+     */
+    private static final long TIMEOUT_US = 10000;
+    /**
+     * 结束录制后等待编码器输出结束标志的最长时间，单位 ms。
+     */
+    private static final long EOS_TIMEOUT_MS = 2000;
+
+    private final EncoderProfile mProfile;
+    private int mOrientation;
+    private final String mFilePath;
+    private final Surface mPersistentSurface;
+    private final boolean isTimestampRealtime;
+
+    private MediaCodec mVideoCodec;
+    private MediaCodec mAudioCodec;
+    private AudioRecord mAudioRecord;
+    private MediaMuxer mMuxer;
+    private Surface mInputSurface;
+
+    private Thread mVideoThread;
+    private Thread mAudioThread;
+    private volatile boolean isStopping = false;
+
+    private final Object mMuxerLock = new Object();
+    private int mVideoTrack = -1;
+    private int mAudioTrack = -1;
+    private boolean isMuxerStarted = false;
+    /**
+     * 第一帧视频的时间戳，单位 us。
+     */
+    private long mBaseTimeUs = -1;
+    private long mLastAudioTimeUs = -1;
+    private int mVideoSampleCount = 0;
+
+    private MediaFormat mVideoFormat;
+    private MediaFormat mAudioFormat;
+
+    /**
+     * 分段时长，单位 us，0 表示不限。
+     */
+    private long mSegmentDurationUs = 0;
+    /**
+     * 分段大小，单位 byte，0 表示不限。
+     */
+    private long mSegmentSize = 0;
+    private OnSegmentListener mSegmentListener;
+    /**
+     * 当前分段的序号、文件路径和已写入的字节数。
+     */
+    private int mSegmentIndex = 0;
+    private String mSegmentPath;
+    private long mSegmentWrittenSize = 0;
+    /**
+     * 等待关闭的上一个分段，切换点之前的音频继续写入该分段。
+     */
+    private MediaMuxer mClosingMuxer;
+    private String mClosingPath;
+    private int mClosingIndex;
+    private int mClosingAudioTrack;
+    private long mClosingBaseTimeUs;
+    private long mClosingLastAudioTimeUs;
+    /**
+     * 已关闭但还没有回调的分段，由 mMuxerLock 保护。在锁外回调，避免监听阻塞另一路编码线程。
+     */
+    private final ArrayDeque<FinishedSegment> mFinishedSegments = new ArrayDeque<>();
+    /**
+     * 保证分段按顺序回调。
+     */
+    private final Object mSegmentCallbackLock = new Object();
+
+    /**
+     * 预录缓冲区，没有设置预录时为 null。
+     */
+    private EncodedSampleRing mPreRollRing;
+    /**
+     * 是否已经开始写入文件，预录期间为 false。
+     */
+    private boolean isOutputStarted = true;
+
+    /**
+     * 是否暂停，以及恢复后是否还在等待关键帧。
+     */
+    private boolean isPaused = false;
+    private boolean isResuming = false;
+    /**
+     * 累计暂停的时长，单位 us，从之后的时间戳中减去。
+     */
+    private long mPausedDurationUs = 0;
+    /**
+     * 最后写入的视频帧减去暂停时长后的时间戳，单位 us。
+     */
+    private long mLastVideoTimeUs = -1;
+
+    /**
+     * 初始化。
+     *
+     * @param profile             视频编码配置。
+     * @param orientation         摄像方向。
+     * @param filePath            视频文件保存路径。
+     * @param persistentSurface   MediaCodec.createPersistentInputSurface() 创建的 Surface，为 null 时由编码器创建输入 Surface。
+     * @param isTimestampRealtime 输入帧的时间戳是否与 SystemClock.elapsedRealtimeNanos() 使用相同的时间基准，
+     *                            否则与 System.nanoTime() 相同。
+     */
+    public MediaCodecRecorder(@NonNull EncoderProfile profile, int orientation, @NonNull String filePath,
+                              @Nullable Surface persistentSurface, boolean isTimestampRealtime) {
+        mProfile = profile;
+        mOrientation = orientation;
+        mFilePath = filePath;
+        mPersistentSurface = persistentSurface;
+        this.isTimestampRealtime = isTimestampRealtime;
+        mSegmentPath = filePath;
+    }
+
+    /**
+     * 设置分段，需要在 {@link #start()} 之前调用。时长和大小都为 0 时不分段。
+     *
+     * @param durationMs 分段时长，单位 ms，0 表示不限。
+     * @param size       分段大小，单位 byte，0 表示不限。
+     * @param listener   分段监听，包括结束录制时的最后一个分段。
+     */
+    public void setSegmentLimit(long durationMs, long size, @Nullable OnSegmentListener listener) {
+        synchronized (mMuxerLock) {
+            mSegmentDurationUs = Math.max(0, durationMs) * 1000;
+            mSegmentSize = Math.max(0, size);
+            mSegmentListener = listener;
+        }
+    }
+
+    /**
+     * 设置预录，需要在 {@link #prepare()} 之前调用。开始后编码数据只保存在内存中，
+     * 调用 {@link #startOutput(int)} 后才写入文件。
+     *
+     * @param durationMs 预录时长，单位 ms。
+     * @param maxBytes   缓冲区最多占用的内存，单位 byte。
+     */
+    public void setPreRoll(long durationMs, long maxBytes) {
+        synchronized (mMuxerLock) {
+            mPreRollRing = new EncodedSampleRing(durationMs, maxBytes);
+            isOutputStarted = false;
+        }
+    }
+
+    /**
+     * 是否分段录制。
+     */
+    private boolean isSegmented() {
+        return mSegmentListener != null && (mSegmentDurationUs > 0 || mSegmentSize > 0);
+    }
+
+    /**
+     * 只用视频编码器配置持久输入 Surface，使相机会话可以提前包含这个 Surface。
+     * 不打开麦克风，也不创建 MediaMuxer，无需录音权限。
+     *
+     * @param profile      视频编码配置。
+     * @param inputSurface MediaCodec.createPersistentInputSurface() 创建的 Surface。
+     * @throws IOException 编码器不可用。
+     */
+    @RequiresApi(Build.VERSION_CODES.M)
+    public static void configureInputSurface(@NonNull EncoderProfile profile, @NonNull Surface inputSurface)
+            throws IOException {
+        MediaCodec codec = MediaCodec.createByCodecName(profile.getCodecName());
+        try {
+            codec.configure(profile.createVideoFormat(), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.setInputSurface(inputSurface);
+        } catch (RuntimeException e) {
+            throw new IOException(e);
+        } finally {
+            codec.release();
+        }
+    }
+
+    /**
+     * 创建并配置编码器。
+     *
+     * @throws IOException 编码器或麦克风不可用。
+     */
+    public void prepare() throws IOException {
+        try {
+            // 使用探测时的编码器，按类型创建可能得到软件编码器。
+            mVideoCodec = MediaCodec.createByCodecName(mProfile.getCodecName());
+            mVideoCodec.configure(mProfile.createVideoFormat(), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            if (mPersistentSurface != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                mVideoCodec.setInputSurface(mPersistentSurface);
+            } else {
+                mInputSurface = mVideoCodec.createInputSurface();
+            }
+
+            int minBufferSize = AudioRecord.getMinBufferSize(AUDIO_SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+            mAudioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, AUDIO_SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                    Math.max(minBufferSize, AUDIO_BYTES_PER_FRAME * 10));
+            if (mAudioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+                throw new IOException("AudioRecord initialization failed");
+            }
+
+            MediaFormat audioFormat = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, AUDIO_SAMPLE_RATE, 1);
+            audioFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+            audioFormat.setInteger(MediaFormat.KEY_BIT_RATE, AUDIO_BIT_RATE);
+            audioFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, AUDIO_BYTES_PER_FRAME);
+            mAudioCodec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+            mAudioCodec.configure(audioFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+
+            if (isOutputStarted) {
+                mMuxer = createMuxer(mSegmentPath);
+            }
+        } catch (IOException e) {
+            release();
+            throw e;
+        } catch (RuntimeException e) {
+            // MediaCodec 配置失败时抛出 IllegalStateException 等运行时异常。
+            release();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 创建输出文件的 MediaMuxer。
+     */
+    private MediaMuxer createMuxer(String filePath) throws IOException {
+        MediaMuxer muxer = new MediaMuxer(filePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        muxer.setOrientationHint(mOrientation);
+        return muxer;
+    }
+
+    /**
+     * 开始写入文件，预录的数据从最早的关键帧开始写入。没有设置预录时不需要调用。
+     *
+     * @param orientation 摄像方向，预录期间方向可能已经改变。
+     * @throws IOException 无法创建输出文件。
+     */
+    public void startOutput(int orientation) throws IOException {
+        synchronized (mMuxerLock) {
+            if (isOutputStarted) {
+                return;
+            }
+            mOrientation = orientation;
+            mMuxer = createMuxer(mSegmentPath);
+            isOutputStarted = true;
+            tryStartMuxer();
+            ArrayDeque<EncodedSampleRing.Sample> samples = mPreRollRing.drainFromKeyFrame();
+            mPreRollRing = null;
+            if (!isMuxerStarted) {
+                // 两路格式都确定之前没有编码数据，缓冲区为空。
+                return;
+            }
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            for (EncodedSampleRing.Sample sample : samples) {
+                info.set(0, sample.size, sample.presentationTimeUs, sample.flags);
+                writeSampleLocked(sample.isVideo, ByteBuffer.wrap(sample.data, 0, sample.size), info);
+            }
+        }
+        dispatchFinishedSegments();
+    }
+
+    /**
+     * 开始录制，设置了预录时开始编码到缓冲区。
+     */
+    public void start() {
+        isStopping = false;
+        mVideoCodec.start();
+        mAudioCodec.start();
+        mAudioRecord.startRecording();
+
+        mVideoThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainVideo();
+            }
+        }, "CameraVideoEncoder");
+        mAudioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                encodeAudio();
+            }
+        }, "CameraAudioEncoder");
+        mVideoThread.start();
+        mAudioThread.start();
+    }
+
+    /**
+     * 暂停录制，编码器继续运行，暂停期间的数据不写入文件。
+     */
+    public void pause() {
+        synchronized (mMuxerLock) {
+            isPaused = true;
+            isResuming = false;
+        }
+    }
+
+    /**
+     * 恢复录制，从下一个关键帧开始写入。
+     */
+    public void resume() {
+        synchronized (mMuxerLock) {
+            if (!isPaused) {
+                return;
+            }
+            isPaused = false;
+            isResuming = true;
+        }
+        // 不等待编码器的下一个周期关键帧。
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        try {
+            mVideoCodec.setParameters(params);
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 结束录制。
+     *
+     * @throws RuntimeException 没有录制到任何视频帧，与 MediaRecorder.stop() 一致。
+     */
+    public void stop() {
+        boolean hasVideo;
+        try {
+            stopThreads();
+            synchronized (mMuxerLock) {
+                hasVideo = mVideoSampleCount > 0;
+            }
+        } finally {
+            release();
+        }
+        if (!hasVideo) {
+            throw new RuntimeException("No video frame was recorded");
+        }
+    }
+
+    /**
+     * 释放资源，已准备但未开始的录制也通过该方法丢弃。
+     */
+    public void release() {
+        stopThreads();
+        if (mAudioRecord != null) {
+            mAudioRecord.release();
+            mAudioRecord = null;
+        }
+        if (mVideoCodec != null) {
+            mVideoCodec.release();
+            mVideoCodec = null;
+        }
+        if (mAudioCodec != null) {
+            mAudioCodec.release();
+            mAudioCodec = null;
+        }
+        if (mInputSurface != null) {
+            mInputSurface.release();
+            mInputSurface = null;
+        }
+        synchronized (mMuxerLock) {
+            finishClosingSegment();
+            if (mMuxer != null) {
+                boolean isFinished = false;
+                try {
+                    if (isMuxerStarted) {
+                        mMuxer.stop();
+                        isFinished = mBaseTimeUs >= 0;
+                    }
+                } catch (IllegalStateException e) {
+                    e.printStackTrace();
+                }
+                mMuxer.release();
+                mMuxer = null;
+                if (isFinished && isSegmented()) {
+                    mFinishedSegments.add(new FinishedSegment(new File(mSegmentPath), mSegmentIndex));
+                }
+            }
+            isMuxerStarted = false;
+            if (mPreRollRing != null) {
+                mPreRollRing.clear();
+                mPreRollRing = null;
+            }
+        }
+        dispatchFinishedSegments();
+    }
+
+    /**
+     * 编码器的输入 Surface，使用持久 Surface 时返回 null。
+     */
+    @Nullable
+    public Surface getSurface() {
+        return mInputSurface;
+    }
+
+    /**
+     * 通知编码线程结束，并等待剩余的数据写入文件。
+     */
+    private void stopThreads() {
+        if (mVideoThread == null && mAudioThread == null) {
+            return;
+        }
+        isStopping = true;
+        try {
+            mVideoCodec.signalEndOfInputStream();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+        synchronized (mMuxerLock) {
+            mMuxerLock.notifyAll();
+        }
+        join(mVideoThread);
+        join(mAudioThread);
+        mVideoThread = null;
+        mAudioThread = null;
+        mAudioRecord.stop();
+        mVideoCodec.stop();
+        mAudioCodec.stop();
+    }
+
+    private static void join(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 取出视频编码数据，直到编码器输出结束标志。
+     */
+    private void drainVideo() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        long stopTime = 0;
+        while (true) {
+            int index = mVideoCodec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                addTrack(true, mVideoCodec.getOutputFormat());
+            } else if (index >= 0) {
+                ByteBuffer buffer = mVideoCodec.getOutputBuffer(index);
+                if (buffer != null && info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                    writeSample(true, buffer, info);
+                }
+                mVideoCodec.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            } else if (isStopping) {
+                // 部分编码器在没有输入帧时不会输出结束标志。
+                if (stopTime == 0) {
+                    stopTime = SystemClock.elapsedRealtime();
+                } else if (SystemClock.elapsedRealtime() - stopTime > EOS_TIMEOUT_MS) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 采集并编码音频，结束录制时向编码器发送结束标志，取出剩余数据后返回。
+     */
+    private void encodeAudio() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean isInputEnded = false;
+        while (true) {
+            if (!isInputEnded) {
+                int inIndex = mAudioCodec.dequeueInputBuffer(TIMEOUT_US);
+                if (inIndex >= 0) {
+                    ByteBuffer buffer = mAudioCodec.getInputBuffer(inIndex);
+                    if (isStopping || buffer == null) {
+                        mAudioCodec.queueInputBuffer(inIndex, 0, 0, getAudioTimeUs(0),
+                                MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        isInputEnded = true;
+                    } else {
+                        buffer.clear();
+                        int read = mAudioRecord.read(buffer, Math.min(buffer.remaining(), AUDIO_BYTES_PER_FRAME));
+                        read = Math.max(read, 0);
+                        mAudioCodec.queueInputBuffer(inIndex, 0, read, getAudioTimeUs(read), 0);
+                    }
+                }
+            }
+            int outIndex = mAudioCodec.dequeueOutputBuffer(info, isInputEnded ? TIMEOUT_US : 0);
+            if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                addTrack(false, mAudioCodec.getOutputFormat());
+            } else if (outIndex >= 0) {
+                ByteBuffer buffer = mAudioCodec.getOutputBuffer(outIndex);
+                if (buffer != null && info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                    writeSample(false, buffer, info);
+                }
+                mAudioCodec.releaseOutputBuffer(outIndex, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算刚读取的音频数据的起始时间戳，与视频帧使用相同的时间基准。
+     *
+     * @param readBytes 读取的字节数。
+     */
+    private long getAudioTimeUs(int readBytes) {
+        long nowUs = (isTimestampRealtime ? SystemClock.elapsedRealtimeNanos() : System.nanoTime()) / 1000;
+        return nowUs - readBytes / 2 * 1000000L / AUDIO_SAMPLE_RATE;
+    }
+
+    /**
+     * 记录音轨或视频轨的格式，两路都确定后启动 MediaMuxer。
+     */
+    private void addTrack(boolean isVideo, MediaFormat format) {
+        synchronized (mMuxerLock) {
+            if (isVideo) {
+                mVideoFormat = format;
+            } else {
+                mAudioFormat = format;
+            }
+            tryStartMuxer();
+        }
+    }
+
+    /**
+     * 已经开始写入文件且两路格式都确定时，添加轨道并启动 MediaMuxer。
+     */
+    private void tryStartMuxer() {
+        if (mMuxer == null || isMuxerStarted || !isOutputStarted || mVideoFormat == null || mAudioFormat == null) {
+            return;
+        }
+        mVideoTrack = mMuxer.addTrack(mVideoFormat);
+        mAudioTrack = mMuxer.addTrack(mAudioFormat);
+        mMuxer.start();
+        isMuxerStarted = true;
+        mMuxerLock.notifyAll();
+    }
+
+    /**
+     * 写入一帧编码数据，预录期间写入缓冲区，MediaMuxer 还没有启动时等待。
+     */
+    private void writeSample(boolean isVideo, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        writeSampleInternal(isVideo, buffer, info);
+        dispatchFinishedSegments();
+    }
+
+    /**
+     * 写入一帧编码数据，关闭的分段只加入待回调队列。
+     */
+    private void writeSampleInternal(boolean isVideo, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        synchronized (mMuxerLock) {
+            if (!isOutputStarted) {
+                mPreRollRing.add(isVideo, buffer, info);
+                return;
+            }
+            while (!isMuxerStarted && !isStopping) {
+                try {
+                    mMuxerLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (!isMuxerStarted || isPaused) {
+                return;
+            }
+            if (isResuming) {
+                if (!isVideo || (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) == 0) {
+                    // 恢复后从关键帧开始写入，之前的音频也丢弃。
+                    return;
+                }
+                if (mLastVideoTimeUs >= 0) {
+                    // 恢复后的第一帧紧接在暂停前的最后一帧之后。
+                    long frameIntervalUs = 1000000L / Math.max(1, mProfile.getFrameRate());
+                    mPausedDurationUs = info.presentationTimeUs - mLastVideoTimeUs - frameIntervalUs;
+                }
+                isResuming = false;
+            }
+            if (mPausedDurationUs > 0) {
+                MediaCodec.BufferInfo shiftedInfo = new MediaCodec.BufferInfo();
+                shiftedInfo.set(info.offset, info.size, info.presentationTimeUs - mPausedDurationUs, info.flags);
+                info = shiftedInfo;
+            }
+            if (isVideo) {
+                mLastVideoTimeUs = info.presentationTimeUs;
+            }
+            writeSampleLocked(isVideo, buffer, info);
+        }
+    }
+
+    /**
+     * 写入一帧编码数据，需要持有 mMuxerLock 且 MediaMuxer 已经启动。
+     */
+    private void writeSampleLocked(boolean isVideo, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        long presentationTimeUs = info.presentationTimeUs;
+        if (isVideo && mBaseTimeUs < 0) {
+            mBaseTimeUs = presentationTimeUs;
+        }
+        if (mBaseTimeUs < 0) {
+            // 第一帧视频之前的音频。
+            return;
+        }
+        if (isVideo) {
+            if ((info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0 && isSegmentFull(presentationTimeUs)) {
+                startNextSegment(presentationTimeUs);
+            }
+        } else if (mClosingMuxer != null) {
+            if (presentationTimeUs < mBaseTimeUs) {
+                // 切换点之前的音频属于上一个分段。
+                long timeUs = presentationTimeUs - mClosingBaseTimeUs;
+                if (timeUs > mClosingLastAudioTimeUs) {
+                    mClosingLastAudioTimeUs = timeUs;
+                    writeSampleData(mClosingMuxer, mClosingAudioTrack, buffer, info, timeUs);
+                }
+                return;
+            }
+            finishClosingSegment();
+        }
+        long timeUs = presentationTimeUs - mBaseTimeUs;
+        if (timeUs < 0) {
+            return;
+        }
+        if (!isVideo) {
+            if (timeUs <= mLastAudioTimeUs) {
+                return;
+            }
+            mLastAudioTimeUs = timeUs;
+        }
+        writeSampleData(mMuxer, isVideo ? mVideoTrack : mAudioTrack, buffer, info, timeUs);
+        mSegmentWrittenSize += info.size;
+        if (isVideo) {
+            mVideoSampleCount++;
+        }
+    }
+
+    private static void writeSampleData(MediaMuxer muxer, int track, ByteBuffer buffer, MediaCodec.BufferInfo info,
+                                        long timeUs) {
+        MediaCodec.BufferInfo sampleInfo = new MediaCodec.BufferInfo();
+        sampleInfo.set(info.offset, info.size, timeUs, info.flags);
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        muxer.writeSampleData(track, buffer, sampleInfo);
+    }
+
+    /**
+     * 当前分段是否已经达到时长或大小。
+     *
+     * @param presentationTimeUs 当前视频帧的时间戳。
+     */
+    private boolean isSegmentFull(long presentationTimeUs) {
+        if (!isSegmented() || presentationTimeUs <= mBaseTimeUs) {
+            return false;
+        }
+        return (mSegmentDurationUs > 0 && presentationTimeUs - mBaseTimeUs >= mSegmentDurationUs)
+                || (mSegmentSize > 0 && mSegmentWrittenSize >= mSegmentSize);
+    }
+
+    /**
+     * 从当前关键帧开始写入新的分段，当前分段等音频追上切换点后再关闭。
+     *
+     * @param presentationTimeUs 关键帧的时间戳，作为新分段的起点。
+     */
+    private void startNextSegment(long presentationTimeUs) {
+        finishClosingSegment();
+        String nextPath = getSegmentPath(mSegmentIndex + 1);
+        MediaMuxer nextMuxer;
+        int videoTrack;
+        int audioTrack;
+        try {
+            nextMuxer = createMuxer(nextPath);
+            videoTrack = nextMuxer.addTrack(mVideoFormat);
+            audioTrack = nextMuxer.addTrack(mAudioFormat);
+            nextMuxer.start();
+        } catch (Exception e) {
+            // 无法创建新文件时继续写入当前分段。
+            e.printStackTrace();
+            return;
+        }
+        mClosingMuxer = mMuxer;
+        mClosingPath = mSegmentPath;
+        mClosingIndex = mSegmentIndex;
+        mClosingAudioTrack = mAudioTrack;
+        mClosingBaseTimeUs = mBaseTimeUs;
+        mClosingLastAudioTimeUs = mLastAudioTimeUs;
+
+        mMuxer = nextMuxer;
+        mVideoTrack = videoTrack;
+        mAudioTrack = audioTrack;
+        mSegmentIndex++;
+        mSegmentPath = nextPath;
+        mSegmentWrittenSize = 0;
+        mBaseTimeUs = presentationTimeUs;
+        mLastAudioTimeUs = -1;
+    }
+
+    /**
+     * 关闭上一个分段，加入待回调队列。需要持有 mMuxerLock。
+     */
+    private void finishClosingSegment() {
+        if (mClosingMuxer == null) {
+            return;
+        }
+        try {
+            mClosingMuxer.stop();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+        mClosingMuxer.release();
+        mClosingMuxer = null;
+        mFinishedSegments.add(new FinishedSegment(new File(mClosingPath), mClosingIndex));
+    }
+
+    /**
+     * 在 mMuxerLock 之外按顺序回调已关闭的分段。
+     */
+    private void dispatchFinishedSegments() {
+        synchronized (mSegmentCallbackLock) {
+            while (true) {
+                FinishedSegment segment;
+                synchronized (mMuxerLock) {
+                    segment = mFinishedSegments.poll();
+                }
+                if (segment == null) {
+                    return;
+                }
+                mSegmentListener.onSegmentFinished(segment.file, segment.index);
+            }
+        }
+    }
+
+    /**
+     * 获取分段文件的路径，第一个分段使用原路径，之后的分段在扩展名前加上序号。
+     *
+     * @param index 分段序号。
+     */
+    private String getSegmentPath(int index) {
+        if (index == 0) {
+            return mFilePath;
+        }
+        int dotIndex = mFilePath.lastIndexOf('.');
+        if (dotIndex <= mFilePath.lastIndexOf(File.separatorChar)) {
+            return mFilePath + "_" + index;
+        }
+        return mFilePath.substring(0, dotIndex) + "_" + index + mFilePath.substring(dotIndex);
+    }
+
+    /**
+     * 已关闭的分段。
+     */
+    private static final class FinishedSegment {
+
+        private final File file;
+        private final int index;
+
+        private FinishedSegment(File file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 预览帧。Camera2 为 YUV_420_888 格式的 Image，旧 API 为 NV21 格式的 byte[]。
+ * <p>
+ * 同一帧分发给所有处理器，所有处理器都处理完（或丢弃）后才回收，处理器不能修改帧的数据。
+ * <p>
+ * 旧 API 的帧与预览缓冲区一一对应，回收后随缓冲区重复使用，处理器不能在 {@link FrameProcessor#process(Frame)} 之后继续持有。
+ */
+public final class Frame {
+
+    private final int mFormat;
+    private final int mWidth;
+    private final int mHeight;
+    private int mRotation;
+    private long mTimestamp;
+    private final Image mImage;
+    private final byte[] mData;
+    private final Runnable mOnRelease;
+    /**
+     * 收到帧的时间，System.nanoTime()，用于统计处理延迟。
+     */
+    long mArrivalTime = System.nanoTime();
+    /**
+     * 引用计数，分发前为 1。
+     */
+    private final AtomicInteger mRefCount = new AtomicInteger(1);
+
+    /**
+     * Camera2 的帧。
+     *
+     * @param image    YUV_420_888 格式的 Image，回收时关闭。
+     * @param rotation 帧需要顺时针旋转的角度。
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    Frame(@NonNull Image image, int rotation) {
+        mFormat = image.getFormat();
+        mWidth = image.getWidth();
+        mHeight = image.getHeight();
+        mRotation = rotation;
+        mTimestamp = image.getTimestamp();
+        mImage = image;
+        mData = null;
+        mOnRelease = null;
+    }
+
+    /**
+     * 旧 API 的帧，与预览缓冲区绑定，每次分发前通过 {@link #reset(int, long)} 更新。
+     *
+     * @param data      NV21 数据。
+     * @param width     宽度。
+     * @param height    高度。
+     * @param onRelease 回收时调用，可为 null。
+     */
+    Frame(@NonNull byte[] data, int width, int height, @Nullable Runnable onRelease) {
+        mFormat = ImageFormat.NV21;
+        mWidth = width;
+        mHeight = height;
+        mImage = null;
+        mData = data;
+        mOnRelease = onRelease;
+        mRefCount.set(0);
+    }
+
+    /**
+     * 重新分发已回收的帧。
+     *
+     * @param rotation  帧需要顺时针旋转的角度。
+     * @param timestamp 时间戳，单位 ns。
+     */
+    void reset(int rotation, long timestamp) {
+        if (!mRefCount.compareAndSet(0, 1)) {
+            throw new IllegalStateException("Frame is still in use");
+        }
+        mRotation = rotation;
+        mTimestamp = timestamp;
+        mArrivalTime = System.nanoTime();
+    }
+
+    /**
+     * 格式，ImageFormat.YUV_420_888 或 ImageFormat.NV21。
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 帧需要顺时针旋转的角度，旋转后与手机方向一致。
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * 时间戳，单位 ns。
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * YUV_420_888 格式的 Image，NV21 格式时返回 null。
+     */
+    @Nullable
+    public Image getImage() {
+        return mImage;
+    }
+
+    /**
+     * NV21 格式的数据，YUV_420_888 格式时返回 null。
+     */
+    @Nullable
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * 增加引用。
+     */
+    void retain() {
+        mRefCount.incrementAndGet();
+    }
+
+    /**
+     * 减少引用，没有引用后回收。
+     */
+    void release() {
+        if (mRefCount.decrementAndGet() != 0) {
+            return;
+        }
+        if (mImage != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mImage.close();
+        }
+        if (mOnRelease != null) {
+            mOnRelease.run();
+        }
+    }
+
+}
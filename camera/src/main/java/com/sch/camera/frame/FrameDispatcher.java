@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+import android.media.Image;
+import android.os.Build;
+import android.os.Process;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import com.sch.camera.annotation.FrameDelivery;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 预览帧分发器。每个处理器有自己的线程和一个等待处理的位置，按分发方式决定新的帧替换、跳过还是等待。
+ */
+public class FrameDispatcher {
+
+    private final CopyOnWriteArrayList<Worker> mWorkers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 添加处理器，已添加的处理器不会重复添加。
+     *
+     * @param processor     处理器。
+     * @param delivery      分发方式。
+     * @param frameInterval {@link FrameProcessor#DELIVERY_SKIP} 时每多少帧处理一帧，其他方式忽略。
+     */
+    public synchronized void add(@NonNull FrameProcessor processor, @FrameDelivery int delivery,
+                                 @IntRange(from = 1) int frameInterval) {
+        if (find(processor) != null) {
+            return;
+        }
+        Worker worker = new Worker(processor, delivery, Math.max(1, frameInterval), mWorkers.size());
+        mWorkers.add(worker);
+        worker.start();
+    }
+
+    /**
+     * 移除处理器，等待中的帧被回收，正在处理的帧处理完后结束线程。
+     *
+     * @return 是否移除。
+     */
+    public synchronized boolean remove(@NonNull FrameProcessor processor) {
+        Worker worker = find(processor);
+        if (worker == null) {
+            return false;
+        }
+        mWorkers.remove(worker);
+        worker.quit();
+        return true;
+    }
+
+    /**
+     * 移除所有处理器。
+     */
+    public synchronized void clear() {
+        for (Worker worker : mWorkers) {
+            worker.quit();
+        }
+        mWorkers.clear();
+    }
+
+    /**
+     * 是否没有处理器，没有时相机不需要输出预览帧。
+     */
+    public boolean isEmpty() {
+        return mWorkers.isEmpty();
+    }
+
+    /**
+     * 处理器数量。
+     */
+    public int size() {
+        return mWorkers.size();
+    }
+
+    /**
+     * 是否有处理器使用 {@link FrameProcessor#DELIVERY_BLOCK}，有时接收帧不能跳过相机队列中积压的帧。
+     */
+    public boolean hasBlockingProcessor() {
+        for (Worker worker : mWorkers) {
+            if (worker.mDelivery == FrameProcessor.DELIVERY_BLOCK) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 记录分发之前就被跳过的帧，例如相机队列中积压后只取最新一帧时跳过的帧，计入每个处理器的收到帧数和丢帧数。
+     *
+     * @param count 跳过的帧数。
+     */
+    public void onFramesDropped(int count) {
+        for (Worker worker : mWorkers) {
+            worker.onDropped(count);
+        }
+    }
+
+    /**
+     * 获取处理器的帧统计。
+     *
+     * @return 统计，处理器不存在时返回 null。
+     */
+    @Nullable
+    public FrameStats getStats(@NonNull FrameProcessor processor) {
+        Worker worker = find(processor);
+        return worker == null ? null : worker.getStats();
+    }
+
+    /**
+     * 分发 Camera2 的帧，所有处理器处理完或丢弃这一帧后关闭 Image，没有处理器时立即关闭。
+     *
+     * @param image    YUV_420_888 格式的 Image。
+     * @param rotation 帧需要顺时针旋转的角度。
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    public void dispatch(@NonNull Image image, int rotation) {
+        dispatch(new Frame(image, rotation));
+    }
+
+    /**
+     * 为旧 API 的预览缓冲区创建帧，帧随缓冲区重复使用，预览时不再为每帧创建对象。
+     *
+     * @param data      NV21 缓冲区。
+     * @param width     宽度。
+     * @param height    高度。
+     * @param onRelease 所有处理器处理完后调用，可以在此归还缓冲区。
+     */
+    @NonNull
+    public Frame createFrame(@NonNull byte[] data, int width, int height, @Nullable Runnable onRelease) {
+        return new Frame(data, width, height, onRelease);
+    }
+
+    /**
+     * 分发旧 API 的帧，帧的缓冲区已写入新的数据。
+     *
+     * @param frame     {@link #createFrame(byte[], int, int, Runnable)} 创建且已回收的帧。
+     * @param rotation  帧需要顺时针旋转的角度。
+     * @param timestamp 时间戳，单位 ns。
+     */
+    public void dispatch(@NonNull Frame frame, int rotation, long timestamp) {
+        frame.reset(rotation, timestamp);
+        dispatch(frame);
+    }
+
+    private void dispatch(Frame frame) {
+        for (Worker worker : mWorkers) {
+            frame.retain();
+            worker.offer(frame);
+        }
+        // 释放分发时持有的引用，没有处理器时直接回收。
+        frame.release();
+    }
+
+    @Nullable
+    private Worker find(FrameProcessor processor) {
+        for (Worker worker : mWorkers) {
+            if (worker.mProcessor == processor) {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 处理器的线程。
+     */
+    private static final class Worker implements Runnable {
+
+        private final FrameProcessor mProcessor;
+        private final int mDelivery;
+        private final int mFrameInterval;
+        private final Thread mThread;
+
+        /**
+         * 等待处理的帧。
+         */
+        private Frame mPending;
+        private boolean isQuit = false;
+        /**
+         * DELIVERY_SKIP 时的帧序号。
+         */
+        private long mSequence = 0;
+
+        private long mReceivedCount = 0;
+        private long mProcessedCount = 0;
+        private long mDroppedCount = 0;
+        private long mLastLatencyNs = -1;
+        private long mTotalLatencyNs = 0;
+        private long mMaxLatencyNs = -1;
+
+        Worker(FrameProcessor processor, int delivery, int frameInterval, int index) {
+            mProcessor = processor;
+            mDelivery = delivery;
+            mFrameInterval = frameInterval;
+            mThread = new Thread(this, "CameraFrameProcessor-" + index);
+        }
+
+        void start() {
+            mThread.start();
+        }
+
+        /**
+         * 提交一帧，已经持有该帧的一个引用。
+         */
+        void offer(Frame frame) {
+            Frame dropped = null;
+            synchronized (this) {
+                mReceivedCount++;
+                if (isQuit) {
+                    dropped = frame;
+                } else if (mDelivery == FrameProcessor.DELIVERY_SKIP && mSequence++ % mFrameInterval != 0) {
+                    dropped = frame;
+                } else if (mDelivery == FrameProcessor.DELIVERY_BLOCK) {
+                    while (mPending != null && !isQuit) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                    if (mPending != null || isQuit) {
+                        dropped = frame;
+                    } else {
+                        mPending = frame;
+                    }
+                } else {
+                    // 用新的帧替换等待中的帧。
+                    dropped = mPending;
+                    mPending = frame;
+                }
+                if (dropped != null) {
+                    mDroppedCount++;
+                }
+                notifyAll();
+            }
+            if (dropped != null) {
+                dropped.release();
+            }
+        }
+
+        /**
+         * 记录分发之前被跳过的帧。
+         */
+        synchronized void onDropped(int count) {
+            if (isQuit) {
+                return;
+            }
+            mReceivedCount += count;
+            mDroppedCount += count;
+        }
+
+        void quit() {
+            Frame pending;
+            synchronized (this) {
+                isQuit = true;
+                pending = mPending;
+                mPending = null;
+                notifyAll();
+            }
+            if (pending != null) {
+                pending.release();
+            }
+        }
+
+        synchronized FrameStats getStats() {
+            long averageNs = mProcessedCount > 0 ? mTotalLatencyNs / mProcessedCount : -1;
+            return new FrameStats(mReceivedCount, mProcessedCount, mDroppedCount,
+                    toMillis(mLastLatencyNs), toMillis(averageNs), toMillis(mMaxLatencyNs));
+        }
+
+        private static long toMillis(long nanos) {
+            return nanos < 0 ? -1 : nanos / 1000000;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (true) {
+                Frame frame;
+                synchronized (this) {
+                    while (mPending == null && !isQuit) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (isQuit) {
+                        return;
+                    }
+                    frame = mPending;
+                    mPending = null;
+                    // 唤醒阻塞的分发。
+                    notifyAll();
+                }
+                try {
+                    mProcessor.process(frame);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    long latencyNs = System.nanoTime() - frame.mArrivalTime;
+                    frame.release();
+                    synchronized (this) {
+                        mProcessedCount++;
+                        mLastLatencyNs = latencyNs;
+                        mTotalLatencyNs += latencyNs;
+                        mMaxLatencyNs = Math.max(mMaxLatencyNs, latencyNs);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,675 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.os.Build;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 预览帧的格式转换和缩小。输出写入调用者提供的数组，按行分段由多个线程并行处理，处理过程中不分配内存。
+ * <p>
+ * 颜色转换使用 BT.601 全范围（JFIF）的系数，与相机输出的 NV21 和 YUV_420_888 一致。
+ * 同一实例的方法串行执行，不再使用时调用 {@link #release()} 结束线程。
+ */
+public final class FrameKernels {
+
+    /**
+     * 每段至少处理的行数，行数太少时不值得分给其他线程。
+     */
+    private static final int MIN_STRIPE_ROWS = 32;
+
+    private static final int OP_NV21_TO_ARGB = 0;
+    private static final int OP_YUV420_TO_ARGB = 1;
+    private static final int OP_YUV420_TO_LUMA = 2;
+    private static final int OP_BOX_LUMA = 3;
+    private static final int OP_BOX_ARGB = 4;
+    private static final int OP_BILINEAR_LUMA = 5;
+    private static final int OP_BILINEAR_ARGB = 6;
+
+    private final Object mLock = new Object();
+    private final Thread[] mThreads;
+
+    /**
+     * 当前任务的分段数、下一个待处理的分段和未完成的分段数，由 mLock 保护。
+     */
+    private int mStripes = 0;
+    private int mNextStripe = 0;
+    private int mPending = 0;
+    private RuntimeException mError;
+    private boolean isReleased = false;
+
+    /**
+     * 当前任务的参数，在分段开始前写入，各线程通过 mLock 读取。
+     */
+    private int mOp;
+    private int mRows;
+    private byte[] mSrcBytes;
+    private int[] mSrcInts;
+    private byte[] mDstBytes;
+    private int[] mDstInts;
+    private ByteBuffer mYPlane;
+    private ByteBuffer mUPlane;
+    private ByteBuffer mVPlane;
+    private int mYRowStride;
+    private int mYPixelStride;
+    private int mUvRowStride;
+    private int mUvPixelStride;
+    private int mSrcWidth;
+    private int mSrcHeight;
+    private int mDstWidth;
+    private int mDstHeight;
+
+    /**
+     * 使用所有 CPU 核心。
+     */
+    public FrameKernels() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 初始化。
+     *
+     * @param parallelism 并行的线程数，包括调用线程，为 1 时只在调用线程处理。
+     */
+    public FrameKernels(@IntRange(from = 1) int parallelism) {
+        mThreads = new Thread[Math.max(1, parallelism) - 1];
+        for (int i = 0; i < mThreads.length; i++) {
+            mThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker();
+                }
+            }, "CameraFrameKernel-" + i);
+            mThreads[i].setDaemon(true);
+            mThreads[i].start();
+        }
+    }
+
+    /**
+     * 结束线程，之后只在调用线程处理。
+     */
+    public void release() {
+        synchronized (mLock) {
+            isReleased = true;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * 把预览帧转换为 ARGB。
+     *
+     * @param frame 预览帧。
+     * @param argb  输出，长度不小于宽 × 高。
+     */
+    public void toArgb(@NonNull Frame frame, @NonNull int[] argb) {
+        byte[] data = frame.getData();
+        if (data != null) {
+            nv21ToArgb(data, frame.getWidth(), frame.getHeight(), argb);
+            return;
+        }
+        Image image = frame.getImage();
+        if (image != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && image.getFormat() == ImageFormat.YUV_420_888) {
+            Image.Plane[] planes = image.getPlanes();
+            yuv420ToArgb(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    frame.getWidth(), frame.getHeight(), argb);
+        }
+    }
+
+    /**
+     * 取出预览帧的亮度。
+     *
+     * @param frame 预览帧。
+     * @param luma  输出，长度不小于宽 × 高。
+     */
+    public void toLuma(@NonNull Frame frame, @NonNull byte[] luma) {
+        byte[] data = frame.getData();
+        if (data != null) {
+            nv21ToLuma(data, frame.getWidth(), frame.getHeight(), luma);
+            return;
+        }
+        Image image = frame.getImage();
+        if (image != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && image.getFormat() == ImageFormat.YUV_420_888) {
+            Image.Plane plane = image.getPlanes()[0];
+            yuv420ToLuma(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                    frame.getWidth(), frame.getHeight(), luma);
+        }
+    }
+
+    /**
+     * NV21 转换为 ARGB。
+     *
+     * @param nv21   NV21 数据，宽高为偶数。
+     * @param width  宽度。
+     * @param height 高度。
+     * @param argb   输出，长度不小于 width × height。
+     */
+    public synchronized void nv21ToArgb(@NonNull byte[] nv21, int width, int height, @NonNull int[] argb) {
+        checkSize(nv21.length, width * height * 3 / 2);
+        checkSize(argb.length, width * height);
+        mOp = OP_NV21_TO_ARGB;
+        mSrcBytes = nv21;
+        mDstInts = argb;
+        mSrcWidth = width;
+        mSrcHeight = height;
+        execute(height);
+    }
+
+    /**
+     * 取出 NV21 的亮度，即前 width × height 个字节。
+     *
+     * @param nv21   NV21 数据。
+     * @param width  宽度。
+     * @param height 高度。
+     * @param luma   输出，长度不小于 width × height。
+     */
+    public void nv21ToLuma(@NonNull byte[] nv21, int width, int height, @NonNull byte[] luma) {
+        checkSize(nv21.length, width * height);
+        checkSize(luma.length, width * height);
+        System.arraycopy(nv21, 0, luma, 0, width * height);
+    }
+
+    /**
+     * YUV_420_888 转换为 ARGB，按平面的行跨度和像素跨度读取，兼容 I420、NV12、NV21 等内存布局。
+     *
+     * @param yPlane        Y 平面。
+     * @param yRowStride    Y 平面的行跨度。
+     * @param yPixelStride  Y 平面的像素跨度。
+     * @param uPlane        U 平面。
+     * @param vPlane        V 平面。
+     * @param uvRowStride   U、V 平面的行跨度。
+     * @param uvPixelStride U、V 平面的像素跨度。
+     * @param width         宽度。
+     * @param height        高度。
+     * @param argb          输出，长度不小于 width × height。
+     */
+    public synchronized void yuv420ToArgb(@NonNull ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                          @NonNull ByteBuffer uPlane, @NonNull ByteBuffer vPlane,
+                                          int uvRowStride, int uvPixelStride,
+                                          int width, int height, @NonNull int[] argb) {
+        checkSize(argb.length, width * height);
+        mOp = OP_YUV420_TO_ARGB;
+        mYPlane = yPlane;
+        mUPlane = uPlane;
+        mVPlane = vPlane;
+        mYRowStride = yRowStride;
+        mYPixelStride = yPixelStride;
+        mUvRowStride = uvRowStride;
+        mUvPixelStride = uvPixelStride;
+        mDstInts = argb;
+        mSrcWidth = width;
+        mSrcHeight = height;
+        execute(height);
+    }
+
+    /**
+     * 取出 YUV_420_888 的亮度，按行跨度和像素跨度读取 Y 平面。
+     *
+     * @param yPlane       Y 平面。
+     * @param yRowStride   行跨度。
+     * @param yPixelStride 像素跨度。
+     * @param width        宽度。
+     * @param height       高度。
+     * @param luma         输出，长度不小于 width × height。
+     */
+    public synchronized void yuv420ToLuma(@NonNull ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                          int width, int height, @NonNull byte[] luma) {
+        checkSize(luma.length, width * height);
+        mOp = OP_YUV420_TO_LUMA;
+        mYPlane = yPlane;
+        mYRowStride = yRowStride;
+        mYPixelStride = yPixelStride;
+        mDstBytes = luma;
+        mSrcWidth = width;
+        mSrcHeight = height;
+        execute(height);
+    }
+
+    /**
+     * 按区域平均缩小亮度图，每个输出像素取对应区域的平均值，缩小倍数较大时比双线性更不容易产生锯齿。
+     *
+     * @param src       输入。
+     * @param srcWidth  输入宽度。
+     * @param srcHeight 输入高度。
+     * @param dst       输出。
+     * @param dstWidth  输出宽度，不大于输入宽度。
+     * @param dstHeight 输出高度，不大于输入高度。
+     */
+    public synchronized void downscaleBox(@NonNull byte[] src, int srcWidth, int srcHeight,
+                                          @NonNull byte[] dst, int dstWidth, int dstHeight) {
+        checkScale(src.length, srcWidth, srcHeight, dst.length, dstWidth, dstHeight, true);
+        mOp = OP_BOX_LUMA;
+        mSrcBytes = src;
+        mDstBytes = dst;
+        setScale(srcWidth, srcHeight, dstWidth, dstHeight);
+        execute(dstHeight);
+    }
+
+    /**
+     * 按区域平均缩小 ARGB 图。
+     *
+     * @see #downscaleBox(byte[], int, int, byte[], int, int)
+     */
+    public synchronized void downscaleBox(@NonNull int[] src, int srcWidth, int srcHeight,
+                                          @NonNull int[] dst, int dstWidth, int dstHeight) {
+        checkScale(src.length, srcWidth, srcHeight, dst.length, dstWidth, dstHeight, true);
+        mOp = OP_BOX_ARGB;
+        mSrcInts = src;
+        mDstInts = dst;
+        setScale(srcWidth, srcHeight, dstWidth, dstHeight);
+        execute(dstHeight);
+    }
+
+    /**
+     * 双线性缩放亮度图，也可以放大。
+     *
+     * @param src       输入。
+     * @param srcWidth  输入宽度。
+     * @param srcHeight 输入高度。
+     * @param dst       输出。
+     * @param dstWidth  输出宽度。
+     * @param dstHeight 输出高度。
+     */
+    public synchronized void downscaleBilinear(@NonNull byte[] src, int srcWidth, int srcHeight,
+                                               @NonNull byte[] dst, int dstWidth, int dstHeight) {
+        checkScale(src.length, srcWidth, srcHeight, dst.length, dstWidth, dstHeight, false);
+        mOp = OP_BILINEAR_LUMA;
+        mSrcBytes = src;
+        mDstBytes = dst;
+        setScale(srcWidth, srcHeight, dstWidth, dstHeight);
+        execute(dstHeight);
+    }
+
+    /**
+     * 双线性缩放 ARGB 图。
+     *
+     * @see #downscaleBilinear(byte[], int, int, byte[], int, int)
+     */
+    public synchronized void downscaleBilinear(@NonNull int[] src, int srcWidth, int srcHeight,
+                                               @NonNull int[] dst, int dstWidth, int dstHeight) {
+        checkScale(src.length, srcWidth, srcHeight, dst.length, dstWidth, dstHeight, false);
+        mOp = OP_BILINEAR_ARGB;
+        mSrcInts = src;
+        mDstInts = dst;
+        setScale(srcWidth, srcHeight, dstWidth, dstHeight);
+        execute(dstHeight);
+    }
+
+    private void setScale(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        mSrcWidth = srcWidth;
+        mSrcHeight = srcHeight;
+        mDstWidth = dstWidth;
+        mDstHeight = dstHeight;
+    }
+
+    private static void checkSize(int length, int required) {
+        if (length < required) {
+            throw new IllegalArgumentException("Buffer too small: " + length + " < " + required);
+        }
+    }
+
+    private static void checkScale(int srcLength, int srcWidth, int srcHeight,
+                                   int dstLength, int dstWidth, int dstHeight, boolean isDownscaleOnly) {
+        if (srcWidth <= 0 || srcHeight <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + srcWidth + "x" + srcHeight
+                    + " -> " + dstWidth + "x" + dstHeight);
+        }
+        if (isDownscaleOnly && (dstWidth > srcWidth || dstHeight > srcHeight)) {
+            throw new IllegalArgumentException("Box filter only downscales: " + srcWidth + "x" + srcHeight
+                    + " -> " + dstWidth + "x" + dstHeight);
+        }
+        checkSize(srcLength, srcWidth * srcHeight);
+        checkSize(dstLength, dstWidth * dstHeight);
+    }
+
+    /**
+     * 把 rows 行分段，调用线程和其他线程一起领取分段，全部完成后返回。
+     */
+    private void execute(int rows) {
+        int stripes = Math.min(mThreads.length + 1, (rows + MIN_STRIPE_ROWS - 1) / MIN_STRIPE_ROWS);
+        synchronized (mLock) {
+            if (isReleased) {
+                stripes = 1;
+            }
+            if (stripes > 1) {
+                mRows = rows;
+                mStripes = stripes;
+                mNextStripe = 0;
+                mPending = stripes;
+                mError = null;
+                mLock.notifyAll();
+            }
+        }
+        try {
+            if (stripes <= 1) {
+                runRows(0, rows);
+            } else {
+                runStripes();
+            }
+        } finally {
+            // 不再引用调用者的数据。
+            mSrcBytes = null;
+            mSrcInts = null;
+            mDstBytes = null;
+            mDstInts = null;
+            mYPlane = null;
+            mUPlane = null;
+            mVPlane = null;
+        }
+    }
+
+    /**
+     * 和其他线程一起处理所有分段，等待全部完成。
+     */
+    private void runStripes() {
+        while (true) {
+            if (!runNextStripe()) {
+                break;
+            }
+        }
+        RuntimeException error;
+        synchronized (mLock) {
+            boolean isInterrupted = false;
+            while (mPending > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+            mStripes = 0;
+            error = mError;
+            mError = null;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 领取并处理一个分段。
+     *
+     * @return 没有待处理的分段时返回 false。
+     */
+    private boolean runNextStripe() {
+        int stripe;
+        int stripes;
+        int rows;
+        synchronized (mLock) {
+            if (mNextStripe >= mStripes) {
+                return false;
+            }
+            stripe = mNextStripe++;
+            stripes = mStripes;
+            rows = mRows;
+        }
+        RuntimeException error = null;
+        try {
+            runRows((int) ((long) rows * stripe / stripes), (int) ((long) rows * (stripe + 1) / stripes));
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        synchronized (mLock) {
+            if (error != null && mError == null) {
+                mError = error;
+            }
+            if (--mPending == 0) {
+                mLock.notifyAll();
+            }
+        }
+        return true;
+    }
+
+    private void runWorker() {
+        while (true) {
+            synchronized (mLock) {
+                while (!isReleased && mNextStripe >= mStripes) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (isReleased && mNextStripe >= mStripes) {
+                    return;
+                }
+            }
+            runNextStripe();
+        }
+    }
+
+    private void runRows(int startRow, int endRow) {
+        switch (mOp) {
+            case OP_NV21_TO_ARGB:
+                nv21ToArgbRows(mSrcBytes, mSrcWidth, mSrcHeight, mDstInts, startRow, endRow);
+                break;
+            case OP_YUV420_TO_ARGB:
+                yuv420ToArgbRows(mYPlane, mYRowStride, mYPixelStride, mUPlane, mVPlane, mUvRowStride,
+                        mUvPixelStride, mSrcWidth, mDstInts, startRow, endRow);
+                break;
+            case OP_YUV420_TO_LUMA:
+                yuv420ToLumaRows(mYPlane, mYRowStride, mYPixelStride, mSrcWidth, mDstBytes, startRow, endRow);
+                break;
+            case OP_BOX_LUMA:
+                boxLumaRows(mSrcBytes, mSrcWidth, mSrcHeight, mDstBytes, mDstWidth, mDstHeight, startRow, endRow);
+                break;
+            case OP_BOX_ARGB:
+                boxArgbRows(mSrcInts, mSrcWidth, mSrcHeight, mDstInts, mDstWidth, mDstHeight, startRow, endRow);
+                break;
+            case OP_BILINEAR_LUMA:
+                bilinearLumaRows(mSrcBytes, mSrcWidth, mSrcHeight, mDstBytes, mDstWidth, mDstHeight,
+                        startRow, endRow);
+                break;
+            case OP_BILINEAR_ARGB:
+                bilinearArgbRows(mSrcInts, mSrcWidth, mSrcHeight, mDstInts, mDstWidth, mDstHeight,
+                        startRow, endRow);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * YUV 转换为不透明的 ARGB，系数放大 1024 倍用整数计算。
+     */
+    private static int yuvToArgb(int y, int u, int v) {
+        y <<= 10;
+        u -= 128;
+        v -= 128;
+        int r = (y + 1436 * v) >> 10;
+        int g = (y - 352 * u - 731 * v) >> 10;
+        int b = (y + 1815 * u) >> 10;
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static void nv21ToArgbRows(byte[] nv21, int width, int height, int[] argb, int startRow, int endRow) {
+        int frameSize = width * height;
+        for (int row = startRow; row < endRow; row++) {
+            int yIndex = row * width;
+            int uvIndex = frameSize + (row >> 1) * width;
+            for (int col = 0; col < width; col += 2) {
+                int v = nv21[uvIndex++] & 0xFF;
+                int u = nv21[uvIndex++] & 0xFF;
+                argb[yIndex] = yuvToArgb(nv21[yIndex] & 0xFF, u, v);
+                yIndex++;
+                if (col + 1 < width) {
+                    argb[yIndex] = yuvToArgb(nv21[yIndex] & 0xFF, u, v);
+                    yIndex++;
+                }
+            }
+        }
+    }
+
+    private static void yuv420ToArgbRows(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                         ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                                         int width, int[] argb, int startRow, int endRow) {
+        for (int row = startRow; row < endRow; row++) {
+            int yIndex = row * yRowStride;
+            int uvRow = (row >> 1) * uvRowStride;
+            int out = row * width;
+            for (int col = 0; col < width; col++) {
+                int uvIndex = uvRow + (col >> 1) * uvPixelStride;
+                argb[out++] = yuvToArgb(yPlane.get(yIndex) & 0xFF, uPlane.get(uvIndex) & 0xFF,
+                        vPlane.get(uvIndex) & 0xFF);
+                yIndex += yPixelStride;
+            }
+        }
+    }
+
+    private static void yuv420ToLumaRows(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                         int width, byte[] luma, int startRow, int endRow) {
+        for (int row = startRow; row < endRow; row++) {
+            int yIndex = row * yRowStride;
+            int out = row * width;
+            for (int col = 0; col < width; col++) {
+                luma[out++] = yPlane.get(yIndex);
+                yIndex += yPixelStride;
+            }
+        }
+    }
+
+    private static void boxLumaRows(byte[] src, int srcWidth, int srcHeight, byte[] dst, int dstWidth, int dstHeight,
+                                    int startRow, int endRow) {
+        for (int dy = startRow; dy < endRow; dy++) {
+            int y0 = (int) ((long) dy * srcHeight / dstHeight);
+            int y1 = Math.max(y0 + 1, (int) ((long) (dy + 1) * srcHeight / dstHeight));
+            int out = dy * dstWidth;
+            for (int dx = 0; dx < dstWidth; dx++) {
+                int x0 = (int) ((long) dx * srcWidth / dstWidth);
+                int x1 = Math.max(x0 + 1, (int) ((long) (dx + 1) * srcWidth / dstWidth));
+                int sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    int index = y * srcWidth;
+                    for (int x = x0; x < x1; x++) {
+                        sum += src[index + x] & 0xFF;
+                    }
+                }
+                dst[out++] = (byte) (sum / ((y1 - y0) * (x1 - x0)));
+            }
+        }
+    }
+
+    private static void boxArgbRows(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight,
+                                    int startRow, int endRow) {
+        for (int dy = startRow; dy < endRow; dy++) {
+            int y0 = (int) ((long) dy * srcHeight / dstHeight);
+            int y1 = Math.max(y0 + 1, (int) ((long) (dy + 1) * srcHeight / dstHeight));
+            int out = dy * dstWidth;
+            for (int dx = 0; dx < dstWidth; dx++) {
+                int x0 = (int) ((long) dx * srcWidth / dstWidth);
+                int x1 = Math.max(x0 + 1, (int) ((long) (dx + 1) * srcWidth / dstWidth));
+                int a = 0;
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int y = y0; y < y1; y++) {
+                    int index = y * srcWidth;
+                    for (int x = x0; x < x1; x++) {
+                        int color = src[index + x];
+                        a += color >>> 24;
+                        r += (color >> 16) & 0xFF;
+                        g += (color >> 8) & 0xFF;
+                        b += color & 0xFF;
+                    }
+                }
+                int count = (y1 - y0) * (x1 - x0);
+                dst[out++] = ((a / count) << 24) | ((r / count) << 16) | ((g / count) << 8) | (b / count);
+            }
+        }
+    }
+
+    /**
+     * 双线性采样的坐标用 16.16 定点数，像素中心对齐，超出边缘时取边缘像素。
+     */
+    private static void bilinearLumaRows(byte[] src, int srcWidth, int srcHeight, byte[] dst,
+                                         int dstWidth, int dstHeight, int startRow, int endRow) {
+        long stepX = ((long) srcWidth << 16) / dstWidth;
+        long stepY = ((long) srcHeight << 16) / dstHeight;
+        long maxX = (long) (srcWidth - 1) << 16;
+        long maxY = (long) (srcHeight - 1) << 16;
+        for (int dy = startRow; dy < endRow; dy++) {
+            long fy = Math.min(maxY, Math.max(0, stepY * dy + stepY / 2 - 0x8000));
+            int y0 = (int) (fy >> 16);
+            int y1 = Math.min(y0 + 1, srcHeight - 1);
+            int wy = (int) (fy >> 8) & 0xFF;
+            int row0 = y0 * srcWidth;
+            int row1 = y1 * srcWidth;
+            int out = dy * dstWidth;
+            long fx = stepX / 2 - 0x8000;
+            for (int dx = 0; dx < dstWidth; dx++, fx += stepX) {
+                long cx = Math.min(maxX, Math.max(0, fx));
+                int x0 = (int) (cx >> 16);
+                int x1 = Math.min(x0 + 1, srcWidth - 1);
+                int wx = (int) (cx >> 8) & 0xFF;
+                int top = (src[row0 + x0] & 0xFF) * (256 - wx) + (src[row0 + x1] & 0xFF) * wx;
+                int bottom = (src[row1 + x0] & 0xFF) * (256 - wx) + (src[row1 + x1] & 0xFF) * wx;
+                dst[out++] = (byte) ((top * (256 - wy) + bottom * wy + 0x8000) >> 16);
+            }
+        }
+    }
+
+    private static void bilinearArgbRows(int[] src, int srcWidth, int srcHeight, int[] dst,
+                                         int dstWidth, int dstHeight, int startRow, int endRow) {
+        long stepX = ((long) srcWidth << 16) / dstWidth;
+        long stepY = ((long) srcHeight << 16) / dstHeight;
+        long maxX = (long) (srcWidth - 1) << 16;
+        long maxY = (long) (srcHeight - 1) << 16;
+        for (int dy = startRow; dy < endRow; dy++) {
+            long fy = Math.min(maxY, Math.max(0, stepY * dy + stepY / 2 - 0x8000));
+            int y0 = (int) (fy >> 16);
+            int y1 = Math.min(y0 + 1, srcHeight - 1);
+            int wy = (int) (fy >> 8) & 0xFF;
+            int row0 = y0 * srcWidth;
+            int row1 = y1 * srcWidth;
+            int out = dy * dstWidth;
+            long fx = stepX / 2 - 0x8000;
+            for (int dx = 0; dx < dstWidth; dx++, fx += stepX) {
+                long cx = Math.min(maxX, Math.max(0, fx));
+                int x0 = (int) (cx >> 16);
+                int x1 = Math.min(x0 + 1, srcWidth - 1);
+                int wx = (int) (cx >> 8) & 0xFF;
+                int c00 = src[row0 + x0];
+                int c01 = src[row0 + x1];
+                int c10 = src[row1 + x0];
+                int c11 = src[row1 + x1];
+                int color = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int top = ((c00 >>> shift) & 0xFF) * (256 - wx) + ((c01 >>> shift) & 0xFF) * wx;
+                    int bottom = ((c10 >>> shift) & 0xFF) * (256 - wx) + ((c11 >>> shift) & 0xFF) * wx;
+                    color |= ((top * (256 - wy) + bottom * wy + 0x8000) >> 16) << shift;
+                }
+                dst[out++] = color;
+            }
+        }
+    }
+
+}
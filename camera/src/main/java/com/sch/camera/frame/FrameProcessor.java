@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 预览帧处理器。每个处理器在自己的线程处理帧，处理慢时按分发方式丢帧或阻塞，不影响其他处理器。
+ */
+public interface FrameProcessor {
+
+    /**
+     * 只保留最新的帧，处理器忙时用新的帧替换等待中的帧。
+     */
+    int DELIVERY_KEEP_LATEST = 0;
+    /**
+     * 不丢帧，处理器忙时阻塞相机的帧回调，相机随之降低送帧的速度。
+     */
+    int DELIVERY_BLOCK = 1;
+    /**
+     * 每 N 帧处理一帧，处理器忙时与 {@link #DELIVERY_KEEP_LATEST} 相同。
+     */
+    int DELIVERY_SKIP = 2;
+
+    /**
+     * 处理一帧，在处理器的线程回调。返回后帧被回收，不能再访问帧的数据。
+     *
+     * @param frame 预览帧。
+     */
+    void process(@NonNull Frame frame);
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 处理器的帧统计。延迟为从收到帧到处理完成的时间。
+ * <p>
+ * Camera2 只在普通预览的会话中输出帧，零延迟拍照的会话和录像时不输出帧，统计不会增加。
+ */
+public final class FrameStats {
+
+    private final long mReceivedCount;
+    private final long mProcessedCount;
+    private final long mDroppedCount;
+    private final long mLastLatencyMs;
+    private final long mAverageLatencyMs;
+    private final long mMaxLatencyMs;
+
+    FrameStats(long receivedCount, long processedCount, long droppedCount,
+               long lastLatencyMs, long averageLatencyMs, long maxLatencyMs) {
+        mReceivedCount = receivedCount;
+        mProcessedCount = processedCount;
+        mDroppedCount = droppedCount;
+        mLastLatencyMs = lastLatencyMs;
+        mAverageLatencyMs = averageLatencyMs;
+        mMaxLatencyMs = maxLatencyMs;
+    }
+
+    /**
+     * 分发给处理器的帧数。
+     */
+    public long getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    /**
+     * 已处理的帧数。
+     */
+    public long getProcessedCount() {
+        return mProcessedCount;
+    }
+
+    /**
+     * 被跳过或替换而没有处理的帧数，包括处理器跟不上时在相机队列中积压后被跳过的帧。
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * 最近一帧的延迟，单位 ms，还没有处理过帧时返回 -1。
+     */
+    public long getLastLatencyMs() {
+        return mLastLatencyMs;
+    }
+
+    /**
+     * 平均延迟，单位 ms，还没有处理过帧时返回 -1。
+     */
+    public long getAverageLatencyMs() {
+        return mAverageLatencyMs;
+    }
+
+    /**
+     * 最大延迟，单位 ms，还没有处理过帧时返回 -1。
+     */
+    public long getMaxLatencyMs() {
+        return mMaxLatencyMs;
+    }
+
+    @Override
+    public String toString() {
+        return "received " + mReceivedCount + ", processed " + mProcessedCount + ", dropped " + mDroppedCount
+                + ", latency " + mLastLatencyMs + "/" + mAverageLatencyMs + "/" + mMaxLatencyMs + " ms";
+    }
+
+}
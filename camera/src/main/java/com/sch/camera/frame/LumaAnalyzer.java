@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 亮度分析器，用于模糊、亮度、运动等只需要小尺寸灰度图的分析。
+ * 相机单独输出一路低分辨率的 YUV 流，分析器只拿到 Y 平面，不复制数据。
+ */
+public interface LumaAnalyzer {
+
+    /**
+     * 分析一帧，在接收帧的线程回调，分析慢时相机只保留最新的帧。返回后帧被回收，不能再访问帧的数据。
+     *
+     * @param frame 亮度帧，每次回调复用同一个对象。
+     */
+    void analyze(@NonNull LumaFrame frame);
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+import android.graphics.RectF;
+import android.media.Image;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 亮度帧分发器。在接收帧的线程直接回调分析器，每帧复用同一个 {@link LumaFrame}，不复制也不分配内存。
+ */
+public class LumaDispatcher {
+
+    private final LumaFrame mFrame = new LumaFrame();
+
+    private volatile LumaAnalyzer mAnalyzer;
+    private volatile RectF mRoi;
+
+    /**
+     * 设置分析器。
+     *
+     * @param analyzer 分析器，null 表示移除。
+     * @param roi      分析的区域，按帧宽高的比例表示，null 表示整帧。
+     */
+    public void setAnalyzer(@Nullable LumaAnalyzer analyzer, @Nullable RectF roi) {
+        mRoi = roi == null ? null : new RectF(roi);
+        mAnalyzer = analyzer;
+    }
+
+    /**
+     * 是否没有分析器。
+     */
+    public boolean isEmpty() {
+        return mAnalyzer == null;
+    }
+
+    /**
+     * 分析 YUV_420_888 格式的帧，不关闭 Image，分析后恢复 Y 平面的 position 和 limit。
+     *
+     * @param image    YUV_420_888 格式的 Image。
+     * @param rotation 帧需要顺时针旋转的角度。
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    public void dispatch(@NonNull Image image, int rotation) {
+        LumaAnalyzer analyzer = mAnalyzer;
+        if (analyzer == null) {
+            return;
+        }
+        Image.Plane plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer();
+        try {
+            mFrame.set(buffer, plane.getRowStride(), image.getWidth(), image.getHeight(), mRoi,
+                    rotation, image.getTimestamp());
+            analyzer.analyze(mFrame);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            mFrame.clear();
+            buffer.clear();
+        }
+    }
+
+}
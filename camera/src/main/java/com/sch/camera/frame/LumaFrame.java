@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.frame;
+
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 亮度帧，是 YUV 帧 Y 平面的视图，可以只包含指定的区域。
+ * <p>
+ * 区域第 y 行从 {@link #getBuffer()} 的 position + y × {@link #getRowStride()} 开始，每行 {@link #getWidth()} 个字节。
+ * 只在 {@link LumaAnalyzer#analyze(LumaFrame)} 中有效。
+ */
+public final class LumaFrame {
+
+    private ByteBuffer mBuffer;
+    private int mOffset;
+    private int mRowStride;
+    private int mLeft;
+    private int mTop;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+    private long mTimestamp;
+
+    /**
+     * 设置为 Y 平面的指定区域。
+     *
+     * @param plane     Y 平面，像素跨度为 1。
+     * @param rowStride 行跨度。
+     * @param width     帧的宽度。
+     * @param height    帧的高度。
+     * @param roi       区域，按帧宽高的比例表示，null 表示整帧。
+     * @param rotation  帧需要顺时针旋转的角度。
+     * @param timestamp 时间戳，单位 ns。
+     */
+    void set(@NonNull ByteBuffer plane, int rowStride, int width, int height, @Nullable RectF roi,
+             int rotation, long timestamp) {
+        if (roi == null) {
+            mLeft = 0;
+            mTop = 0;
+            mWidth = width;
+            mHeight = height;
+        } else {
+            mLeft = clamp((int) (roi.left * width), 0, width - 1);
+            mTop = clamp((int) (roi.top * height), 0, height - 1);
+            mWidth = clamp((int) Math.ceil(roi.right * width), mLeft + 1, width) - mLeft;
+            mHeight = clamp((int) Math.ceil(roi.bottom * height), mTop + 1, height) - mTop;
+        }
+        mBuffer = plane;
+        mRowStride = rowStride;
+        mOffset = mTop * rowStride + mLeft;
+        mRotation = rotation;
+        mTimestamp = timestamp;
+        plane.limit(mOffset + (mHeight - 1) * rowStride + mWidth);
+        plane.position(mOffset);
+    }
+
+    /**
+     * 分析完成后不再引用帧的数据。
+     */
+    void clear() {
+        mBuffer = null;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    /**
+     * Y 平面的视图，position 为区域左上角，limit 为区域右下角之后。
+     */
+    @NonNull
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * 获取区域内一个像素的亮度，不影响 {@link #getBuffer()} 的 position。
+     *
+     * @param x 区域内的横坐标。
+     * @param y 区域内的纵坐标。
+     * @return 亮度，0 ~ 255。
+     */
+    public int getLuma(int x, int y) {
+        return mBuffer.get(mOffset + y * mRowStride + x) & 0xFF;
+    }
+
+    /**
+     * 行跨度，可能大于宽度。
+     */
+    public int getRowStride() {
+        return mRowStride;
+    }
+
+    /**
+     * 区域左上角在帧中的横坐标。
+     */
+    public int getLeft() {
+        return mLeft;
+    }
+
+    /**
+     * 区域左上角在帧中的纵坐标。
+     */
+    public int getTop() {
+        return mTop;
+    }
+
+    /**
+     * 区域的宽度。
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * 区域的高度。
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 帧需要顺时针旋转的角度，旋转后与手机方向一致。
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * 时间戳，单位 ns。
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+}
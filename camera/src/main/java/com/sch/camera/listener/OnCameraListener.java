@@ -21,7 +21,7 @@ import com.sch.camera.annotation.SensorDegrees;
 /**
  * Created by StoneHui on 2018/8/8.
  * <p>
- * 相机监听。
+ * 相机监听，在主线程回调。
  */
 public interface OnCameraListener {
 
@@ -21,7 +21,7 @@ import java.io.File;
 /**
  * Created by StoneHui on 2018/8/8.
  * <p>
- * 拍照监听。
+ * 拍照监听，在保存照片的后台线程回调，更新界面时需要切换到主线程。
  */
 public interface OnPictureListener {
 
@@ -29,7 +29,7 @@ public interface OnPictureListener {
      * 拍照成功。
      *
      * @param file      照片文件。
-     * @param thumbFile 缩略图文件。
+     * @param thumbFile 缩略图文件，无法生成缩略图时为 null。
      */
     void onPictureTaken(File file, File thumbFile);
 
@@ -21,7 +21,7 @@ import java.io.File;
 /**
  * Created by StoneHui on 2018/8/8.
  * <p>
- * 视频录制监听。
+ * 视频录制监听，可能在后台线程回调，更新界面时需要切换到主线程。
  */
 public interface OnVideoListener {
 
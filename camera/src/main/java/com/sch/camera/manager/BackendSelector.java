@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.manager;
+
+import android.hardware.camera2.CameraCharacteristics;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.util.List;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 相机后端选择器。
+ * <p>
+ * 指定方向上使用 id 最靠前的相机，即系统默认的主摄，不会因为广角、长焦等副摄等级更高而切换镜头。
+ * 按主摄的硬件支持等级 LEVEL_3 > FULL > LIMITED > LEGACY 选择后端：
+ * LIMITED 及以上使用 Camera2，LEGACY 只是旧 HAL 的包装，使用旧 API 更快也更稳定。
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class BackendSelector {
+
+    /**
+     * 使用 Camera2Manager。
+     */
+    public static final int BACKEND_CAMERA2 = 0;
+    /**
+     * 使用旧 API 的 CameraManager。
+     */
+    public static final int BACKEND_LEGACY = 1;
+
+    /**
+     * 使用 Camera2 的最低等级。
+     */
+    private static final int MIN_CAMERA2_RANK = 1;
+
+    private BackendSelector() {
+    }
+
+    /**
+     * 选择指定方向的相机及后端。
+     *
+     * @param capabilitiesList 所有相机的能力快照。
+     * @param lensFacing       CameraCharacteristics.LENS_FACING_*。
+     */
+    @NonNull
+    public static Selection select(@NonNull List<CameraCapabilities> capabilitiesList, int lensFacing) {
+        int size = capabilitiesList.size();
+        int[] lensFacings = new int[size];
+        for (int i = 0; i < size; i++) {
+            lensFacings[i] = capabilitiesList.get(i).getLensFacing();
+        }
+        int index = findPrimary(lensFacings, lensFacing);
+        if (index < 0) {
+            return new Selection(BACKEND_LEGACY, null, "no camera2 device facing " + lensFacing);
+        }
+        CameraCapabilities primary = capabilitiesList.get(index);
+        String level = levelName(primary.getHardwareLevel());
+        boolean hasStreamConfiguration = primary.getPreviewSizes() != null;
+        int backend = chooseBackend(primary.getHardwareLevel(), hasStreamConfiguration);
+        if (backend == BACKEND_CAMERA2) {
+            return new Selection(BACKEND_CAMERA2, primary, "camera " + primary.getCameraId() + " is " + level);
+        }
+        if (!hasStreamConfiguration) {
+            return new Selection(BACKEND_LEGACY, primary,
+                    "camera " + primary.getCameraId() + " is " + level + " but has no stream configuration");
+        }
+        return new Selection(BACKEND_LEGACY, primary,
+                "camera " + primary.getCameraId() + " is " + level + ", legacy api preferred");
+    }
+
+    /**
+     * 查找指定方向上 id 最靠前的相机，即系统默认的主摄。
+     *
+     * @param lensFacings 各相机的 CameraCharacteristics.LENS_FACING_*，按相机 id 的顺序排列。
+     * @param lensFacing  需要的方向。
+     * @return 选中相机的下标，没有对应方向的相机时返回 -1。
+     */
+    static int findPrimary(@NonNull int[] lensFacings, int lensFacing) {
+        for (int i = 0; i < lensFacings.length; i++) {
+            if (lensFacings[i] == lensFacing) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 根据选中相机的硬件支持等级选择后端。
+     *
+     * @param hardwareLevel          硬件支持等级。
+     * @param hasStreamConfiguration 是否有输出流配置。
+     * @return {@link #BACKEND_CAMERA2} 或 {@link #BACKEND_LEGACY}。
+     */
+    static int chooseBackend(int hardwareLevel, boolean hasStreamConfiguration) {
+        if (rank(hardwareLevel) < MIN_CAMERA2_RANK || !hasStreamConfiguration) {
+            return BACKEND_LEGACY;
+        }
+        return BACKEND_CAMERA2;
+    }
+
+    /**
+     * 硬件支持等级的排序，数值越大能力越强。
+     */
+    static int rank(int hardwareLevel) {
+        switch (hardwareLevel) {
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_3:
+                return 3;
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_FULL:
+                return 2;
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED:
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private static String levelName(int hardwareLevel) {
+        switch (hardwareLevel) {
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_3:
+                return "LEVEL_3";
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_FULL:
+                return "FULL";
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED:
+                return "LIMITED";
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL:
+                return "EXTERNAL";
+            case CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY:
+                return "LEGACY";
+            default:
+                return "level " + hardwareLevel;
+        }
+    }
+
+    /**
+     * 选择结果。
+     */
+    public static final class Selection {
+
+        private final int mBackend;
+        private final CameraCapabilities mCapabilities;
+        private final String mReason;
+
+        private Selection(int backend, CameraCapabilities capabilities, String reason) {
+            mBackend = backend;
+            mCapabilities = capabilities;
+            mReason = reason;
+        }
+
+        /**
+         * 后端，{@link #BACKEND_CAMERA2} 或 {@link #BACKEND_LEGACY}。
+         */
+        public int getBackend() {
+            return mBackend;
+        }
+
+        /**
+         * 是否使用 Camera2。
+         */
+        public boolean isCamera2() {
+            return mBackend == BACKEND_CAMERA2;
+        }
+
+        /**
+         * 选中相机的能力快照，没有对应方向的相机时返回 null。
+         */
+        @Nullable
+        public CameraCapabilities getCapabilities() {
+            return mCapabilities;
+        }
+
+        /**
+         * 选择结果及原因，用于日志。
+         */
+        @Override
+        public String toString() {
+            return (isCamera2() ? "camera2: " : "legacy: ") + mReason;
+        }
+    }
+
+}
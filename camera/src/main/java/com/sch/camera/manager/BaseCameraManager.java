@@ -27,17 +27,29 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.media.ThumbnailUtils;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.MediaStore;
+import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.Surface;
 import android.view.TextureView;
 
+import com.sch.camera.ClipEditor;
 import com.sch.camera.DefOptions;
+import com.sch.camera.ExifHelper;
 import com.sch.camera.Size;
+import com.sch.camera.VideoRecorder;
 import com.sch.camera.annotation.Facing;
 import com.sch.camera.annotation.Flash;
+import com.sch.camera.annotation.FrameDelivery;
 import com.sch.camera.annotation.SensorDegrees;
+import com.sch.camera.frame.FrameDispatcher;
+import com.sch.camera.frame.FrameProcessor;
+import com.sch.camera.frame.FrameStats;
 import com.sch.camera.listener.OnCameraListener;
 import com.sch.camera.listener.OnPictureListener;
 import com.sch.camera.listener.OnVideoListener;
@@ -47,7 +59,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by StoneHui on 2018/8/8.
@@ -56,17 +76,22 @@ import java.util.List;
  */
 abstract class BaseCameraManager implements ICameraManager, SensorEventListener, TextureView.SurfaceTextureListener {
 
+    /**
+     * 录像缩略图的最大边长，与 MediaStore.Video.Thumbnails.MINI_KIND 一致。
+     */
+    private static final int VIDEO_THUMB_MAX_SIZE = 512;
+
     Activity mActivity;
     AutoFitTextureView mAutoFitTextureView;
 
     /**
-     * 当前相机是否支持调焦。
+     * 当前相机是否支持调焦，可能在相机线程写入。
      */
-    private boolean isAfAvailable = false;
+    private volatile boolean isAfAvailable = false;
     /**
-     * 当前相机是否支持闪光灯。
+     * 当前相机是否支持闪光灯，可能在相机线程写入。
      */
-    private boolean isFlashSupport = false;
+    private volatile boolean isFlashSupport = false;
     /**
      * 是否支持自动对焦。
      */
@@ -75,7 +100,93 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
     /**
      * 是否正在拍摄。
      */
-    private boolean isCapturing = false;
+    private volatile boolean isCapturing = false;
+
+    /**
+     * 最多同时处理（已拍摄但尚未保存完毕）的照片数量。
+     */
+    private int mMaxPicturesInFlight;
+    /**
+     * 正在处理的照片数量。
+     */
+    private int mPicturesInFlight = 0;
+    /**
+     * 照片文件的序号。
+     */
+    private int mPictureIndex = 0;
+    /**
+     * 本次连拍剩余未拍摄的张数。
+     */
+    private int mBurstRemaining = 0;
+    /**
+     * 是否有录像快照等待相机拍摄。
+     */
+    private boolean isVideoSnapshotPending = false;
+    /**
+     * 按下快门的时间。
+     */
+    private long mShutterTime = 0;
+    /**
+     * 最近一次拍照的连拍间隔。
+     */
+    private volatile long mShotToShotLatency = -1;
+
+    /**
+     * 开始打开相机的时间。
+     */
+    volatile long mOpenStartTime = -1;
+    /**
+     * 相机打开完成的时间。
+     */
+    volatile long mCameraOpenedTime = -1;
+    /**
+     * 第一帧预览画面到达的时间。
+     */
+    private volatile long mFirstFrameTime = -1;
+
+    /**
+     * 按下录像按钮的时间。
+     */
+    private long mVideoPressTime = 0;
+    /**
+     * 最近一次录像从按下到录制第一帧的耗时。
+     */
+    private volatile long mVideoStartLatency = -1;
+
+    /**
+     * 录像分段的时长，单位 ms。
+     */
+    long mVideoSegmentDuration;
+    /**
+     * 录像分段的大小，单位 byte。
+     */
+    long mVideoSegmentSize;
+    /**
+     * 录像预录的时长，单位 ms。
+     */
+    long mVideoPreRollDuration;
+    /**
+     * 录像预录最多占用的内存，单位 byte。
+     */
+    long mVideoPreRollSize;
+    /**
+     * 开始录像时从预览画面截取的缩略图。
+     */
+    private Bitmap mVideoThumb;
+    private final Object mVideoThumbLock = new Object();
+    /**
+     * 是否暂停录像。
+     */
+    boolean isVideoPaused = false;
+    /**
+     * 录像器不支持暂停时，每次暂停结束一个片段，结束录像时拼接为一个视频。
+     */
+    private final List<File> mVideoParts = new ArrayList<>();
+
+    /**
+     * 预览帧分发器。
+     */
+    final FrameDispatcher mFrameDispatcher = new FrameDispatcher();
 
     /**
      * 相机预览尺寸。
@@ -119,6 +230,19 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
      * 拍视频的监听器。
      */
     OnVideoListener mOnVideoListener;
+    /**
+     * 在主线程回调相机监听。
+     */
+    final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 保存拍摄结果的执行器。
+     */
+    PersistExecutor mPersistExecutor;
+    /**
+     * 缩略图生成器。
+     */
+    private ThumbnailEngine mThumbnailEngine = new ThumbnailEngine(ThumbnailEngine.DEFAULT_TARGET_SIZE);
 
     /**
      * 传感器管理器。
@@ -160,31 +284,61 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
         mVideoFile = new File(activity.getExternalFilesDir(null), String.format("camera_video%s", VIDEO_TYPE));
         mPictureFile = new File(activity.getExternalFilesDir(null), String.format("camera_picture%s", PICTURE_TYPE));
 
+        mPersistExecutor = new PersistExecutor(options);
+        mMaxPicturesInFlight = Math.max(1, options.getMaxPicturesInFlight());
+        mVideoSegmentDuration = options.getVideoSegmentDuration();
+        mVideoSegmentSize = options.getVideoSegmentSize();
+        mVideoPreRollDuration = options.getVideoPreRollDuration();
+        mVideoPreRollSize = options.getVideoPreRollSize();
+
         sensorManager = (SensorManager) activity.getSystemService(Activity.SENSOR_SERVICE);
     }
 
     @Override
     public void onResume() {
+        // 启动保存线程。
+        mPersistExecutor.start();
         // 注册传感器监听器。
         sensorManager.registerListener(this,
                 sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
                 SensorManager.SENSOR_DELAY_NORMAL);
 
+        // 设置预览视图监听，同时用于记录第一帧到达的时间。
+        mAutoFitTextureView.setSurfaceTextureListener(this);
         if (mAutoFitTextureView.isAvailable() && mAutoFitTextureView.getSurfaceTexture() != null) {
             // 打开相机。
             openCamera(mAutoFitTextureView.getWidth(), mAutoFitTextureView.getHeight());
         } else {
-            // 设置预览视图监听。
-            mAutoFitTextureView.setSurfaceTextureListener(this);
+            // 预览视图还没有准备好，先打开相机。
+            openCameraEarly();
         }
     }
 
+    /**
+     * 在预览视图准备好之前打开相机，预览视图准备好后仍会调用 {@link #openCamera(int, int)}。
+     * 默认不做处理。
+     */
+    void openCameraEarly() {
+    }
+
+    /**
+     * 记录开始打开相机的时间，并清除上一次的记录。
+     */
+    void markOpenStart() {
+        mCameraOpenedTime = -1;
+        mFirstFrameTime = -1;
+        mOpenStartTime = SystemClock.elapsedRealtime();
+    }
+
     @Override
     public void onPause() {
         // 关闭相机。
         closeCamera();
         sensorManager.unregisterListener(this);
         mAutoFitTextureView.setSurfaceTextureListener(null);
+        // 已提交的保存任务执行完毕后结束保存线程。
+        mPersistExecutor.shutdown();
+        mThumbnailEngine.clear();
     }
 
     @Override
@@ -197,6 +351,202 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
         this.mOnVideoListener = listener;
     }
 
+    @Override
+    public void setMaxPicturesInFlight(int count) {
+        synchronized (this) {
+            mMaxPicturesInFlight = Math.max(1, count);
+        }
+    }
+
+    @Override
+    public long getShotToShotLatency() {
+        return mShotToShotLatency;
+    }
+
+    @Override
+    public void prewarmVideoRecord() {
+        synchronized (this) {
+            mVideoPressTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    @Override
+    public void cancelVideoRecordPrewarm() {
+        synchronized (this) {
+            mVideoPressTime = 0;
+        }
+    }
+
+    @Override
+    public long getVideoStartLatency() {
+        return mVideoStartLatency;
+    }
+
+    @Override
+    public void addFrameProcessor(@NonNull FrameProcessor processor, @FrameDelivery int delivery,
+                                  @IntRange(from = 1) int frameInterval) {
+        mFrameDispatcher.add(processor, delivery, frameInterval);
+        onFrameProcessorsChanged();
+    }
+
+    @Override
+    public void removeFrameProcessor(@NonNull FrameProcessor processor) {
+        if (mFrameDispatcher.remove(processor)) {
+            onFrameProcessorsChanged();
+        }
+    }
+
+    @Nullable
+    @Override
+    public FrameStats getFrameStats(@NonNull FrameProcessor processor) {
+        return mFrameDispatcher.getStats(processor);
+    }
+
+    /**
+     * 添加或移除了帧处理器，子类据此开始或停止输出预览帧。在主线程调用，默认不做处理。
+     */
+    void onFrameProcessorsChanged() {
+    }
+
+    @Override
+    public boolean isVideoRecordPaused() {
+        return isVideoPaused;
+    }
+
+    /**
+     * 开始录像时删除上次遗留的片段。
+     */
+    void resetVideoParts() {
+        isVideoPaused = false;
+        deleteVideoParts();
+    }
+
+    /**
+     * 获取当前片段的文件，第一个片段直接写入 mVideoFile。
+     */
+    File getVideoPartFile() {
+        int index = mVideoParts.size();
+        if (index == 0) {
+            return mVideoFile;
+        }
+        return new File(mVideoFile.getPath().replace(VIDEO_TYPE, String.format(Locale.US, "_part%d%s", index, VIDEO_TYPE)));
+    }
+
+    /**
+     * 录像器不支持暂停时结束当前片段，恢复时录制新的片段。太短的片段被丢弃。
+     *
+     * @param recorder 当前片段的录像器。
+     */
+    void stopVideoPart(VideoRecorder recorder) {
+        File file = getVideoPartFile();
+        try {
+            recorder.stop();
+            mVideoParts.add(file);
+        } catch (Exception e) {
+            e.printStackTrace();
+            // noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        isVideoPaused = true;
+    }
+
+    /**
+     * 结束录像器，暂停过的录像拼接所有片段。最后一个片段太短时丢弃该片段，不影响之前的片段。
+     *
+     * @param recorder 当前片段的录像器。
+     * @throws Exception 没有暂停过时，MediaRecorder.stop() 可能抛出异常。
+     */
+    void stopVideoRecorder(VideoRecorder recorder) throws Exception {
+        isVideoPaused = false;
+        if (mVideoParts.isEmpty()) {
+            recorder.stop();
+            return;
+        }
+        File file = getVideoPartFile();
+        try {
+            recorder.stop();
+            mVideoParts.add(file);
+        } catch (Exception e) {
+            e.printStackTrace();
+            // noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        mergeVideoParts();
+    }
+
+    /**
+     * 拼接所有片段到 mVideoFile，用于暂停时已经结束了最后一个片段的情况。
+     *
+     * @throws IOException 没有录制到任何片段或拼接失败。
+     */
+    void mergeVideoParts() throws IOException {
+        isVideoPaused = false;
+        if (mVideoParts.isEmpty()) {
+            throw new IOException("No video was recorded");
+        }
+        try {
+            if (mVideoParts.size() == 1 && mVideoParts.get(0).equals(mVideoFile)) {
+                return;
+            }
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                throw new IOException("MediaMuxer is not supported");
+            }
+            File merged = new File(mVideoFile.getPath().replace(VIDEO_TYPE, String.format("_merged%s", VIDEO_TYPE)));
+            ClipEditor.concat(mVideoParts, merged);
+            deleteVideoParts();
+            if (!merged.renameTo(mVideoFile)) {
+                throw new IOException("Failed to rename " + merged);
+            }
+        } finally {
+            mVideoParts.clear();
+        }
+    }
+
+    /**
+     * 删除所有片段。
+     */
+    private void deleteVideoParts() {
+        for (File part : mVideoParts) {
+            // noinspection ResultOfMethodCallIgnored
+            part.delete();
+        }
+        mVideoParts.clear();
+    }
+
+    /**
+     * 开始录像。没有预热时以当前时间作为按下的时间。
+     */
+    synchronized void markVideoStart() {
+        if (mVideoPressTime == 0) {
+            mVideoPressTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * 录制了一帧，第一帧时更新录像启动耗时。
+     */
+    synchronized void markVideoFrameRecorded() {
+        if (mVideoPressTime > 0) {
+            mVideoStartLatency = SystemClock.elapsedRealtime() - mVideoPressTime;
+            mVideoPressTime = 0;
+        }
+    }
+
+    @Override
+    public long getOpenStartTime() {
+        return mOpenStartTime;
+    }
+
+    @Override
+    public long getCameraOpenedTime() {
+        return mCameraOpenedTime;
+    }
+
+    @Override
+    public long getFirstFrameTime() {
+        return mFirstFrameTime;
+    }
+
     @Override
     public void setAutoFocus(boolean autoFocus) {
         this.isAutoFocus = autoFocus;
@@ -279,6 +629,9 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
 
     @Override
     public void onSurfaceTextureUpdated(SurfaceTexture texture) {
+        if (mFirstFrameTime < 0 && mCameraOpenedTime >= 0) {
+            mFirstFrameTime = SystemClock.elapsedRealtime();
+        }
     }
 
     /**
@@ -316,13 +669,45 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
      *
      * @param flashSupport 是否支持闪光灯。
      */
-    void setFlashSupport(boolean flashSupport) {
+    void setFlashSupport(final boolean flashSupport) {
         isFlashSupport = flashSupport;
-        if (mOnCameraListener != null) {
-            mOnCameraListener.onFlashSupport(isFlashSupport);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mOnCameraListener != null) {
+                    mOnCameraListener.onFlashSupport(flashSupport);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在主线程执行，当前已是主线程时直接执行。相机线程中的监听回调通过它切换到主线程，监听中可以直接更新界面。
+     *
+     * @param runnable 要执行的任务。
+     */
+    void runOnMainThread(@NonNull Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            mMainHandler.post(runnable);
         }
     }
 
+    /**
+     * 在主线程回调错误。
+     */
+    void postError(final Exception e) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mOnCameraListener != null) {
+                    mOnCameraListener.onError(e);
+                }
+            }
+        });
+    }
+
     /**
      * 是否正在拍摄。
      */
@@ -339,6 +724,205 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
         isCapturing = capturing;
     }
 
+    /**
+     * 开始拍照。相机空闲且正在处理的照片数量未达到上限时才能拍照。
+     *
+     * @return 是否可以拍照。
+     */
+    boolean beginPicture() {
+        synchronized (this) {
+            if (isCapturing || mPicturesInFlight >= mMaxPicturesInFlight) {
+                return false;
+            }
+            isCapturing = true;
+            mPicturesInFlight++;
+            mShutterTime = SystemClock.elapsedRealtime();
+            return true;
+        }
+    }
+
+    /**
+     * 开始连拍。连拍的照片同样受同时处理数量的限制，张数超出剩余名额时只拍摄剩余名额的张数，
+     * 保证 {@link #nextPictureFile()} 轮流使用的文件不会被正在处理的照片占用。
+     *
+     * @param count 拍摄张数。
+     * @return 实际拍摄的张数，0 表示不能连拍。
+     */
+    int beginBurst(int count) {
+        synchronized (this) {
+            count = Math.min(count, mMaxPicturesInFlight - mPicturesInFlight);
+            if (isCapturing || count <= 0) {
+                return 0;
+            }
+            isCapturing = true;
+            mBurstRemaining = count;
+            mPicturesInFlight += count;
+            mShutterTime = SystemClock.elapsedRealtime();
+            return count;
+        }
+    }
+
+    /**
+     * 是否正在连拍。
+     */
+    boolean isBursting() {
+        synchronized (this) {
+            return mBurstRemaining > 0;
+        }
+    }
+
+    /**
+     * 取消连拍，未拍摄的照片不再计入正在处理的照片。
+     */
+    void cancelBurst() {
+        synchronized (this) {
+            if (mBurstRemaining <= 0) {
+                return;
+            }
+            mPicturesInFlight = Math.max(0, mPicturesInFlight - mBurstRemaining);
+            mBurstRemaining = 0;
+            isCapturing = false;
+        }
+    }
+
+    /**
+     * 相机已完成一次拍摄。不在连拍中或连拍结束时，可以开始下一次拍摄。
+     */
+    void onPictureExposed() {
+        synchronized (this) {
+            if (mBurstRemaining > 0 && --mBurstRemaining > 0) {
+                return;
+            }
+            isCapturing = false;
+            updateShotToShotLatency();
+        }
+    }
+
+    /**
+     * 照片已保存完毕（或被丢弃）。
+     */
+    void onPicturePersisted() {
+        synchronized (this) {
+            mPicturesInFlight = Math.max(0, mPicturesInFlight - 1);
+            updateShotToShotLatency();
+        }
+    }
+
+    /**
+     * 开始录像快照。录像快照不改变拍摄状态，只受同时处理数量的限制。
+     *
+     * @return 是否可以拍摄。
+     */
+    boolean beginVideoSnapshot() {
+        synchronized (this) {
+            if (isVideoSnapshotPending || mPicturesInFlight >= mMaxPicturesInFlight) {
+                return false;
+            }
+            isVideoSnapshotPending = true;
+            mPicturesInFlight++;
+            return true;
+        }
+    }
+
+    /**
+     * 相机已完成一次拍摄，判断是否是录像快照。
+     *
+     * @return 是否是录像快照，是则不需要调用 {@link #onPictureExposed()}。
+     */
+    boolean onVideoSnapshotExposed() {
+        synchronized (this) {
+            if (!isVideoSnapshotPending) {
+                return false;
+            }
+            isVideoSnapshotPending = false;
+            return true;
+        }
+    }
+
+    /**
+     * 录像快照提交失败。
+     */
+    void cancelVideoSnapshot() {
+        synchronized (this) {
+            if (isVideoSnapshotPending) {
+                isVideoSnapshotPending = false;
+                mPicturesInFlight = Math.max(0, mPicturesInFlight - 1);
+            }
+        }
+    }
+
+    /**
+     * 从预览画面截取录像快照，用于无法在录像时拍照的情况，需要在主线程调用。
+     * 在保存线程压缩并回调拍照监听。
+     *
+     * @return 是否截取成功。
+     */
+    boolean takePreviewSnapshot() {
+        if (!beginVideoSnapshot()) {
+            return false;
+        }
+        // 前置摄像头的照片与预览一样是镜像的。
+        final Bitmap bitmap = grabPreviewFrame(0, false);
+        if (bitmap == null) {
+            cancelVideoSnapshot();
+            return false;
+        }
+        onVideoSnapshotExposed();
+        mPersistExecutor.execute(new PersistExecutor.Task() {
+            @Override
+            public void run() {
+                File file = saveBitmap(nextPictureFile().getAbsolutePath(), bitmap);
+                float scale = Math.min(1f,
+                        (float) ThumbnailEngine.DEFAULT_TARGET_SIZE / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+                Bitmap thumb = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                        Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+                File thumbFile = saveBitmap(file.getAbsolutePath().replace(PICTURE_TYPE,
+                        String.format("_thumb%s", PICTURE_TYPE)), thumb);
+                if (thumb != bitmap) {
+                    thumb.recycle();
+                }
+                bitmap.recycle();
+                mOnPictureListener.onPictureTaken(file, thumbFile);
+                onPicturePersisted();
+            }
+
+            @Override
+            void discard() {
+                bitmap.recycle();
+                onPicturePersisted();
+            }
+        }, PersistExecutor.PRIORITY_PICTURE);
+        return true;
+    }
+
+    /**
+     * 可以再次拍照时，记录从按下快门到现在的时间。
+     */
+    private void updateShotToShotLatency() {
+        if (mShutterTime > 0 && !isCapturing && mPicturesInFlight < mMaxPicturesInFlight) {
+            mShotToShotLatency = SystemClock.elapsedRealtime() - mShutterTime;
+            mShutterTime = 0;
+        }
+    }
+
+    /**
+     * 获取下一张照片的保存文件。
+     * <p>
+     * 只允许一张照片在处理时使用 mPictureFile；否则在 2 * mMaxPicturesInFlight 个文件中轮流使用，
+     * 保证正在处理的照片及刚回调的照片不会被覆盖。
+     */
+    File nextPictureFile() {
+        synchronized (this) {
+            int slotCount = mMaxPicturesInFlight;
+            if (slotCount <= 1) {
+                return mPictureFile;
+            }
+            mPictureIndex = (mPictureIndex + 1) % (slotCount * 2);
+            return new File(mPictureFile.getParentFile(),
+                    String.format(Locale.US, "camera_picture_%d%s", mPictureIndex, PICTURE_TYPE));
+        }
+    }
+
     /**
      * 获取合适的预览尺寸。
      *
@@ -380,24 +964,116 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
         return optimalSize;
     }
 
+    /**
+     * 异步保存图片。原图与缩略图并行生成，都完成后回调，最后将原图同步到磁盘。
+     *
+     * @param buffer  图片数据，保存完毕前不能被修改。
+     * @param release 保存完毕后释放图片数据，可为 null。
+     */
+    void persistPicture(@NonNull final ByteBuffer buffer, @Nullable final Runnable release) {
+        final File file = nextPictureFile();
+        final File thumbFile = new File(file.getAbsolutePath().replace(PICTURE_TYPE, String.format("_thumb%s", PICTURE_TYPE)));
+        final boolean isMirror = !isBackCamera();
+        final AtomicInteger pending = new AtomicInteger(2);
+        final AtomicBoolean isDiscarded = new AtomicBoolean(false);
+        final AtomicReference<File> thumbResult = new AtomicReference<>();
+        final Runnable onTaskDone = new Runnable() {
+            @Override
+            public void run() {
+                if (pending.decrementAndGet() > 0) {
+                    return;
+                }
+                if (release != null) {
+                    release.run();
+                }
+                if (isDiscarded.get()) {
+                    onPicturePersisted();
+                    return;
+                }
+                File thumb = thumbResult.get();
+                if (thumb == null) {
+                    // 缩略图生成器失败，原图已保存，从原图解码缩略图。
+                    thumb = thumbForPicture(file, thumbFile);
+                }
+                mOnPictureListener.onPictureTaken(file, thumb);
+                onPicturePersisted();
+                mPersistExecutor.execute(new PersistExecutor.Task() {
+                    @Override
+                    public void run() {
+                        syncFile(file);
+                    }
+                }, PersistExecutor.PRIORITY_SYNC);
+            }
+        };
+        // 生成缩略图。
+        mPersistExecutor.execute(new PersistExecutor.Task() {
+            @Override
+            public void run() {
+                try {
+                    ByteBuffer jpeg = buffer.duplicate();
+                    int orientation = ExifHelper.getOrientation(jpeg);
+                    thumbResult.set(mThumbnailEngine.createThumbnail(jpeg,
+                            isMirror ? ExifHelper.mirrorOrientation(orientation) : orientation, thumbFile));
+                } finally {
+                    onTaskDone.run();
+                }
+            }
+
+            @Override
+            void discard() {
+                isDiscarded.set(true);
+                onTaskDone.run();
+            }
+        }, PersistExecutor.PRIORITY_THUMB);
+        // 保存原图。
+        mPersistExecutor.execute(new PersistExecutor.Task() {
+            @Override
+            public void run() {
+                try {
+                    savePicture(file, buffer.duplicate(), isMirror);
+                } finally {
+                    onTaskDone.run();
+                }
+            }
+
+            @Override
+            void discard() {
+                isDiscarded.set(true);
+                onTaskDone.run();
+            }
+        }, PersistExecutor.PRIORITY_PICTURE);
+    }
+
     /**
      * 保存图片。
+     * <p>
+     * 通过 FileChannel 直接把 ByteBuffer（如 Image 的 plane）写入文件，不再复制到 byte[]。
+     * 前置摄像头的图片通过修改 EXIF 方向水平翻转，不解码像素。
      *
-     * @param imageBytes 图片字节数组。
+     * @param file     目标文件。
+     * @param buffer   图片数据。
+     * @param isMirror 是否水平翻转。
      */
-    void savePicture(byte[] imageBytes) {
+    private void savePicture(File file, ByteBuffer buffer, boolean isMirror) {
+        ByteBuffer[] segments = new ByteBuffer[]{buffer};
+        if (isMirror) {
+            segments = ExifHelper.mirror(buffer);
+            if (segments == null) {
+                // 无法修改 EXIF 方向，解码后翻转；无法解码时保存未翻转的原图。
+                if (mirrorPicture(file, buffer.duplicate())) {
+                    return;
+                }
+                segments = new ByteBuffer[]{buffer};
+            }
+        }
         FileOutputStream output = null;
         try {
-            output = new FileOutputStream(mPictureFile);
-            if (isBackCamera()) {
-                output.write(imageBytes);
-            } else {
-                // 水平翻转前置摄像头的图片。
-                Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-                Matrix matrix = new Matrix();
-                matrix.setScale(-1, 1);
-                bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
+            output = new FileOutputStream(file);
+            FileChannel channel = output.getChannel();
+            for (ByteBuffer segment : segments) {
+                while (segment.hasRemaining()) {
+                    channel.write(segment);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -413,31 +1089,208 @@ abstract class BaseCameraManager implements ICameraManager, SensorEventListener,
     }
 
     /**
-     * 为图片保存缩略图。
+     * 解码图片，水平翻转后保存。
      *
-     * @param file 原文件。
-     * @return 缩略图文件。
+     * @param file   目标文件。
+     * @param buffer 图片数据。
+     * @return 是否保存，无法解码时返回 false。
      */
-    File thumbForPicture(File file) {
-        // 生成缩略图。
+    private boolean mirrorPicture(File file, ByteBuffer buffer) {
+        byte[] imageBytes = new byte[buffer.remaining()];
+        buffer.get(imageBytes);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+        if (bitmap == null) {
+            return false;
+        }
+        Matrix matrix = new Matrix();
+        matrix.setScale(-1, 1);
+        Bitmap mirrored = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
+        saveBitmap(file.getAbsolutePath(), mirrored);
+        if (mirrored != bitmap) {
+            bitmap.recycle();
+        }
+        mirrored.recycle();
+        return true;
+    }
+
+    /**
+     * 从已保存的照片解码缩略图，用于缩略图生成器失败的情况。
+     *
+     * @param file      照片文件。
+     * @param thumbFile 缩略图文件。
+     * @return 缩略图文件，照片也无法解码时返回 null。
+     */
+    @Nullable
+    private File thumbForPicture(File file, File thumbFile) {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inSampleSize = 4;
         Bitmap thumb = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
-        return saveBitmap(file.getAbsolutePath().replace(PICTURE_TYPE, String.format("_thumb%s", PICTURE_TYPE)), thumb);
+        if (thumb == null) {
+            // 缩略图文件可能是上一次使用这个文件名时留下的，不能当作这张照片的缩略图。
+            // noinspection ResultOfMethodCallIgnored
+            thumbFile.delete();
+            return null;
+        }
+        File saved = saveBitmap(thumbFile.getAbsolutePath(), thumb);
+        thumb.recycle();
+        return saved;
     }
 
     /**
-     * 为视频保存缩略图。
+     * 将文件同步到磁盘。
+     *
+     * @param file 文件。
+     */
+    private void syncFile(File file) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (null != raf) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 在保存线程生成视频缩略图并回调，用于分段录像时逐个回调已完成的分段。
+     *
+     * @param file 视频文件。
+     */
+    void deliverVideo(@NonNull final File file) {
+        // 当前分段使用已截取的缩略图，下一个分段重新截取。
+        final Bitmap thumb = takeVideoThumb();
+        if (isCapturing()) {
+            mAutoFitTextureView.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCapturing()) {
+                        captureVideoThumb();
+                    }
+                }
+            });
+        }
+        // 视频分段不能丢弃，分段回调在编码线程中，也不能等待队列空位。
+        mPersistExecutor.executeUnbounded(new PersistExecutor.Task() {
+            @Override
+            public void run() {
+                mOnVideoListener.onVideoRecorded(file, thumbForVideo(file, thumb));
+            }
+
+            @Override
+            void discard() {
+                // 之后提交的任务按策略丢弃了这个任务时，在丢弃它的线程回调。
+                run();
+            }
+        }, PersistExecutor.PRIORITY_THUMB);
+    }
+
+    /**
+     * 为视频保存缩略图，优先使用开始录像时截取的预览画面。
      *
      * @param file 原文件。
      * @return 缩略图文件。
      */
     File thumbForVideo(File file) {
-        // 生成缩略图。
-        Bitmap thumb = ThumbnailUtils.createVideoThumbnail(file.getAbsolutePath(), MediaStore.Video.Thumbnails.MINI_KIND);
+        return thumbForVideo(file, takeVideoThumb());
+    }
+
+    /**
+     * 为视频保存缩略图。
+     *
+     * @param file  原文件。
+     * @param thumb 截取的预览画面，为 null 时解码视频文件生成。
+     * @return 缩略图文件。
+     */
+    private File thumbForVideo(File file, @Nullable Bitmap thumb) {
+        if (thumb == null) {
+            // 没有截取到预览画面时解码视频生成缩略图。
+            thumb = ThumbnailUtils.createVideoThumbnail(file.getAbsolutePath(), MediaStore.Video.Thumbnails.MINI_KIND);
+        }
         return saveBitmap(file.getAbsolutePath().replace(VIDEO_TYPE, String.format("_thumb%s", PICTURE_TYPE)), thumb);
     }
 
+    /**
+     * 从预览画面截取录像缩略图，需要在主线程开始录像时调用。
+     * 前置摄像头的预览是镜像的，截图水平翻转后与视频画面一致。
+     */
+    void captureVideoThumb() {
+        Bitmap bitmap = grabPreviewFrame(VIDEO_THUMB_MAX_SIZE, true);
+        if (bitmap == null) {
+            return;
+        }
+        Bitmap old;
+        synchronized (mVideoThumbLock) {
+            old = mVideoThumb;
+            mVideoThumb = bitmap;
+        }
+        if (old != null) {
+            old.recycle();
+        }
+    }
+
+    /**
+     * 截取预览画面，需要在主线程调用。界面固定竖屏，截图按手机方向旋转。
+     *
+     * @param maxSize    截图的最大边长，0 表示使用预览视图的尺寸。
+     * @param isUnmirror 前置摄像头的截图是否水平翻转为非镜像的画面。
+     * @return 截图，预览视图不可用时返回 null。
+     */
+    @Nullable
+    Bitmap grabPreviewFrame(int maxSize, boolean isUnmirror) {
+        if (mAutoFitTextureView == null || !mAutoFitTextureView.isAvailable()) {
+            return null;
+        }
+        int viewWidth = mAutoFitTextureView.getWidth();
+        int viewHeight = mAutoFitTextureView.getHeight();
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return null;
+        }
+        float scale = maxSize > 0 ? Math.min(1f, (float) maxSize / Math.max(viewWidth, viewHeight)) : 1f;
+        Bitmap bitmap = mAutoFitTextureView.getBitmap(Math.max(1, Math.round(viewWidth * scale)),
+                Math.max(1, Math.round(viewHeight * scale)));
+        if (bitmap == null) {
+            return null;
+        }
+        boolean isFlip = isUnmirror && !isBackCamera();
+        // 镜像的画面旋转方向相反。
+        int rotation = isFlip ? mSensorDegrees : (360 - mSensorDegrees) % 360;
+        if (rotation == 0 && !isFlip) {
+            return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        if (isFlip) {
+            matrix.setScale(-1, 1);
+        }
+        matrix.postRotate(rotation);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
+        if (rotated != bitmap) {
+            bitmap.recycle();
+        }
+        return rotated;
+    }
+
+    /**
+     * 取出截取的录像缩略图。
+     *
+     * @return 缩略图，没有截取时返回 null。
+     */
+    @Nullable
+    private Bitmap takeVideoThumb() {
+        synchronized (mVideoThumbLock) {
+            Bitmap thumb = mVideoThumb;
+            mVideoThumb = null;
+            return thumb;
+        }
+    }
+
     /**
      * 保存图片。
      */
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.manager;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Created by StoneHui on 2018/9/5.
+ * <p>
+ * ByteBuffer 缓冲池，循环使用保存照片时的临时缓冲区。
+ */
+class ByteBufferPool {
+
+    private final ArrayDeque<ByteBuffer> mBuffers = new ArrayDeque<>();
+
+    /**
+     * 最多缓存的缓冲区数量。
+     */
+    private final int mMaxCount;
+
+    /**
+     * 初始化。
+     *
+     * @param maxCount 最多缓存的缓冲区数量。
+     */
+    ByteBufferPool(int maxCount) {
+        mMaxCount = maxCount;
+    }
+
+    /**
+     * 获取容量不小于指定大小的缓冲区，缓冲区的 limit 为指定大小。
+     *
+     * @param size 需要的大小。
+     */
+    synchronized ByteBuffer acquire(int size) {
+        Iterator<ByteBuffer> iterator = mBuffers.iterator();
+        while (iterator.hasNext()) {
+            ByteBuffer buffer = iterator.next();
+            if (buffer.capacity() >= size) {
+                iterator.remove();
+                buffer.clear();
+                buffer.limit(size);
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * 回收缓冲区。
+     *
+     * @param buffer 缓冲区。
+     */
+    synchronized void release(ByteBuffer buffer) {
+        if (mBuffers.size() >= mMaxCount) {
+            // 丢弃最小的缓冲区。
+            ByteBuffer smallest = buffer;
+            for (ByteBuffer item : mBuffers) {
+                if (item.capacity() < smallest.capacity()) {
+                    smallest = item;
+                }
+            }
+            if (smallest == buffer) {
+                return;
+            }
+            mBuffers.remove(smallest);
+        }
+        mBuffers.offer(buffer);
+    }
+
+    /**
+     * 清空缓冲池。
+     */
+    synchronized void clear() {
+        mBuffers.clear();
+    }
+
+}
@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.ImageFormat;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -32,13 +33,17 @@ import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.InputConfiguration;
 import android.hardware.camera2.params.MeteringRectangle;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.params.OutputConfiguration;
 import android.media.Image;
 import android.media.ImageReader;
+import android.media.ImageWriter;
+import android.media.MediaCodec;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
@@ -52,13 +57,21 @@ import com.sch.camera.R;
 import com.sch.camera.Size;
 import com.sch.camera.VideoRecorder;
 import com.sch.camera.annotation.Facing;
+import com.sch.camera.encoder.EncoderCapabilities;
+import com.sch.camera.encoder.EncoderProfile;
+import com.sch.camera.encoder.MediaCodecRecorder;
+import com.sch.camera.frame.LumaAnalyzer;
+import com.sch.camera.frame.LumaDispatcher;
 import com.sch.camera.annotation.Flash;
 import com.sch.camera.listener.OnCameraListener;
 import com.sch.camera.widget.AutoFitTextureView;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static com.sch.camera.DefOptions.FACING_BACK;
@@ -83,25 +96,24 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      * @param facing  摄像头方向。
      */
     public static boolean isSupported(Context context, @Facing int facing) {
-        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-        if (manager == null) {
-            return false;
-        }
+        BackendSelector.Selection selection = selectBackend(context, facing);
+        return selection != null && selection.isCamera2();
+    }
+
+    /**
+     * 选择指定方向的相机及后端。
+     *
+     * @param context Context。
+     * @param facing  摄像头方向。
+     * @return 选择结果，读取相机特性失败时返回 null。
+     */
+    @Nullable
+    public static BackendSelector.Selection selectBackend(Context context, @Facing int facing) {
         try {
-            CameraCharacteristics characteristics;
-            for (String id : manager.getCameraIdList()) {
-                characteristics = manager.getCameraCharacteristics(id);
-                Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (internal == null || internal != FACING_MAPPING.get(facing)) {
-                    continue;
-                }
-                Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-                return level != null && level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED;
-            }
-            return false;
+            return BackendSelector.select(CameraCapabilities.getAll(context), FACING_MAPPING.get(facing));
         } catch (CameraAccessException e) {
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
@@ -123,6 +135,30 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      * Camera2 保证的最大预览高度。
      */
     private static final int MAX_PREVIEW_HEIGHT = 1080;
+    /**
+     * ImageReader 最多同时持有的图片数量。
+     */
+    private static final int MAX_IMAGES = 9;
+    /**
+     * 零延迟拍照时缓存的帧数。
+     */
+    private static final int ZSL_RING_SIZE = 4;
+    /**
+     * 分析帧的 ImageReader 最多同时持有的图片数量，每个处理器最多持有等待中和处理中的两帧。
+     */
+    private static final int FRAME_MAX_IMAGES = 8;
+    /**
+     * 亮度分析的 ImageReader 最多同时持有的图片数量，只保留最新的帧。
+     */
+    private static final int LUMA_MAX_IMAGES = 2;
+    /**
+     * 亮度分析帧的默认宽度。
+     */
+    private static final int DEF_LUMA_WIDTH = 320;
+    /**
+     * 录像帧率。
+     */
+    private static final int VIDEO_FRAME_RATE = 30;
 
     /**
      * 相机管理器。
@@ -133,14 +169,14 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      */
     private String mCameraId;
     /**
-     * 所有相机 id。
+     * 所有相机的能力快照。
      */
-    private List<String> mCameraIdList;
+    private List<CameraCapabilities> mCapabilitiesList;
 
     /**
-     * 相机支持的特性。
+     * 当前相机的能力快照。
      */
-    private CameraCharacteristics mCameraCharacteristics;
+    private CameraCapabilities mCapabilities;
 
     /**
      * 相机预览的请求创建器。
@@ -174,13 +210,145 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      */
     private HandlerThread mBackgroundThread;
     private Handler mBackgroundHandler;
+    /**
+     * 接收分析帧的线程，分发方式为阻塞时只阻塞该线程。
+     */
+    private HandlerThread mFrameThread;
+    private Handler mFrameHandler;
+    /**
+     * 分析帧的 ImageReader，有帧处理器时才加入预览会话。
+     */
+    private ImageReader mFrameImageReader;
+    /**
+     * 当前会话是否输出分析帧。
+     */
+    private boolean isFrameSession = false;
+    /**
+     * 亮度帧分发器。
+     */
+    private final LumaDispatcher mLumaDispatcher = new LumaDispatcher();
+    /**
+     * 亮度分析帧的宽度。
+     */
+    private int mLumaWidth = DEF_LUMA_WIDTH;
+    /**
+     * 亮度分析的 ImageReader，有亮度分析器且没有帧处理器时才加入预览会话。
+     */
+    private ImageReader mLumaImageReader;
+    /**
+     * 当前会话是否单独输出亮度分析帧。
+     */
+    private boolean isLumaSession = false;
 
     /**
      * 处理图片捕获。
      */
-    private ImageReader mImageReader;
+    private PictureImageReader mImageReader;
+    /**
+     * ImageReader 的缓冲区快用完时，将图片数据复制到此缓冲池中以便尽快释放 Image。
+     */
+    private final ByteBufferPool mBufferPool = new ByteBufferPool(2);
+    /**
+     * 按间隔连拍的任务。
+     */
+    private Runnable mBurstTask;
+
+    /**
+     * 是否启用零延迟拍照。
+     */
+    private boolean isZeroShutterLag;
+    /**
+     * 录像是否优先使用 HEVC。
+     */
+    private boolean isPreferHevc;
+    /**
+     * 零延迟拍照时接收 YUV_420_888 预览帧的 ImageReader，设备不支持 YUV 重处理时为 null，使用普通拍照。
+     */
+    private ImageReader mZslImageReader;
+    /**
+     * 最近的预览帧。
+     */
+    private ZslRingBuffer mZslRingBuffer;
+    /**
+     * 将 YUV 帧送入重处理会话。
+     */
+    private ImageWriter mZslImageWriter;
+    /**
+     * SENSOR_TIMESTAMP 是否与 SystemClock.elapsedRealtimeNanos() 使用相同的时间基准。
+     */
+    private boolean isZslTimestampRealtime = false;
+    /**
+     * 按下快门时缓冲区为空，等待下一帧。
+     */
+    private boolean isZslPending = false;
+
+    /**
+     * 当前打开请求的回调，用于丢弃已取消的打开请求。
+     */
+    private volatile CameraDevice.StateCallback mOpenCallback;
+    /**
+     * 预览视图的 Surface。
+     */
+    private Surface mPreviewSurface;
+    /**
+     * 录像编码器的持久输入 Surface。会话创建时即包含该 Surface，开始和结束录像只需切换重复请求。
+     */
+    private Surface mRecorderSurface;
+    /**
+     * 预热的录像器。
+     */
+    private VideoRecorder mPrewarmRecorder;
+    /**
+     * 正在预录的录像器，预览期间持续编码到内存，开始录像时接管为 mVideoRecorder。
+     */
+    private VideoRecorder mPreRollRecorder;
+    /**
+     * 当前预览尺寸的视频编码配置。
+     */
+    private EncoderProfile mEncoderProfile;
+    /**
+     * 是否已经选择了视频编码配置，没有可用编码器时 mEncoderProfile 为 null。
+     */
+    private boolean isEncoderProfileResolved = false;
+    /**
+     * 本次录像是否分段，分段录像的每个分段在写入完毕时回调。
+     */
+    private boolean isVideoSegmented = false;
+
+    /**
+     * 录像请求的回调，用于统计录像启动耗时。
+     */
+    private CameraCaptureSession.CaptureCallback mRecordCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, long timestamp, long frameNumber) {
+            markVideoFrameRecorded();
+        }
+    };
+    /**
+     * 预览视图的 SurfaceTexture 是否已经可用。
+     */
+    private volatile boolean isSurfaceReady = false;
+    /**
+     * 是否已经开始创建预览会话。
+     */
+    private boolean isSessionStarted = false;
+    /**
+     * 预览视图可用前创建会话时使用的延迟输出配置，绑定 Surface 后置为 null。
+     */
+    private OutputConfiguration mDeferredConfiguration;
+
     private AbstractPictureCaptureCallback mPictureCaptureCallback = new AbstractPictureCaptureCallback() {
 
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            super.onCaptureCompleted(session, request, result);
+            if (mZslRingBuffer != null) {
+                // 保存拍摄结果，用于重处理。
+                mZslRingBuffer.addResult(result);
+            }
+        }
+
         @Override
         public void onPrecaptureRequired() {
             mPreviewBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
@@ -226,6 +394,8 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
     public Camera2Manager(@NonNull Activity activity, @NonNull AutoFitTextureView autoFitTextureView,
                           @NonNull DefOptions options, @Nullable OnCameraListener onCameraListener) {
         super(activity, autoFitTextureView, options, onCameraListener);
+        isZeroShutterLag = options.isZeroShutterLag();
+        isPreferHevc = options.isPreferHevc();
         mCameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
         if (mCameraManager == null && mOnCameraListener != null) {
             mOnCameraListener.onError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
@@ -233,22 +403,25 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
         }
         try {
             assert mCameraManager != null;
-            mCameraIdList = Arrays.asList(mCameraManager.getCameraIdList());
+            mCapabilitiesList = CameraCapabilities.getAll(activity);
         } catch (CameraAccessException e) {
             e.printStackTrace();
+            mCapabilitiesList = Collections.emptyList();
         }
-        if (mCameraIdList.isEmpty() && mOnCameraListener != null) {
-            mOnCameraListener.onError(new RuntimeException(activity.getString(R.string.sch_no_camera)));
+        if (mCapabilitiesList.isEmpty()) {
+            if (mOnCameraListener != null) {
+                mOnCameraListener.onError(new RuntimeException(activity.getString(R.string.sch_no_camera)));
+            }
             return;
         }
-        mCameraId = mCameraIdList.get(0);
+        mCameraId = mCapabilitiesList.get(0).getCameraId();
     }
 
     @Override
     public void onResume() {
-        super.onResume();
-        // 启动后台线程。
+        // 启动后台线程，打开相机的回调在后台线程执行。
         startBackgroundThread();
+        super.onResume();
     }
 
     @Override
@@ -258,64 +431,156 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
         stopBackgroundThread();
     }
 
-    @SuppressLint("MissingPermission")
+    @Override
+    void openCameraEarly() {
+        isSurfaceReady = false;
+        startOpenCamera();
+    }
+
     @Override
     public void openCamera(int viewWidth, int viewHeight) {
+        isSurfaceReady = true;
+        if (mOpenCallback == null) {
+            startOpenCamera();
+            return;
+        }
+        // 相机已经在打开或已经打开，绑定预览 Surface。
+        mBackgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                bindPreviewSurface();
+            }
+        });
+    }
+
+    /**
+     * 打开相机。预览视图还没有准备好时，相机打开后先创建会话，预览视图准备好后再绑定 Surface。
+     */
+    @SuppressLint("MissingPermission")
+    private void startOpenCamera() {
         try {
             // 根据摄像头方向查找对应的摄像头。
-            CameraCharacteristics characteristics;
-            for (String id : mCameraIdList) {
-                characteristics = mCameraManager.getCameraCharacteristics(id);
-                Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (internal == null || internal != FACING_MAPPING.get(mFacing)) {
-                    continue;
-                }
-                if (id.equals(mCameraId)) {
-                    break;
-                }
-                mCameraId = id;
-                break;
+            CameraCapabilities capabilities =
+                    BackendSelector.select(mCapabilitiesList, FACING_MAPPING.get(mFacing)).getCapabilities();
+            if (capabilities != null) {
+                mCameraId = capabilities.getCameraId();
             }
 
             // 更新相机参数。
             setUpCameraOutputs();
 
             // 打开摄像头。
-            mCameraManager.openCamera(mCameraId, new CameraDevice.StateCallback() {
+            markOpenStart();
+            mOpenCallback = new CameraDevice.StateCallback() {
 
                 @Override
                 public void onOpened(@NonNull CameraDevice cameraDevice) {
+                    if (mOpenCallback != this) {
+                        // 打开过程中相机已经关闭。
+                        cameraDevice.close();
+                        return;
+                    }
+                    mCameraOpenedTime = SystemClock.elapsedRealtime();
                     mCameraDevice = cameraDevice;
-                    // 创建预览会话。
-                    createPreviewSession(CameraDevice.TEMPLATE_PREVIEW, mImageReader.getSurface());
+                    if (isSurfaceReady) {
+                        bindPreviewSurface();
+                    } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && !isZslSession()
+                            && mFrameDispatcher.isEmpty() && mLumaDispatcher.isEmpty()) {
+                        // 预览视图还没有准备好，先用延迟的 Surface 创建会话。
+                        createDeferredPreviewSession();
+                    }
                 }
 
                 @Override
                 public void onDisconnected(@NonNull CameraDevice cameraDevice) {
                     cameraDevice.close();
-                    mCameraDevice = null;
+                    if (mOpenCallback == this) {
+                        mCameraDevice = null;
+                    }
                 }
 
                 @Override
                 public void onError(@NonNull CameraDevice cameraDevice, int error) {
                     cameraDevice.close();
-                    mCameraDevice = null;
-                    if (mOnCameraListener != null) {
-                        mOnCameraListener.onError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
+                    if (mOpenCallback != this) {
+                        return;
                     }
+                    mCameraDevice = null;
+                    postError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
                 }
 
-            }, mBackgroundHandler);
+            };
+            mCameraManager.openCamera(mCameraId, mOpenCallback, mBackgroundHandler);
         } catch (Exception e) {
             e.printStackTrace();
+            mOpenCallback = null;
+            if (e instanceof IllegalArgumentException && reprobeCapabilities()) {
+                // 快照中的相机 id 已失效，重新读取相机特性后再打开一次。
+                startOpenCamera();
+                return;
+            }
             if (mOnCameraListener != null) {
                 mOnCameraListener.onError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
             }
         }
     }
 
+    /**
+     * 重新读取相机能力快照。
+     *
+     * @return 是否读取到了新的快照，快照已是最新或读取失败时返回 false。
+     */
+    private boolean reprobeCapabilities() {
+        List<CameraCapabilities> capabilitiesList;
+        try {
+            capabilitiesList = CameraCapabilities.reprobe(mActivity);
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (capabilitiesList == null || capabilitiesList.isEmpty()) {
+            return false;
+        }
+        mCapabilitiesList = capabilitiesList;
+        mCameraId = capabilitiesList.get(0).getCameraId();
+        return true;
+    }
+
+    /**
+     * 预览视图准备好后绑定预览 Surface，在后台线程调用。
+     */
+    private void bindPreviewSurface() {
+        if (mCameraDevice == null) {
+            // 相机还没有打开，打开后再绑定。
+            return;
+        }
+        if (!isSessionStarted) {
+            createPreviewSession(CameraDevice.TEMPLATE_PREVIEW, mImageReader.getReader().getSurface());
+        } else if (mDeferredConfiguration != null && mPreviewSession != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            finalizeDeferredSurface();
+        }
+        // 延迟会话还在配置中时，配置完成后再绑定。
+    }
+
     @Override
     public void closeCamera() {
+        mOpenCallback = null;
+        isSurfaceReady = false;
+        isSessionStarted = false;
+        isFrameSession = false;
+        isLumaSession = false;
+        mDeferredConfiguration = null;
+        mPreviewSurface = null;
+        cancelVideoRecordPrewarm();
+        stopPreRoll();
+        isEncoderProfileResolved = false;
+        mEncoderProfile = null;
+        if (null != mBurstTask) {
+            mBackgroundHandler.removeCallbacks(mBurstTask);
+            mBurstTask = null;
+        }
+        cancelBurst();
         if (null != mPreviewSession) {
             mPreviewSession.close();
             mPreviewSession = null;
@@ -325,9 +590,18 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
             mCameraDevice = null;
         }
         if (null != mImageReader) {
+            // 保存线程仍持有 Image 时，由最后释放 Image 的保存线程关闭 ImageReader，不在主线程等待保存完成。
             mImageReader.close();
             mImageReader = null;
         }
+        closeZsl();
+        closeFrameReader();
+        closeLumaReader();
+        mBufferPool.clear();
+        if (null != mRecorderSurface) {
+            mRecorderSurface.release();
+            mRecorderSurface = null;
+        }
     }
 
     @Override
@@ -349,10 +623,14 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
 
     @Override
     public void takePicture() {
-        if (isCapturing()) {
+        if (!beginPicture()) {
+            return;
+        }
+        if (isZslSession()) {
+            // 直接使用按下快门时的预览帧。
+            takeZslPicture(isZslTimestampRealtime ? SystemClock.elapsedRealtimeNanos() : -1);
             return;
         }
-        setCapturing(true);
         if (isAfAvailable() && isAutoFocus()) {
             // 锁定焦点再拍照。
             lockFocus();
@@ -362,36 +640,371 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
         }
     }
 
+    @Override
+    public void captureBurst(int count, final long intervalMs) {
+        if (mPreviewSession == null) {
+            return;
+        }
+        // 张数受同时处理的照片数量限制。
+        final int burstCount = beginBurst(count);
+        if (burstCount <= 0) {
+            return;
+        }
+        try {
+            final CaptureRequest request = createStillCaptureRequest();
+            if (intervalMs <= 0) {
+                // 一次提交所有请求，由相机尽快连续拍摄。
+                List<CaptureRequest> requestList = new ArrayList<>(burstCount);
+                for (int i = 0; i < burstCount; i++) {
+                    requestList.add(request);
+                }
+                mPreviewSession.captureBurst(requestList, null, mBackgroundHandler);
+                return;
+            }
+            // 按间隔逐张拍摄。
+            mBurstTask = new Runnable() {
+
+                private int remaining = burstCount;
+
+                @Override
+                public void run() {
+                    try {
+                        mPreviewSession.capture(request, null, mBackgroundHandler);
+                    } catch (CameraAccessException e) {
+                        e.printStackTrace();
+                        mBurstTask = null;
+                        cancelBurst();
+                        return;
+                    }
+                    if (--remaining > 0) {
+                        mBackgroundHandler.postDelayed(this, intervalMs);
+                    } else {
+                        mBurstTask = null;
+                    }
+                }
+            };
+            mBackgroundHandler.post(mBurstTask);
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+            cancelBurst();
+        }
+    }
+
     @Override
     public void startVideoRecord() throws IOException {
         if (isCapturing()) {
             return;
         }
         setCapturing(true);
-        // 初始化视频录制配置。
-        mVideoRecorder = new VideoRecorder(getOrientation(), mPreviewSize, mVideoFile.getPath());
-        mVideoRecorder.start();
+        markVideoStart();
+        captureVideoThumb();
+        resetVideoParts();
+        if (mPreRollRecorder != null && isUnifiedSession()) {
+            startPreRollRecord();
+            return;
+        }
+        // 优先使用预热的录像器。
+        mVideoRecorder = mPrewarmRecorder != null ? mPrewarmRecorder : createVideoRecorder();
+        mPrewarmRecorder = null;
+        isVideoSegmented = (mVideoSegmentDuration > 0 || mVideoSegmentSize > 0) && mVideoRecorder.setSegmentLimit(
+                mVideoSegmentDuration, mVideoSegmentSize, new MediaCodecRecorder.OnSegmentListener() {
+                    @Override
+                    public void onSegmentFinished(@NonNull File file, int index) {
+                        deliverVideo(file);
+                    }
+                });
+        try {
+            mVideoRecorder.start();
+        } catch (IOException | RuntimeException e) {
+            // 启动失败，释放录像器并清除录像状态，预览会话保持不变。
+            mVideoRecorder.release();
+            mVideoRecorder = null;
+            setCapturing(false);
+            throw e;
+        }
+        if (isUnifiedSession()) {
+            // 会话中已经包含编码器的 Surface，切换为录像请求即可。
+            setRepeatingTemplate(CameraDevice.TEMPLATE_RECORD);
+            return;
+        }
         // 创建录制预览的会话。
         createPreviewSession(CameraDevice.TEMPLATE_RECORD, mVideoRecorder.getSurface());
     }
 
+    /**
+     * 接管正在预录的录像器，从缓冲区中最早的关键帧开始写入文件。
+     *
+     * @throws IOException 无法创建输出文件。
+     */
+    private void startPreRollRecord() throws IOException {
+        mVideoRecorder = mPreRollRecorder;
+        mPreRollRecorder = null;
+        isVideoSegmented = (mVideoSegmentDuration > 0 || mVideoSegmentSize > 0) && mVideoRecorder.setSegmentLimit(
+                mVideoSegmentDuration, mVideoSegmentSize, new MediaCodecRecorder.OnSegmentListener() {
+                    @Override
+                    public void onSegmentFinished(@NonNull File file, int index) {
+                        deliverVideo(file);
+                    }
+                });
+        try {
+            mVideoRecorder.startOutput(getOrientation());
+        } catch (IOException e) {
+            mVideoRecorder.release();
+            mVideoRecorder = null;
+            setCapturing(false);
+            setRepeatingTemplate(CameraDevice.TEMPLATE_PREVIEW);
+            throw e;
+        }
+        setRepeatingTemplate(CameraDevice.TEMPLATE_RECORD);
+    }
+
+    /**
+     * 开始预录。只在设置了预录时长、会话包含编码器的持久 Surface 且使用 MediaCodec 编码时有效，需要在主线程调用。
+     */
+    private void startPreRoll() {
+        if (mVideoPreRollDuration <= 0 || isCapturing() || mPreRollRecorder != null
+                || mCameraDevice == null || mPreviewSession == null || !isUnifiedSession()
+                || getEncoderProfile() == null) {
+            return;
+        }
+        VideoRecorder recorder = createVideoRecorder();
+        if (!recorder.setPreRoll(mVideoPreRollDuration, mVideoPreRollSize)) {
+            recorder.release();
+            return;
+        }
+        try {
+            recorder.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        mPreRollRecorder = recorder;
+        // 预览请求同时输出到编码器。
+        setRepeatingTemplate(CameraDevice.TEMPLATE_PREVIEW);
+    }
+
+    /**
+     * 在主线程开始预录。
+     */
+    private void postStartPreRoll() {
+        if (mVideoPreRollDuration <= 0) {
+            return;
+        }
+        mAutoFitTextureView.post(new Runnable() {
+            @Override
+            public void run() {
+                startPreRoll();
+            }
+        });
+    }
+
+    /**
+     * 停止预录并丢弃缓冲区。
+     */
+    private void stopPreRoll() {
+        if (mPreRollRecorder != null) {
+            mPreRollRecorder.release();
+            mPreRollRecorder = null;
+        }
+    }
+
     @Override
     public void stopVideoRecord() throws Exception {
         if (mVideoRecorder == null) {
+            if (isVideoPaused) {
+                // 暂停时已经结束了最后一个片段。
+                try {
+                    mergeVideoParts();
+                    mOnVideoListener.onVideoRecorded(mVideoFile, thumbForVideo(mVideoFile));
+                } finally {
+                    setCapturing(false);
+                    startPreRoll();
+                }
+            }
+            return;
+        }
+        if (mRecorderSurface != null && (templateType == CameraDevice.TEMPLATE_RECORD || isVideoPaused)) {
+            // 先停止向编码器输出，再结束录制，会话保持不变。
+            setRepeatingTemplate(CameraDevice.TEMPLATE_PREVIEW);
+            try {
+                stopVideoRecorder(mVideoRecorder);
+                if (!isVideoSegmented) {
+                    mOnVideoListener.onVideoRecorded(mVideoFile, thumbForVideo(mVideoFile));
+                }
+            } finally {
+                mVideoRecorder = null;
+                setCapturing(false);
+                startPreRoll();
+            }
             return;
         }
         try {
             // 停止录制。
-            mVideoRecorder.stop();
-            mOnVideoListener.onVideoRecorded(mVideoFile, thumbForVideo(mVideoFile));
-            mVideoRecorder = null;
+            stopVideoRecorder(mVideoRecorder);
+            if (!isVideoSegmented) {
+                mOnVideoListener.onVideoRecorded(mVideoFile, thumbForVideo(mVideoFile));
+            }
         } finally {
-            // 恢复预览会话。
-            createPreviewSession(CameraDevice.TEMPLATE_PREVIEW, mImageReader.getSurface());
+            // 录像器已在结束时释放，恢复预览会话。
+            mVideoRecorder = null;
+            createPreviewSession(CameraDevice.TEMPLATE_PREVIEW, mImageReader.getReader().getSurface());
             setCapturing(false);
         }
     }
 
+    @Override
+    public boolean pauseVideoRecord() {
+        if (mVideoRecorder == null || isVideoPaused) {
+            return isVideoPaused;
+        }
+        boolean isUnified = templateType == CameraDevice.TEMPLATE_RECORD && mRecorderSurface != null;
+        if (isUnified) {
+            // 暂停期间不向编码器输出。
+            setRepeatingTemplate(CameraDevice.TEMPLATE_PREVIEW);
+        }
+        if (mVideoRecorder.pause()) {
+            isVideoPaused = true;
+            return true;
+        }
+        // 不支持暂停，结束当前片段。
+        stopVideoPart(mVideoRecorder);
+        mVideoRecorder = null;
+        if (!isUnified) {
+            createPreviewSession(CameraDevice.TEMPLATE_PREVIEW, mImageReader.getReader().getSurface());
+        }
+        return true;
+    }
+
+    @Override
+    public void resumeVideoRecord() throws IOException {
+        if (!isVideoPaused) {
+            return;
+        }
+        if (mVideoRecorder != null) {
+            mVideoRecorder.resume();
+            isVideoPaused = false;
+            if (isUnifiedSession()) {
+                setRepeatingTemplate(CameraDevice.TEMPLATE_RECORD);
+            }
+            return;
+        }
+        // 录制新的片段。
+        boolean isUnified = isUnifiedSession();
+        VideoRecorder recorder = createVideoRecorder(getVideoPartFile().getPath(), isUnified ? mRecorderSurface : null);
+        recorder.start();
+        mVideoRecorder = recorder;
+        isVideoPaused = false;
+        if (isUnified) {
+            setRepeatingTemplate(CameraDevice.TEMPLATE_RECORD);
+        } else {
+            createPreviewSession(CameraDevice.TEMPLATE_RECORD, mVideoRecorder.getSurface());
+        }
+    }
+
+    @Override
+    public boolean takeVideoSnapshot() {
+        if (mVideoRecorder == null && !isVideoPaused) {
+            return false;
+        }
+        if (!isUnifiedSession() || mPreviewSession == null) {
+            // 录像会话中没有拍照的 Surface，截取预览画面。
+            return takePreviewSnapshot();
+        }
+        if (!beginVideoSnapshot()) {
+            return false;
+        }
+        try {
+            CaptureRequest.Builder snapshotBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_VIDEO_SNAPSHOT);
+            // 同时输出到预览和编码器，录像不丢帧。
+            snapshotBuilder.addTarget(mPreviewSurface);
+            if (templateType == CameraDevice.TEMPLATE_RECORD) {
+                snapshotBuilder.addTarget(mRecorderSurface);
+            }
+            snapshotBuilder.addTarget(mImageReader.getReader().getSurface());
+            // 与录像请求保持一致，避免快照时对焦和补光变化。
+            snapshotBuilder.set(CaptureRequest.CONTROL_AF_MODE, mPreviewBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+            snapshotBuilder.set(CaptureRequest.CONTROL_AE_MODE, mPreviewBuilder.get(CaptureRequest.CONTROL_AE_MODE));
+            snapshotBuilder.set(CaptureRequest.FLASH_MODE, mPreviewBuilder.get(CaptureRequest.FLASH_MODE));
+            snapshotBuilder.set(CaptureRequest.JPEG_ORIENTATION, getOrientation());
+            mPreviewSession.capture(snapshotBuilder.build(), null, mBackgroundHandler);
+            return true;
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+            cancelVideoSnapshot();
+            return false;
+        }
+    }
+
+    @Override
+    public void prewarmVideoRecord() {
+        super.prewarmVideoRecord();
+        if (isCapturing() || mPrewarmRecorder != null || mPreRollRecorder != null || mCameraDevice == null) {
+            return;
+        }
+        VideoRecorder recorder = createVideoRecorder();
+        try {
+            recorder.prepare();
+            mPrewarmRecorder = recorder;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void cancelVideoRecordPrewarm() {
+        super.cancelVideoRecordPrewarm();
+        if (mPrewarmRecorder != null) {
+            mPrewarmRecorder.release();
+            mPrewarmRecorder = null;
+        }
+    }
+
+    /**
+     * 会话中是否已经包含编码器的持久输入 Surface。
+     */
+    private boolean isUnifiedSession() {
+        return mRecorderSurface != null && mPreviewSurface != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * 创建录像器。
+     */
+    private VideoRecorder createVideoRecorder() {
+        return createVideoRecorder(mVideoFile.getPath(), isUnifiedSession() ? mRecorderSurface : null);
+    }
+
+    /**
+     * 创建录像器。设备有可用的视频编码器时使用 MediaCodec 编码，否则使用 MediaRecorder。
+     *
+     * @param filePath     视频文件保存路径。
+     * @param inputSurface 编码器的持久输入 Surface，为 null 时由录像器创建输入 Surface。
+     */
+    private VideoRecorder createVideoRecorder(String filePath, Surface inputSurface) {
+        EncoderProfile profile = getEncoderProfile();
+        if (profile != null) {
+            return new VideoRecorder(getOrientation(), profile, filePath, inputSurface,
+                    mCapabilities.isTimestampRealtime());
+        }
+        if (inputSurface != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return new VideoRecorder(getOrientation(), mPreviewSize, filePath, inputSurface);
+        }
+        return new VideoRecorder(getOrientation(), mPreviewSize, filePath);
+    }
+
+    /**
+     * 获取当前预览尺寸的视频编码配置，首次调用时探测设备的编码能力。
+     *
+     * @return 编码配置，没有可用的编码器时返回 null。
+     */
+    private EncoderProfile getEncoderProfile() {
+        if (!isEncoderProfileResolved) {
+            mEncoderProfile = EncoderCapabilities.get(mActivity)
+                    .selectProfile(mPreviewSize.getWidth(), mPreviewSize.getHeight(), VIDEO_FRAME_RATE, isPreferHevc);
+            isEncoderProfileResolved = true;
+        }
+        return mEncoderProfile;
+    }
+
     @Override
     public void focusOn(AutoFitTextureView view, MotionEvent event) {
 
@@ -401,7 +1014,7 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
 
         // 聚焦及测光区域。
         Rect rect = FocusRegionHelper.get(event.getX(), event.getY(), view.getWidth(), view.getHeight(),
-                mCameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE));
+                mCapabilities.getActiveArray());
         MeteringRectangle[] rectangles = new MeteringRectangle[]{new MeteringRectangle(rect, 800)};
 
         // 设置聚焦区域。
@@ -452,22 +1065,62 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
 
     @Override
     public void onImageAvailable(ImageReader reader) {
-        // 拍照成长，保存照片。
-        Image image = reader.acquireNextImage();
-        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-        savePicture(bytes);
-        image.close();
+        // 拍照成功，在保存线程中保存照片。
+        PictureImageReader pictureReader = mImageReader;
+        Image image = pictureReader == null ? null : pictureReader.acquireNextImage();
+        if (image == null) {
+            // 相机已关闭或缓冲区已用完，放弃这张照片。录像快照只释放占用的处理数量，不改变录像中的拍摄状态。
+            if (!onVideoSnapshotExposed()) {
+                onPictureExposed();
+            }
+            onPicturePersisted();
+            return;
+        }
+        persistImage(image, pictureReader);
 
-        mOnPictureListener.onPictureTaken(mPictureFile, thumbForPicture(mPictureFile));
+        if (onVideoSnapshotExposed()) {
+            // 录像快照不改变录像状态，也没有锁定焦点。
+            return;
+        }
 
-        if (isAfAvailable() && isAutoFocus()) {
+        if (isAfAvailable() && isAutoFocus() && !isBursting() && !isZslSession()) {
             // 解锁焦点。
             unlockFocus();
         }
 
-        setCapturing(false);
+        // 相机已完成拍摄，无需等待保存即可再次拍照。
+        onPictureExposed();
+    }
+
+    /**
+     * 在保存线程中保存 JPEG 图片。
+     *
+     * @param image  JPEG 图片。
+     * @param reader 图片所属的拍照 ImageReader。
+     */
+    private void persistImage(final Image image, @NonNull final PictureImageReader reader) {
+        if (reader.getAcquiredCount() >= MAX_IMAGES - 1) {
+            // ImageReader 的缓冲区快用完了，复制数据后立即释放 Image，避免连拍时无法获取后续图片。
+            ByteBuffer plane = image.getPlanes()[0].getBuffer();
+            final ByteBuffer copy = mBufferPool.acquire(plane.remaining());
+            copy.put(plane);
+            copy.flip();
+            reader.release(image);
+            persistPicture(copy, new Runnable() {
+                @Override
+                public void run() {
+                    mBufferPool.release(copy);
+                }
+            });
+        } else {
+            // 直接使用 plane 的 ByteBuffer，保存完毕后释放 Image。
+            persistPicture(image.getPlanes()[0].getBuffer(), new Runnable() {
+                @Override
+                public void run() {
+                    reader.release(image);
+                }
+            });
+        }
     }
 
     /**
@@ -488,23 +1141,29 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      */
     private void captureStillPicture() {
         try {
-            // 拍照请求创建器。
-            CaptureRequest.Builder captureBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            // 设置 Surface。
-            captureBuilder.addTarget(mImageReader.getSurface());
-            // 设置焦点模式。
-            captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, mPreviewBuilder.get(CaptureRequest.CONTROL_AF_MODE));
-            // 设置闪光灯。
-            setFlashMode(captureBuilder);
-            // 设置 Orientation。
-            captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getOrientation());
-
-            mPreviewSession.capture(captureBuilder.build(), null, null);
+            mPreviewSession.capture(createStillCaptureRequest(), null, null);
         } catch (CameraAccessException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * 创建拍照请求。
+     */
+    private CaptureRequest createStillCaptureRequest() throws CameraAccessException {
+        // 拍照请求创建器。
+        CaptureRequest.Builder captureBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        // 设置 Surface。
+        captureBuilder.addTarget(mImageReader.getReader().getSurface());
+        // 设置焦点模式。
+        captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, mPreviewBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+        // 设置闪光灯。
+        setFlashMode(captureBuilder);
+        // 设置 Orientation。
+        captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getOrientation());
+        return captureBuilder.build();
+    }
+
     /**
      * 解锁焦点。
      */
@@ -526,21 +1185,25 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      */
     private void setUpCameraOutputs() throws Exception {
 
-        mCameraCharacteristics = mCameraManager.getCameraCharacteristics(mCameraId);
+        mCapabilities = findCapabilities(mCameraId);
 
-        StreamConfigurationMap map = mCameraCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        if (map == null) {
+        List<Size> previewSizes = mCapabilities.getPreviewSizes();
+        if (previewSizes == null) {
             if (mOnCameraListener != null) {
                 mOnCameraListener.onError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
             }
             return;
         }
 
-        mPreviewSize = getOptimalSize(Size.convert(map.getOutputSizes(SurfaceTexture.class)),
-                MAX_PREVIEW_WIDTH, MAX_PREVIEW_HEIGHT);
+        mPreviewSize = getOptimalSize(previewSizes, MAX_PREVIEW_WIDTH, MAX_PREVIEW_HEIGHT);
+
+        ImageReader imageReader = ImageReader.newInstance(mPreviewSize.getWidth(), mPreviewSize.getHeight(), ImageFormat.JPEG, MAX_IMAGES);
+        imageReader.setOnImageAvailableListener(this, mBackgroundHandler);
+        mImageReader = new PictureImageReader(imageReader);
 
-        mImageReader = ImageReader.newInstance(mPreviewSize.getWidth(), mPreviewSize.getHeight(), ImageFormat.JPEG, 9);
-        mImageReader.setOnImageAvailableListener(this, mBackgroundHandler);
+        if (isZeroShutterLag) {
+            setUpZsl();
+        }
 
         // 将 TextureView 的纵横比与我们选择的预览大小相匹配。
         if (mActivity.getResources().getConfiguration().orientation == Configuration.ORIENTATION_LANDSCAPE) {
@@ -550,14 +1213,25 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
         }
 
         // 检查是否支持闪光灯。
-        Boolean available = mCameraCharacteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-        setFlashSupport(available == null ? false : available);
+        setFlashSupport(mCapabilities.isFlashAvailable());
 
         // 检查是否支持调焦。
-        int[] afModes = mCameraCharacteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
-        setAfAvailable(!(afModes == null || afModes.length == 0 ||
-                (afModes.length == 1 && afModes[0] == CameraCharacteristics.CONTROL_AF_MODE_OFF)));
+        setAfAvailable(mCapabilities.isAfAvailable());
+
+    }
 
+    /**
+     * 获取指定相机的能力快照。
+     *
+     * @param cameraId 相机 id。
+     */
+    private CameraCapabilities findCapabilities(String cameraId) {
+        for (CameraCapabilities capabilities : mCapabilitiesList) {
+            if (capabilities.getCameraId().equals(cameraId)) {
+                return capabilities;
+            }
+        }
+        throw new IllegalArgumentException("Unknown camera id: " + cameraId);
     }
 
     /**
@@ -568,6 +1242,10 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      */
     private void createPreviewSession(int templateType, Surface readerSurface) {
         this.templateType = templateType;
+        isSessionStarted = true;
+        isFrameSession = false;
+        isLumaSession = false;
+        mDeferredConfiguration = null;
 
         mPictureCaptureCallback.setState(AbstractPictureCaptureCallback.STATE_PREVIEW);
 
@@ -576,6 +1254,7 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
         texture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
         // 生成接收预览数据的 Surface 。
         Surface targetSurface = new Surface(texture);
+        mPreviewSurface = targetSurface;
 
         try {
             // 创建预览的请求创建器。
@@ -587,25 +1266,112 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
             if (mPreviewSession != null) {
                 mPreviewSession.stopRepeating();
             }
+            // 旧会话中缓存的帧不能再使用。
+            clearZsl();
+            List<Surface> outputList = new ArrayList<>(Arrays.asList(targetSurface, readerSurface));
+            if (isZslSession()) {
+                // 零延迟拍照，预览的同时持续接收 YUV 帧，拍照时重处理为 JPEG。
+                Surface zslSurface = mZslImageReader.getSurface();
+                mPreviewBuilder.addTarget(zslSurface);
+                outputList.add(zslSurface);
+            } else if (templateType == CameraDevice.TEMPLATE_PREVIEW
+                    && (!mFrameDispatcher.isEmpty() || !mLumaDispatcher.isEmpty())) {
+                // 输出分析帧。受输出流组合的限制，不再包含编码器的 Surface，录像时重建会话；
+                // 有帧处理器时亮度分析也使用分析帧，不再单独输出。
+                releaseRecorderSurface();
+                Surface analysisSurface;
+                if (!mFrameDispatcher.isEmpty()) {
+                    isFrameSession = true;
+                    analysisSurface = setUpFrameReader();
+                } else {
+                    isLumaSession = true;
+                    analysisSurface = setUpLumaReader();
+                }
+                mPreviewBuilder.addTarget(analysisSurface);
+                outputList.add(analysisSurface);
+            } else if (templateType == CameraDevice.TEMPLATE_PREVIEW && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                // 同时输出到编码器的持久 Surface，录像时不再重建会话。
+                Surface recorderSurface = prepareRecorderSurface();
+                if (recorderSurface != null) {
+                    outputList.add(recorderSurface);
+                }
+            }
+            CameraCaptureSession.StateCallback callback = new CameraCaptureSession.StateCallback() {
+
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                    if (mCameraDevice == null) {
+                        // 相机已经关闭
+                        return;
+                    }
+                    mPreviewSession = cameraCaptureSession;
+                    if (isZslSession()) {
+                        createZslImageWriter(cameraCaptureSession);
+                    }
+                    updatePreview();
+                    if (templateType == CameraDevice.TEMPLATE_PREVIEW) {
+                        postStartPreRoll();
+                    }
+                }
+
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                    postError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
+                }
+            };
             // 创建预览会话。
-            mCameraDevice.createCaptureSession(Arrays.asList(targetSurface, readerSurface),
+            if (isZslSession() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                createReprocessableSession(outputList, callback);
+            } else {
+                mCameraDevice.createCaptureSession(outputList, callback, mBackgroundHandler);
+            }
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 预览视图准备好之前创建预览会话，预览输出使用延迟的 Surface，相机打开与界面布局可以并行进行。
+     */
+    @RequiresApi(Build.VERSION_CODES.O)
+    private void createDeferredPreviewSession() {
+        templateType = CameraDevice.TEMPLATE_PREVIEW;
+        isSessionStarted = true;
+
+        mPictureCaptureCallback.setState(AbstractPictureCaptureCallback.STATE_PREVIEW);
+
+        try {
+            mPreviewBuilder = mCameraDevice.createCaptureRequest(templateType);
+            clearZsl();
+            final OutputConfiguration previewConfiguration = new OutputConfiguration(
+                    new android.util.Size(mPreviewSize.getWidth(), mPreviewSize.getHeight()), SurfaceTexture.class);
+            mDeferredConfiguration = previewConfiguration;
+            List<OutputConfiguration> configurationList = new ArrayList<>(2);
+            configurationList.add(previewConfiguration);
+            configurationList.add(new OutputConfiguration(mImageReader.getReader().getSurface()));
+            // 同时输出到编码器的持久 Surface，录像时不再重建会话。
+            Surface recorderSurface = prepareRecorderSurface();
+            if (recorderSurface != null) {
+                configurationList.add(new OutputConfiguration(recorderSurface));
+            }
+            mCameraDevice.createCaptureSessionByOutputConfigurations(configurationList,
                     new CameraCaptureSession.StateCallback() {
 
                         @Override
                         public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                            if (mCameraDevice == null) {
-                                // 相机已经关闭
+                            if (mCameraDevice == null || mDeferredConfiguration != previewConfiguration) {
+                                // 相机已经关闭或会话已经重建。
                                 return;
                             }
                             mPreviewSession = cameraCaptureSession;
-                            updatePreview();
+                            if (isSurfaceReady) {
+                                finalizeDeferredSurface();
+                            }
                         }
 
                         @Override
                         public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                            if (mOnCameraListener != null) {
-                                mOnCameraListener.onError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
-                            }
+                            postError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
                         }
                     }, mBackgroundHandler);
         } catch (CameraAccessException e) {
@@ -613,10 +1379,404 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
         }
     }
 
+    /**
+     * 将预览视图的 Surface 绑定到延迟输出配置，并开始预览。
+     */
+    @RequiresApi(Build.VERSION_CODES.O)
+    private void finalizeDeferredSurface() {
+        SurfaceTexture texture = mAutoFitTextureView.getSurfaceTexture();
+        texture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        Surface targetSurface = new Surface(texture);
+        try {
+            mDeferredConfiguration.addSurface(targetSurface);
+            mPreviewSession.finalizeOutputConfigurations(Collections.singletonList(mDeferredConfiguration));
+            mDeferredConfiguration = null;
+            mPreviewSurface = targetSurface;
+            mPreviewBuilder.addTarget(targetSurface);
+            updatePreview();
+            postStartPreRoll();
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 创建录像编码器的持久输入 Surface，只用视频编码器配置，不打开麦克风和 MediaMuxer。
+     *
+     * @return 持久输入 Surface，没有可用的视频编码器或配置失败时返回 null，此时录像会重建会话。
+     */
+    @RequiresApi(Build.VERSION_CODES.M)
+    private Surface prepareRecorderSurface() {
+        if (mRecorderSurface != null) {
+            return mRecorderSurface;
+        }
+        EncoderProfile profile = getEncoderProfile();
+        if (profile == null) {
+            // MediaRecorder 需要同时配置音频才能准备，不提前创建，录像时重建会话。
+            return null;
+        }
+        Surface surface = MediaCodec.createPersistentInputSurface();
+        try {
+            MediaCodecRecorder.configureInputSurface(profile, surface);
+        } catch (IOException e) {
+            e.printStackTrace();
+            surface.release();
+            return null;
+        }
+        mRecorderSurface = surface;
+        return surface;
+    }
+
+    /**
+     * 释放编码器的持久输入 Surface，正在预录时先停止预录。
+     */
+    private void releaseRecorderSurface() {
+        if (mRecorderSurface == null) {
+            return;
+        }
+        stopPreRoll();
+        mRecorderSurface.release();
+        mRecorderSurface = null;
+    }
+
+    /**
+     * 创建分析帧的 ImageReader，已经创建时直接使用。
+     *
+     * @return ImageReader 的 Surface。
+     */
+    private Surface setUpFrameReader() {
+        if (mFrameImageReader != null) {
+            return mFrameImageReader.getSurface();
+        }
+        mFrameImageReader = ImageReader.newInstance(mPreviewSize.getWidth(), mPreviewSize.getHeight(),
+                ImageFormat.YUV_420_888, FRAME_MAX_IMAGES);
+        mFrameImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                // 逐帧取出队列中积压的帧，只分发最新的一帧，更早的帧关闭后计入处理器的丢帧数。
+                // 有阻塞分发的处理器时每次只取一帧，不跳过任何帧。
+                boolean isBlocking = mFrameDispatcher.hasBlockingProcessor();
+                Image image = null;
+                int skipped = 0;
+                while (true) {
+                    Image next;
+                    try {
+                        next = reader.acquireNextImage();
+                    } catch (IllegalStateException e) {
+                        // 处理器持有的帧已达上限，处理器释放后再取。
+                        break;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    if (image != null) {
+                        image.close();
+                        skipped++;
+                    }
+                    image = next;
+                    if (isBlocking) {
+                        break;
+                    }
+                }
+                if (skipped > 0) {
+                    mFrameDispatcher.onFramesDropped(skipped);
+                }
+                if (image != null) {
+                    // 所有处理器都丢弃或处理完这一帧后，由 FrameDispatcher 关闭 Image。
+                    int orientation = getOrientation();
+                    mLumaDispatcher.dispatch(image, orientation);
+                    mFrameDispatcher.dispatch(image, orientation);
+                }
+            }
+        }, mFrameHandler);
+        return mFrameImageReader.getSurface();
+    }
+
+    /**
+     * 关闭分析帧的 ImageReader。
+     */
+    private void closeFrameReader() {
+        if (mFrameImageReader != null) {
+            mFrameImageReader.close();
+            mFrameImageReader = null;
+        }
+    }
+
+    /**
+     * 创建亮度分析的 ImageReader，已经创建时直接使用，宽度在关闭相机后才能修改。
+     *
+     * @return ImageReader 的 Surface。
+     */
+    private Surface setUpLumaReader() {
+        if (mLumaImageReader != null) {
+            return mLumaImageReader.getSurface();
+        }
+        Size size = getLumaSize(mLumaWidth);
+        mLumaImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.YUV_420_888, LUMA_MAX_IMAGES);
+        mLumaImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                Image image = reader.acquireLatestImage();
+                if (image == null) {
+                    return;
+                }
+                try {
+                    mLumaDispatcher.dispatch(image, getOrientation());
+                } finally {
+                    image.close();
+                }
+            }
+        }, mFrameHandler);
+        return mLumaImageReader.getSurface();
+    }
+
+    /**
+     * 选择亮度分析帧的尺寸：与预览比例相同、宽度不小于指定宽度的最小 YUV 输出尺寸，
+     * 没有时使用比例相同的最大尺寸，比例都不同时使用预览尺寸。
+     */
+    private Size getLumaSize(int width) {
+        List<Size> sizeList = mCapabilities.getYuvSizes();
+        if (sizeList == null) {
+            return mPreviewSize;
+        }
+        final double aspectTolerance = 0.01;
+        double targetRatio = (double) mPreviewSize.getWidth() / mPreviewSize.getHeight();
+        Size optimalSize = null;
+        Size largestSize = null;
+        for (Size size : sizeList) {
+            double ratio = (double) size.getWidth() / size.getHeight();
+            if (Math.abs(ratio - targetRatio) > aspectTolerance) {
+                continue;
+            }
+            if (size.getWidth() >= width && (optimalSize == null || size.getWidth() < optimalSize.getWidth())) {
+                optimalSize = size;
+            }
+            if (largestSize == null || size.getWidth() > largestSize.getWidth()) {
+                largestSize = size;
+            }
+        }
+        if (optimalSize != null) {
+            return optimalSize;
+        }
+        return largestSize != null ? largestSize : mPreviewSize;
+    }
+
+    /**
+     * 关闭亮度分析的 ImageReader。
+     */
+    private void closeLumaReader() {
+        if (mLumaImageReader != null) {
+            mLumaImageReader.close();
+            mLumaImageReader = null;
+        }
+    }
+
+    @Override
+    public boolean setLumaAnalyzer(@Nullable LumaAnalyzer analyzer, int width, @Nullable RectF roi) {
+        mLumaWidth = Math.max(1, width);
+        mLumaDispatcher.setAnalyzer(analyzer, roi);
+        updateAnalysisSession();
+        return true;
+    }
+
+    @Override
+    void onFrameProcessorsChanged() {
+        updateAnalysisSession();
+    }
+
+    /**
+     * 帧处理器或亮度分析器变化后，重建预览会话以加入或移除分析帧的输出。
+     */
+    private void updateAnalysisSession() {
+        boolean isFrameNeeded = !mFrameDispatcher.isEmpty();
+        boolean isLumaNeeded = !isFrameNeeded && !mLumaDispatcher.isEmpty();
+        if ((isFrameSession == isFrameNeeded && isLumaSession == isLumaNeeded) || mCameraDevice == null
+                || mPreviewSurface == null || isCapturing()) {
+            // 输出不变、相机还没有打开或正在录像时，下次创建预览会话时生效。
+            return;
+        }
+        createPreviewSession(CameraDevice.TEMPLATE_PREVIEW, mImageReader.getReader().getSurface());
+    }
+
+    /**
+     * 在当前会话中切换重复请求的模板，用于开始和结束录像。
+     *
+     * @param templateType CameraDevice.TEMPLATE_PREVIEW 或 CameraDevice.TEMPLATE_RECORD。
+     */
+    private void setRepeatingTemplate(int templateType) {
+        this.templateType = templateType;
+        try {
+            mPreviewBuilder = mCameraDevice.createCaptureRequest(templateType);
+            mPreviewBuilder.addTarget(mPreviewSurface);
+            if (templateType == CameraDevice.TEMPLATE_RECORD || mPreRollRecorder != null) {
+                // 录像或预录时同时输出到编码器。
+                mPreviewBuilder.addTarget(mRecorderSurface);
+            }
+            updatePreview();
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 当前会话是否使用零延迟拍照。
+     */
+    private boolean isZslSession() {
+        return mZslImageReader != null && templateType == CameraDevice.TEMPLATE_PREVIEW;
+    }
+
+    /**
+     * 配置零延迟拍照，缓存 YUV 帧，拍照时再重处理为 JPEG。
+     * 设备不支持 YUV 重处理时不启用，仍使用普通拍照：持续输出 JPEG 预览帧会限制帧率，照片也只有预览分辨率。
+     */
+    private void setUpZsl() {
+        boolean isReprocessable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && mCapabilities.hasCapability(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_YUV_REPROCESSING)
+                && mCapabilities.isYuvInputSupported(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        if (!isReprocessable) {
+            return;
+        }
+        isZslTimestampRealtime = mCapabilities.isTimestampRealtime();
+        // 与普通拍照的 JPEG 输出一样使用预览尺寸，全尺寸的 YUV 帧每帧十几 MB，缓存几帧占用的内存过多。
+        mZslImageReader = ImageReader.newInstance(mPreviewSize.getWidth(), mPreviewSize.getHeight(),
+                ImageFormat.YUV_420_888, ZSL_RING_SIZE + 2);
+        mZslRingBuffer = new ZslRingBuffer(ZSL_RING_SIZE);
+        mZslImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                // 为新的帧腾出空间。
+                mZslRingBuffer.trim();
+                Image image = reader.acquireNextImage();
+                if (image == null) {
+                    return;
+                }
+                mZslRingBuffer.add(image);
+                if (isZslPending) {
+                    // 按下快门时还没有帧，使用这一帧。
+                    isZslPending = false;
+                    takeZslPicture(-1);
+                }
+            }
+        }, mBackgroundHandler);
+    }
+
+    /**
+     * 创建可重处理的会话。
+     */
+    @RequiresApi(Build.VERSION_CODES.M)
+    private void createReprocessableSession(List<Surface> outputList, CameraCaptureSession.StateCallback callback)
+            throws CameraAccessException {
+        InputConfiguration inputConfiguration = new InputConfiguration(
+                mPreviewSize.getWidth(), mPreviewSize.getHeight(), ImageFormat.YUV_420_888);
+        mCameraDevice.createReprocessableCaptureSession(inputConfiguration, outputList, callback, mBackgroundHandler);
+    }
+
+    /**
+     * 创建向重处理会话输入帧的 ImageWriter。
+     */
+    @RequiresApi(Build.VERSION_CODES.M)
+    private void createZslImageWriter(CameraCaptureSession session) {
+        if (mZslImageWriter != null) {
+            mZslImageWriter.close();
+        }
+        mZslImageWriter = ImageWriter.newInstance(session.getInputSurface(), 2);
+    }
+
+    /**
+     * 零延迟拍照，在后台线程中从缓冲区取出最接近按下快门时的帧。
+     *
+     * @param timestamp 按下快门的时间，单位 ns，小于 0 时使用最新的帧。
+     */
+    private void takeZslPicture(final long timestamp) {
+        mBackgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mZslRingBuffer == null || mPreviewSession == null) {
+                    // 相机已关闭。
+                    onPictureExposed();
+                    onPicturePersisted();
+                    return;
+                }
+                Image image = mZslRingBuffer.take(timestamp);
+                if (image == null) {
+                    // 还没有帧，等待下一帧。
+                    isZslPending = true;
+                    return;
+                }
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    // 重处理为 JPEG，结果由 onImageAvailable() 保存。
+                    reprocessZslImage(image);
+                } else {
+                    image.close();
+                    captureStillPicture();
+                }
+            }
+        });
+    }
+
+    /**
+     * 将缓存的 YUV 帧重处理为 JPEG。
+     *
+     * @param image YUV 帧。
+     */
+    @RequiresApi(Build.VERSION_CODES.M)
+    private void reprocessZslImage(Image image) {
+        TotalCaptureResult result = mZslRingBuffer.findResult(image.getTimestamp());
+        if (result == null || mZslImageWriter == null) {
+            // 没有对应的拍摄结果，无法重处理，改为普通拍照。
+            image.close();
+            captureStillPicture();
+            return;
+        }
+        try {
+            CaptureRequest.Builder builder = mCameraDevice.createReprocessCaptureRequest(result);
+            builder.addTarget(mImageReader.getReader().getSurface());
+            builder.set(CaptureRequest.JPEG_ORIENTATION, getOrientation());
+            // ImageWriter 负责释放 image。
+            mZslImageWriter.queueInputImage(image);
+            mPreviewSession.capture(builder.build(), null, mBackgroundHandler);
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+            onPictureExposed();
+            onPicturePersisted();
+        }
+    }
+
+    /**
+     * 释放缓存的帧。
+     */
+    private void clearZsl() {
+        isZslPending = false;
+        if (mZslRingBuffer != null) {
+            mZslRingBuffer.clear();
+        }
+    }
+
+    /**
+     * 关闭零延迟拍照相关的资源。
+     */
+    private void closeZsl() {
+        clearZsl();
+        mZslRingBuffer = null;
+        if (mZslImageWriter != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            mZslImageWriter.close();
+        }
+        mZslImageWriter = null;
+        if (mZslImageReader != null) {
+            mZslImageReader.close();
+            mZslImageReader = null;
+        }
+    }
+
     /**
      * 更新预览。
      */
     private void updatePreview() {
+        if (mPreviewSession == null || mDeferredConfiguration != null) {
+            // 会话还没有配置完成，或预览 Surface 还没有绑定。
+            return;
+        }
         try {
             // 设置对焦模式。
             if (isAfAvailable() && isAutoFocus()) {
@@ -629,7 +1789,7 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
             setFlashMode(mPreviewBuilder);
             mPreviewRequest = mPreviewBuilder.build();
             mPreviewSession.setRepeatingRequest(mPreviewRequest,
-                    templateType == CameraDevice.TEMPLATE_RECORD ? null : mPictureCaptureCallback,
+                    templateType == CameraDevice.TEMPLATE_RECORD ? mRecordCaptureCallback : mPictureCaptureCallback,
                     mBackgroundHandler);
         } catch (CameraAccessException e) {
             e.printStackTrace();
@@ -671,14 +1831,10 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      * @param zoomSpeed 缩放速度 ，负数为缩小，整数为放大。
      */
     private void zoom(int zoomSpeed) {
-        Float maxZoom = (mCameraCharacteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM));
-        if (maxZoom == null) {
-            return;
-        }
-        maxZoom *= 10;
-
-        Rect activeRect = mCameraCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-        if (activeRect == null) {
+        float maxZoom = mCapabilities.getMaxDigitalZoom() * 10;
+        int activeWidth = mCapabilities.getActiveArrayWidth();
+        int activeHeight = mCapabilities.getActiveArrayHeight();
+        if (activeWidth == 0 || activeHeight == 0) {
             return;
         }
 
@@ -688,13 +1844,13 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
             return;
         }
 
-        int difW = (int) (activeRect.width() - activeRect.width() / maxZoom);
-        int difH = (int) (activeRect.height() - activeRect.height() / maxZoom);
+        int difW = (int) (activeWidth - activeWidth / maxZoom);
+        int difH = (int) (activeHeight - activeHeight / maxZoom);
         int cropW = difW / 100 * zoomLevel;
         int cropH = difH / 100 * zoomLevel;
         cropW -= cropW & 3;
         cropH -= cropH & 3;
-        Rect zoom = new Rect(cropW, cropH, activeRect.width() - cropW, activeRect.height() - cropH);
+        Rect zoom = new Rect(cropW, cropH, activeWidth - cropW, activeHeight - cropH);
         mPreviewBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoom);
         updatePreview();
     }
@@ -705,8 +1861,7 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
      * @return 方向。
      */
     private int getOrientation() {
-        // noinspection ConstantConditions
-        int sensorOrientation = mCameraCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        int sensorOrientation = mCapabilities.getSensorOrientation();
         if (isBackCamera()) {
             return (sensorOrientation - mSensorDegrees + 360) % 360;
         } else {
@@ -721,12 +1876,18 @@ public class Camera2Manager extends BaseCameraManager implements ImageReader.OnI
         mBackgroundThread = new HandlerThread("CameraBackground");
         mBackgroundThread.start();
         mBackgroundHandler = new Handler(mBackgroundThread.getLooper());
+        mFrameThread = new HandlerThread("CameraFrame");
+        mFrameThread.start();
+        mFrameHandler = new Handler(mFrameThread.getLooper());
     }
 
     /**
      * 关闭后台线程。
      */
     private void stopBackgroundThread() {
+        mFrameThread.quitSafely();
+        mFrameThread = null;
+        mFrameHandler = null;
         mBackgroundThread.quitSafely();
         try {
             mBackgroundThread.join();
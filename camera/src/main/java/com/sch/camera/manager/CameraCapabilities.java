@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.manager;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import com.sch.camera.Size;
+import com.sch.camera.SnapshotFile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 相机能力快照。
+ * <p>
+ * 每个相机只读取一次 CameraCharacteristics，预先解析出常用的特性，所有管理器实例共享；
+ * 创建后不可修改，读取时不再经过 binder 调用，也不再拆箱。
+ * <p>
+ * 快照会序列化到应用的私有目录，并以 Build.FINGERPRINT 校验，系统升级后自动重新读取；
+ * 之后冷启动直接从文件加载，不再逐个查询相机特性。
+ * <p>
+ * 快照只保存相机特性，不保存选择的后端和尺寸：它们由 {@link BackendSelector} 和预览尺寸的选择逻辑
+ * 从快照中的特性和固定的目标尺寸算出，不经过 binder 调用，耗时可以忽略；保存下来反而要在选择逻辑变化时同步升级快照版本。
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public final class CameraCapabilities {
+
+    /**
+     * 快照文件名。
+     */
+    private static final String SNAPSHOT_FILE_NAME = "sch_camera_capabilities";
+    /**
+     * 快照文件的标识。
+     */
+    private static final int SNAPSHOT_MAGIC = 0x53434350;
+    /**
+     * 快照格式的版本，修改字段后需要递增。
+     */
+    private static final int SNAPSHOT_VERSION = 2;
+
+    /**
+     * 所有相机的能力快照，按相机 id 的顺序排列。
+     */
+    private static List<CameraCapabilities> sCapabilitiesList;
+    /**
+     * sCapabilitiesList 是否从快照文件加载。
+     */
+    private static boolean isFromSnapshot = false;
+
+    private final String mCameraId;
+    private final int mLensFacing;
+    private final int mHardwareLevel;
+    private final int mSensorOrientation;
+    private final Rect mActiveArray;
+    private final float mMaxDigitalZoom;
+    private final int[] mAfModes;
+    private final boolean isAfAvailable;
+    private final boolean isFlashAvailable;
+    private final int[] mCapabilities;
+    private final boolean isTimestampRealtime;
+    private final List<Size> mPreviewSizes;
+    private final List<Size> mPictureSizes;
+    private final List<Size> mVideoSizes;
+    private final List<Size> mYuvSizes;
+    private final List<Size> mYuvInputSizes;
+
+    /**
+     * 获取所有相机的能力快照。首次调用时优先从快照文件加载，文件不存在或已失效时读取相机特性，
+     * 所有相机都读取成功时才写入文件。
+     *
+     * @param context Context。
+     * @return 按相机 id 顺序排列的能力快照，不可修改。
+     * @throws CameraAccessException 读取相机特性失败。
+     */
+    @NonNull
+    public static synchronized List<CameraCapabilities> getAll(@NonNull Context context) throws CameraAccessException {
+        if (sCapabilitiesList != null) {
+            return sCapabilitiesList;
+        }
+        SnapshotFile snapshotFile = getSnapshotFile(context);
+        List<CameraCapabilities> list = readSnapshot(snapshotFile);
+        isFromSnapshot = list != null;
+        if (list == null) {
+            CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+            if (manager == null) {
+                return Collections.emptyList();
+            }
+            String[] idArray = manager.getCameraIdList();
+            list = query(manager, idArray);
+            if (!list.isEmpty() && list.size() == idArray.length) {
+                // 只保存完整的快照，有相机读取失败时下次启动重新读取。
+                writeSnapshot(snapshotFile, list);
+            }
+        }
+        sCapabilitiesList = Collections.unmodifiableList(list);
+        return sCapabilitiesList;
+    }
+
+    /**
+     * 重新读取相机特性。快照文件中的相机 id 无法打开时调用，删除快照文件后重新查询。
+     *
+     * @param context Context。
+     * @return 重新读取的能力快照；当前快照不是从文件加载的，已是最新时返回 null。
+     * @throws CameraAccessException 读取相机特性失败。
+     */
+    @Nullable
+    public static synchronized List<CameraCapabilities> reprobe(@NonNull Context context) throws CameraAccessException {
+        if (!isFromSnapshot) {
+            return null;
+        }
+        if (!getSnapshotFile(context).delete()) {
+            return null;
+        }
+        sCapabilitiesList = null;
+        return getAll(context);
+    }
+
+    /**
+     * 逐个读取相机特性，跳过读取失败的相机。
+     */
+    private static List<CameraCapabilities> query(CameraManager manager, String[] idArray) {
+        List<CameraCapabilities> list = new ArrayList<>(idArray.length);
+        for (String id : idArray) {
+            try {
+                list.add(new CameraCapabilities(id, manager.getCameraCharacteristics(id)));
+            } catch (CameraAccessException | IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 获取快照文件。
+     */
+    private static SnapshotFile getSnapshotFile(Context context) {
+        return new SnapshotFile(new File(context.getNoBackupFilesDir(), SNAPSHOT_FILE_NAME),
+                SNAPSHOT_MAGIC, SNAPSHOT_VERSION);
+    }
+
+    /**
+     * 读取快照文件。
+     *
+     * @return 能力快照，文件不存在、格式不符或系统版本已变化时返回 null。
+     */
+    private static List<CameraCapabilities> readSnapshot(SnapshotFile snapshotFile) {
+        return snapshotFile.read(new SnapshotFile.Reader<List<CameraCapabilities>>() {
+            @Override
+            public List<CameraCapabilities> read(@NonNull DataInputStream in) throws IOException {
+                int count = in.readInt();
+                List<CameraCapabilities> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(new CameraCapabilities(in));
+                }
+                return list;
+            }
+        });
+    }
+
+    /**
+     * 写入快照文件。
+     */
+    private static void writeSnapshot(SnapshotFile snapshotFile, final List<CameraCapabilities> list) {
+        snapshotFile.write(new SnapshotFile.Writer() {
+            @Override
+            public void write(@NonNull DataOutputStream out) throws IOException {
+                out.writeInt(list.size());
+                for (CameraCapabilities capabilities : list) {
+                    capabilities.writeTo(out);
+                }
+            }
+        });
+    }
+
+    private CameraCapabilities(String cameraId, CameraCharacteristics characteristics) {
+        mCameraId = cameraId;
+        mLensFacing = getInt(characteristics, CameraCharacteristics.LENS_FACING, -1);
+        mHardwareLevel = getInt(characteristics, CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL,
+                CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY);
+        mSensorOrientation = getInt(characteristics, CameraCharacteristics.SENSOR_ORIENTATION, 0);
+
+        Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        mActiveArray = activeArray == null ? null : new Rect(activeArray);
+        Float maxDigitalZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        mMaxDigitalZoom = maxDigitalZoom == null ? 1F : maxDigitalZoom;
+
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        mAfModes = afModes == null ? new int[0] : afModes.clone();
+        isAfAvailable = !(mAfModes.length == 0 ||
+                (mAfModes.length == 1 && mAfModes[0] == CameraCharacteristics.CONTROL_AF_MODE_OFF));
+        Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        isFlashAvailable = flashAvailable != null && flashAvailable;
+
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        mCapabilities = capabilities == null ? new int[0] : capabilities.clone();
+        isTimestampRealtime = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && getInt(characteristics, CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE, -1)
+                == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            mPreviewSizes = null;
+            mPictureSizes = null;
+            mVideoSizes = null;
+            mYuvSizes = null;
+            mYuvInputSizes = Collections.emptyList();
+        } else {
+            mPreviewSizes = toSizeList(map.getOutputSizes(SurfaceTexture.class));
+            mPictureSizes = toSizeList(map.getOutputSizes(ImageFormat.JPEG));
+            mVideoSizes = toSizeList(map.getOutputSizes(MediaRecorder.class));
+            mYuvSizes = toSizeList(map.getOutputSizes(ImageFormat.YUV_420_888));
+            mYuvInputSizes = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ?
+                    toSizeList(map.getInputSizes(ImageFormat.YUV_420_888)) : Collections.<Size>emptyList();
+        }
+    }
+
+    /**
+     * 从快照文件中恢复。
+     */
+    private CameraCapabilities(DataInputStream in) throws IOException {
+        mCameraId = in.readUTF();
+        mLensFacing = in.readInt();
+        mHardwareLevel = in.readInt();
+        mSensorOrientation = in.readInt();
+        mActiveArray = in.readBoolean() ? new Rect(in.readInt(), in.readInt(), in.readInt(), in.readInt()) : null;
+        mMaxDigitalZoom = in.readFloat();
+        mAfModes = readIntArray(in);
+        isAfAvailable = in.readBoolean();
+        isFlashAvailable = in.readBoolean();
+        mCapabilities = readIntArray(in);
+        isTimestampRealtime = in.readBoolean();
+        mPreviewSizes = readSizeList(in);
+        mPictureSizes = readSizeList(in);
+        mVideoSizes = readSizeList(in);
+        mYuvSizes = readSizeList(in);
+        mYuvInputSizes = readSizeList(in);
+    }
+
+    /**
+     * 写入快照文件，字段顺序与 {@link #CameraCapabilities(DataInputStream)} 一致。
+     */
+    private void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(mCameraId);
+        out.writeInt(mLensFacing);
+        out.writeInt(mHardwareLevel);
+        out.writeInt(mSensorOrientation);
+        out.writeBoolean(mActiveArray != null);
+        if (mActiveArray != null) {
+            out.writeInt(mActiveArray.left);
+            out.writeInt(mActiveArray.top);
+            out.writeInt(mActiveArray.right);
+            out.writeInt(mActiveArray.bottom);
+        }
+        out.writeFloat(mMaxDigitalZoom);
+        writeIntArray(out, mAfModes);
+        out.writeBoolean(isAfAvailable);
+        out.writeBoolean(isFlashAvailable);
+        writeIntArray(out, mCapabilities);
+        out.writeBoolean(isTimestampRealtime);
+        writeSizeList(out, mPreviewSizes);
+        writeSizeList(out, mPictureSizes);
+        writeSizeList(out, mVideoSizes);
+        writeSizeList(out, mYuvSizes);
+        writeSizeList(out, mYuvInputSizes);
+    }
+
+    /**
+     * 相机 id。
+     */
+    public String getCameraId() {
+        return mCameraId;
+    }
+
+    /**
+     * 镜头方向，CameraCharacteristics.LENS_FACING_*，未知时为 -1。
+     */
+    public int getLensFacing() {
+        return mLensFacing;
+    }
+
+    /**
+     * 硬件支持等级，CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_*。
+     */
+    public int getHardwareLevel() {
+        return mHardwareLevel;
+    }
+
+    /**
+     * 传感器方向。
+     */
+    public int getSensorOrientation() {
+        return mSensorOrientation;
+    }
+
+    /**
+     * 传感器有效区域，不存在时返回 null。
+     */
+    @Nullable
+    public Rect getActiveArray() {
+        return mActiveArray == null ? null : new Rect(mActiveArray);
+    }
+
+    /**
+     * 传感器有效区域的宽度，不存在时返回 0。
+     */
+    public int getActiveArrayWidth() {
+        return mActiveArray == null ? 0 : mActiveArray.width();
+    }
+
+    /**
+     * 传感器有效区域的高度，不存在时返回 0。
+     */
+    public int getActiveArrayHeight() {
+        return mActiveArray == null ? 0 : mActiveArray.height();
+    }
+
+    /**
+     * 最大数码变焦倍数。
+     */
+    public float getMaxDigitalZoom() {
+        return mMaxDigitalZoom;
+    }
+
+    /**
+     * 支持的对焦模式。
+     */
+    public int[] getAfModes() {
+        return mAfModes.clone();
+    }
+
+    /**
+     * 是否支持调焦。
+     */
+    public boolean isAfAvailable() {
+        return isAfAvailable;
+    }
+
+    /**
+     * 是否支持闪光灯。
+     */
+    public boolean isFlashAvailable() {
+        return isFlashAvailable;
+    }
+
+    /**
+     * 是否支持指定的能力。
+     *
+     * @param capability CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_*。
+     */
+    public boolean hasCapability(int capability) {
+        for (int item : mCapabilities) {
+            if (item == capability) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * SENSOR_TIMESTAMP 是否与 SystemClock.elapsedRealtimeNanos() 使用相同的时间基准。
+     */
+    public boolean isTimestampRealtime() {
+        return isTimestampRealtime;
+    }
+
+    /**
+     * 支持的预览尺寸，不支持输出时返回 null。
+     */
+    @Nullable
+    public List<Size> getPreviewSizes() {
+        return copy(mPreviewSizes);
+    }
+
+    /**
+     * 支持的 JPEG 尺寸，不支持输出时返回 null。
+     */
+    @Nullable
+    public List<Size> getPictureSizes() {
+        return copy(mPictureSizes);
+    }
+
+    /**
+     * 支持的录像尺寸，不支持输出时返回 null。
+     */
+    @Nullable
+    public List<Size> getVideoSizes() {
+        return copy(mVideoSizes);
+    }
+
+    /**
+     * 支持的 YUV_420_888 输出尺寸，不支持输出时返回 null。
+     */
+    @Nullable
+    public List<Size> getYuvSizes() {
+        return copy(mYuvSizes);
+    }
+
+    /**
+     * 是否支持以指定尺寸的 YUV 帧作为重处理的输入。
+     */
+    public boolean isYuvInputSupported(int width, int height) {
+        for (Size size : mYuvInputSizes) {
+            if (size.getWidth() == width && size.getHeight() == height) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int getInt(CameraCharacteristics characteristics, CameraCharacteristics.Key<Integer> key, int defValue) {
+        Integer value = characteristics.get(key);
+        return value == null ? defValue : value;
+    }
+
+    private static List<Size> toSizeList(android.util.Size[] array) {
+        return array == null ? Collections.<Size>emptyList() : Size.convert(array);
+    }
+
+    private static int[] readIntArray(DataInputStream in) throws IOException {
+        int[] array = new int[in.readShort()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readInt();
+        }
+        return array;
+    }
+
+    private static void writeIntArray(DataOutputStream out, int[] array) throws IOException {
+        out.writeShort(array.length);
+        for (int item : array) {
+            out.writeInt(item);
+        }
+    }
+
+    /**
+     * 读取尺寸列表，长度为 -1 表示 null。
+     */
+    private static List<Size> readSizeList(DataInputStream in) throws IOException {
+        int count = in.readShort();
+        if (count < 0) {
+            return null;
+        }
+        List<Size> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new Size(in.readInt(), in.readInt()));
+        }
+        return list;
+    }
+
+    private static void writeSizeList(DataOutputStream out, List<Size> list) throws IOException {
+        if (list == null) {
+            out.writeShort(-1);
+            return;
+        }
+        out.writeShort(list.size());
+        for (Size size : list) {
+            out.writeInt(size.getWidth());
+            out.writeInt(size.getHeight());
+        }
+    }
+
+    /**
+     * Size 可以修改，返回副本。
+     */
+    private static List<Size> copy(List<Size> list) {
+        if (list == null) {
+            return null;
+        }
+        List<Size> copyList = new ArrayList<>(list.size());
+        for (Size size : list) {
+            copyList.add(new Size(size.getWidth(), size.getHeight()));
+        }
+        return copyList;
+    }
+
+}
@@ -17,9 +17,16 @@
 package com.sch.camera.manager;
 
 import android.app.Activity;
+import android.graphics.ImageFormat;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.hardware.Camera;
 import android.hardware.Camera.Parameters;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.MotionEvent;
@@ -31,12 +38,20 @@ import com.sch.camera.Size;
 import com.sch.camera.VideoRecorder;
 import com.sch.camera.annotation.Facing;
 import com.sch.camera.annotation.Flash;
+import com.sch.camera.frame.Frame;
+import com.sch.camera.frame.FrameDispatcher;
+import com.sch.camera.frame.LumaAnalyzer;
 import com.sch.camera.listener.OnCameraListener;
 import com.sch.camera.widget.AutoFitTextureView;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import static com.sch.camera.DefOptions.FLASH_AUTO;
 import static com.sch.camera.DefOptions.FLASH_OFF;
@@ -47,9 +62,18 @@ import static com.sch.camera.DefOptions.FLASH_TORCH;
  * Created by StoneHui on 2018/8/10.
  * <p>
  * 相机管理。
+ * <p>
+ * 所有 android.hardware.Camera 的调用都在相机线程按顺序执行，相机的回调也在相机线程，打开相机等耗时操作不再阻塞主线程。
+ * 没有返回值的操作提交后立即返回，失败时通过 {@link OnCameraListener#onError(Exception)} 在主线程回调；
+ * 录像相关的操作需要返回结果或抛出异常，在相机线程执行完后才返回。
  */
 public class CameraManager extends BaseCameraManager {
 
+    /**
+     * 预览回调的缓冲区数量。一个由相机写入，其余由帧处理器持有，都被持有时相机丢弃新的帧。
+     */
+    private static final int PREVIEW_BUFFER_COUNT = 4;
+
     /**
      * 相机
      */
@@ -78,6 +102,31 @@ public class CameraManager extends BaseCameraManager {
 
     private VideoRecorder mVideoRecorder;
 
+    /**
+     * 相机线程，打开相机后相机的回调也在该线程执行。
+     */
+    private HandlerThread mCameraThread;
+    private volatile Handler mCameraHandler;
+    /**
+     * 相机线程是否可以接收命令，只在主线程读写。结束后 mCameraHandler 仍保留，供还没有执行的命令使用。
+     */
+    private boolean isCameraThreadRunning = false;
+    /**
+     * 连拍的间隔时间。
+     */
+    private long mBurstInterval = 0;
+    /**
+     * 连拍任务，在相机线程执行。
+     */
+    private Runnable mBurstTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mCamera != null) {
+                captureStillPicture();
+            }
+        }
+    };
+
     /**
      * 初始化。
      *
@@ -108,88 +157,192 @@ public class CameraManager extends BaseCameraManager {
     }
 
     @Override
-    public void openCamera(int viewWidth, int viewHeight) {
-        try {
+    public void onResume() {
+        // 启动相机线程。
+        startCameraThread();
+        super.onResume();
+    }
 
-            // 根据相机方向查找对应的相机。
-            Camera.CameraInfo info = new Camera.CameraInfo();
-            for (int i = 0; i < Camera.getNumberOfCameras(); i++) {
-                Camera.getCameraInfo(i, info);
-                if (info.facing == mFacing) {
-                    mCameraId = i;
-                    break;
+    @Override
+    public void onPause() {
+        super.onPause();
+        // 关闭相机后结束相机线程。
+        stopCameraThread();
+    }
+
+    @Override
+    public void openCamera(final int viewWidth, final int viewHeight) {
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    openCameraInternal(viewWidth, viewHeight);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    postError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
                 }
             }
+        });
+    }
 
-            Camera.getCameraInfo(mCameraId, mCameraInfo);
+    /**
+     * 在相机线程打开相机并开始预览。
+     */
+    private void openCameraInternal(int viewWidth, int viewHeight) throws IOException {
+
+        // 根据相机方向查找对应的相机。
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        for (int i = 0; i < Camera.getNumberOfCameras(); i++) {
+            Camera.getCameraInfo(i, info);
+            if (info.facing == mFacing) {
+                mCameraId = i;
+                break;
+            }
+        }
 
-            // 打开相机。
-            mCamera = Camera.open(mCameraId);
+        Camera.getCameraInfo(mCameraId, mCameraInfo);
 
-            mCameraParameters = mCamera.getParameters();
+        // 打开相机。
+        markOpenStart();
+        mCamera = Camera.open(mCameraId);
+        mCameraOpenedTime = SystemClock.elapsedRealtime();
 
-            // 设置对焦模式
-            List<String> supportedFocusModes = mCameraParameters.getSupportedFocusModes();
-            if (isAutoFocus() && supportedFocusModes != null &&
-                    supportedFocusModes.contains(Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
-                mCameraParameters.setFocusMode(Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
-                setAfAvailable(true);
-            } else {
-                setAfAvailable(false);
-            }
-            mCamera.cancelAutoFocus();
-
-            // 设置闪关灯模式
-            List<String> supportedFlashModes = mCameraParameters.getSupportedFlashModes();
-            if (supportedFlashModes != null && !supportedFlashModes.isEmpty()) {
-                if (!(supportedFlashModes.size() == 1 && supportedFlashModes.contains(Parameters.FLASH_MODE_OFF))) {
-                    setFlashSupport(true);
-                    switchFlash(mFlash);
-                } else {
-                    setFlashSupport(false);
-                }
+        mCameraParameters = mCamera.getParameters();
+
+        // 设置对焦模式
+        List<String> supportedFocusModes = mCameraParameters.getSupportedFocusModes();
+        if (isAutoFocus() && supportedFocusModes != null &&
+                supportedFocusModes.contains(Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
+            mCameraParameters.setFocusMode(Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+            setAfAvailable(true);
+        } else {
+            setAfAvailable(false);
+        }
+        mCamera.cancelAutoFocus();
+
+        // 设置闪关灯模式
+        List<String> supportedFlashModes = mCameraParameters.getSupportedFlashModes();
+        if (supportedFlashModes != null && !supportedFlashModes.isEmpty()) {
+            if (!(supportedFlashModes.size() == 1 && supportedFlashModes.contains(Parameters.FLASH_MODE_OFF))) {
+                setFlashSupport(true);
+                switchFlashInternal(mFlash);
             } else {
                 setFlashSupport(false);
             }
+        } else {
+            setFlashSupport(false);
+        }
 
-            // 设置预览尺寸
-            mPreviewSize = getOptimalSize(Size.convert(mCameraParameters.getSupportedPreviewSizes()),
-                    viewWidth, viewHeight);
-            mCameraParameters.setPreviewSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        // 设置预览尺寸
+        mPreviewSize = getOptimalSize(Size.convert(mCameraParameters.getSupportedPreviewSizes()),
+                viewWidth, viewHeight);
+        mCameraParameters.setPreviewSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
 
-            // 设置照片的尺寸
-            mPictureSize = getOptimalSize(Size.convert(mCameraParameters.getSupportedPictureSizes()),
-                    mPreviewSize.getWidth(), mPreviewSize.getHeight());
-            mCameraParameters.setPictureSize(mPictureSize.getWidth(), mPictureSize.getHeight());
+        // 设置照片的尺寸
+        mPictureSize = getOptimalSize(Size.convert(mCameraParameters.getSupportedPictureSizes()),
+                mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        mCameraParameters.setPictureSize(mPictureSize.getWidth(), mPictureSize.getHeight());
 
-            // 视频尺寸。
-            List<Camera.Size> videoSizes = mCameraParameters.getSupportedVideoSizes();
-            if (videoSizes == null) {
-                videoSizes = mCameraParameters.getSupportedPreviewSizes();
-            }
-            mVideoSize = getOptimalSize(Size.convert(videoSizes), mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        // 视频尺寸。
+        List<Camera.Size> videoSizes = mCameraParameters.getSupportedVideoSizes();
+        if (videoSizes == null) {
+            videoSizes = mCameraParameters.getSupportedPreviewSizes();
+        }
+        mVideoSize = getOptimalSize(Size.convert(videoSizes), mPreviewSize.getWidth(), mPreviewSize.getHeight());
 
-            mCamera.setParameters(mCameraParameters);
-            mCamera.setDisplayOrientation(getOrientation());
-            mCamera.setPreviewTexture(mAutoFitTextureView.getSurfaceTexture());
+        mCamera.setParameters(mCameraParameters);
+        mCamera.setDisplayOrientation(getOrientation());
+        mCamera.setPreviewTexture(mAutoFitTextureView.getSurfaceTexture());
+        updatePreviewCallback();
 
-            // 开始预览。
-            mCamera.startPreview();
-        } catch (Exception e) {
-            e.printStackTrace();
-            if (mOnCameraListener != null) {
-                mOnCameraListener.onError(new RuntimeException(mActivity.getString(R.string.sch_camera_disable)));
+        // 开始预览。
+        mCamera.startPreview();
+    }
+
+    @Override
+    public boolean setLumaAnalyzer(@Nullable LumaAnalyzer analyzer, int width, @Nullable RectF roi) {
+        // 旧 API 不能同时输出多路预览流。
+        return false;
+    }
+
+    @Override
+    void onFrameProcessorsChanged() {
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    updatePreviewCallback();
+                }
+            }
+        });
+    }
+
+    /**
+     * 有帧处理器时通过预览回调输出 NV21 格式的预览帧，否则移除预览回调。
+     * 预览回调在相机线程执行，阻塞模式的帧处理器处理不及时会阻塞相机线程。
+     * <p>
+     * 预览帧写入预先分配的缓冲区，所有处理器处理完后归还给相机；每个缓冲区绑定一个 Frame，预览时不再为每帧分配内存或创建对象。
+     */
+    private void updatePreviewCallback() {
+        // 移除回调时相机同时清空已添加的缓冲区。
+        mCamera.setPreviewCallbackWithBuffer(null);
+        if (mFrameDispatcher.isEmpty()) {
+            return;
+        }
+        final int width = mPreviewSize.getWidth();
+        final int height = mPreviewSize.getHeight();
+        // 每次重新设置回调时使用新的缓冲区，处理器仍持有的旧缓冲区不会归还给新的相机。
+        int bufferSize = width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+        final PreviewBuffer[] buffers = new PreviewBuffer[PREVIEW_BUFFER_COUNT];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new PreviewBuffer(mCamera, mCameraHandler, mFrameDispatcher, new byte[bufferSize], width, height);
+            mCamera.addCallbackBuffer(buffers[i].mData);
+        }
+        mCamera.setPreviewCallbackWithBuffer(new Camera.PreviewCallback() {
+            @Override
+            public void onPreviewFrame(byte[] data, Camera camera) {
+                if (data == null) {
+                    return;
+                }
+                for (PreviewBuffer buffer : buffers) {
+                    if (buffer.mData == data) {
+                        mFrameDispatcher.dispatch(buffer.mFrame, getFrameRotation(), System.nanoTime());
+                        return;
+                    }
+                }
             }
+        });
+    }
+
+    /**
+     * 预览帧需要顺时针旋转的角度，与 {@link #getRotation()} 相同，但不重新查询相机信息。
+     */
+    private int getFrameRotation() {
+        if (isBackCamera()) {
+            return (mCameraInfo.orientation - mSensorDegrees + 360) % 360;
+        } else {
+            return (mCameraInfo.orientation + mSensorDegrees + 360) % 360;
         }
     }
 
     @Override
     public void closeCamera() {
-        if (mCamera != null) {
-            mCamera.stopPreview();
-            mCamera.release();
-            mCamera = null;
+        if (mCameraHandler != null) {
+            mCameraHandler.removeCallbacks(mBurstTask);
         }
+        cancelBurst();
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                // 连拍的回调中可能再次提交了连拍任务。
+                mCameraHandler.removeCallbacks(mBurstTask);
+                if (mCamera != null) {
+                    mCamera.stopPreview();
+                    mCamera.release();
+                    mCamera = null;
+                }
+            }
+        });
     }
 
     @Override
@@ -202,7 +355,21 @@ public class CameraManager extends BaseCameraManager {
     }
 
     @Override
-    public void switchFlash(@Flash int flash) {
+    public void switchFlash(@Flash final int flash) {
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    switchFlashInternal(flash);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在相机线程切换闪光灯。
+     */
+    private void switchFlashInternal(@Flash int flash) {
         if (isFlashSupport()) {
             mFlash = flash;
             switch (mFlash) {
@@ -227,23 +394,57 @@ public class CameraManager extends BaseCameraManager {
 
     @Override
     public void takePicture() {
-        if (isCapturing()) {
+        if (!beginPicture()) {
             return;
         }
-        setCapturing(true);
-        if (isAfAvailable() && isAutoFocus()) {
-            mCamera.cancelAutoFocus();
-            mCamera.autoFocus(new Camera.AutoFocusCallback() {
-                @Override
-                public void onAutoFocus(boolean success, Camera camera) {
-                    // 自动对焦成功后拍照。
+        boolean isPosted = postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    // 相机已经关闭，放弃这次拍照。
+                    onPictureExposed();
+                    onPicturePersisted();
+                    return;
+                }
+                if (isAfAvailable() && isAutoFocus()) {
+                    mCamera.cancelAutoFocus();
+                    mCamera.autoFocus(new Camera.AutoFocusCallback() {
+                        @Override
+                        public void onAutoFocus(boolean success, Camera camera) {
+                            // 自动对焦成功后拍照。
+                            captureStillPicture();
+                        }
+                    });
+                } else {
+                    // 直接拍照。
                     captureStillPicture();
                 }
-            });
-        } else {
-            // 直接拍照。
-            captureStillPicture();
+            }
+        });
+        if (!isPosted) {
+            onPictureExposed();
+            onPicturePersisted();
+        }
+    }
+
+    @Override
+    public void captureBurst(int count, long intervalMs) {
+        // 张数受同时处理的照片数量限制。
+        if (!isCameraThreadRunning || beginBurst(count) <= 0) {
+            return;
         }
+        mBurstInterval = Math.max(0, intervalMs);
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    cancelBurst();
+                    return;
+                }
+                // 连拍时不再对焦，直接拍照。
+                captureStillPicture();
+            }
+        });
     }
 
     @Override
@@ -252,37 +453,170 @@ public class CameraManager extends BaseCameraManager {
             return;
         }
         setCapturing(true);
-        mCamera.unlock();
-        // 开始录像。
-        mVideoRecorder = new VideoRecorder(mCamera, getRotation(), mVideoSize, mVideoFile.getPath());
-        mVideoRecorder.start();
+        markVideoStart();
+        captureVideoThumb();
+        try {
+            runOnCameraThread(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    resetVideoParts();
+                    mCamera.unlock();
+                    // 开始录像。
+                    VideoRecorder recorder = null;
+                    try {
+                        recorder = new VideoRecorder(mCamera, getRotation(), mVideoSize, mVideoFile.getPath());
+                        recorder.start();
+                    } catch (IOException | RuntimeException e) {
+                        // 启动失败，释放录像器并收回相机，预览和拍照可以继续。
+                        if (recorder != null) {
+                            recorder.release();
+                        }
+                        mCamera.lock();
+                        throw e;
+                    }
+                    mVideoRecorder = recorder;
+                    // MediaRecorder 直接从相机取帧，以启动完成作为第一帧的时间。
+                    markVideoFrameRecorded();
+                    return null;
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            setCapturing(false);
+            throw e;
+        }
     }
 
     @Override
     public void stopVideoRecord() throws Exception {
-        if (mVideoRecorder == null) {
-            return;
+        File file = callOnCameraThread(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                if (mVideoRecorder == null) {
+                    if (!isVideoPaused) {
+                        return null;
+                    }
+                    // 暂停时已经结束了最后一个片段。
+                    try {
+                        mergeVideoParts();
+                    } finally {
+                        setCapturing(false);
+                    }
+                    return mVideoFile;
+                }
+                // 录像结束，结束失败时同样收回相机并清除录像状态，录像器已在结束时释放。
+                try {
+                    stopVideoRecorder(mVideoRecorder);
+                } finally {
+                    mVideoRecorder = null;
+                    setCapturing(false);
+                    mCamera.lock();
+                }
+                return mVideoFile;
+            }
+        });
+        if (file != null) {
+            mOnVideoListener.onVideoRecorded(file, thumbForVideo(file));
+        }
+    }
+
+    @Override
+    public boolean takeVideoSnapshot() {
+        if (mVideoRecorder == null && !isVideoPaused) {
+            return false;
         }
-        mCamera.lock();
-        // 录像结束。
-        mVideoRecorder.stop();
-        mOnVideoListener.onVideoRecorded(mVideoFile, thumbForVideo(mVideoFile));
-        mVideoRecorder = null;
-        setCapturing(false);
+        // MediaRecorder 占用相机时不能拍照，截取预览画面。
+        return takePreviewSnapshot();
+    }
+
+    @Override
+    public boolean pauseVideoRecord() {
+        try {
+            return callOnCameraThread(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    if (mVideoRecorder == null || isVideoPaused) {
+                        return isVideoPaused;
+                    }
+                    if (mVideoRecorder.pause()) {
+                        isVideoPaused = true;
+                        return true;
+                    }
+                    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                        // 没有 MediaMuxer，无法拼接片段。
+                        return false;
+                    }
+                    // 不支持暂停，结束当前片段。
+                    stopVideoPart(mVideoRecorder);
+                    mVideoRecorder = null;
+                    mCamera.lock();
+                    return true;
+                }
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public void resumeVideoRecord() throws IOException {
+        runOnCameraThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (!isVideoPaused) {
+                    return null;
+                }
+                if (mVideoRecorder != null) {
+                    mVideoRecorder.resume();
+                    isVideoPaused = false;
+                    return null;
+                }
+                // 录制新的片段。
+                mCamera.unlock();
+                VideoRecorder recorder = new VideoRecorder(mCamera, getRotation(), mVideoSize,
+                        getVideoPartFile().getPath());
+                try {
+                    recorder.start();
+                } catch (IOException e) {
+                    mCamera.lock();
+                    throw e;
+                }
+                mVideoRecorder = recorder;
+                isVideoPaused = false;
+                return null;
+            }
+        });
     }
 
     @Override
     public void focusOn(AutoFitTextureView view, MotionEvent event) {
 
+        // 计算聚焦区域。MotionEvent 会被回收，先在主线程计算。
+        Rect rect = FocusRegionHelper.get(event.getX(), event.getY(), view.getWidth(), view.getHeight());
+        final List<Camera.Area> areaList = Collections.singletonList(new Camera.Area(rect, 800));
+
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    focusOnInternal(areaList);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在相机线程对指定区域对焦和测光。
+     */
+    private void focusOnInternal(List<Camera.Area> areaList) {
+
         mCamera.cancelAutoFocus();
 
         // 保存当前的焦点模式。
         final String currentFocusMode = mCameraParameters.getFocusMode();
 
-        // 计算聚焦区域。
-        Rect rect = FocusRegionHelper.get(event.getX(), event.getY(), view.getWidth(), view.getHeight());
-        List<Camera.Area> areaList = Collections.singletonList(new Camera.Area(rect, 800));
-
         // 设置聚焦区域。
         if (mCameraParameters.getMaxNumFocusAreas() > 0) {
             mCameraParameters.setFocusAreas(areaList);
@@ -307,32 +641,42 @@ public class CameraManager extends BaseCameraManager {
 
     @Override
     public void zoomIn() {
-        if (!mCameraParameters.isZoomSupported()) {
-            return;
-        }
-        // 放大预览内容。
-        int zoom = mCameraParameters.getZoom();
-        if (zoom < mCameraParameters.getMaxZoom()) {
-            mCameraParameters.setZoom(zoom + 1);
-        }
-        mCamera.setParameters(mCameraParameters);
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null || !mCameraParameters.isZoomSupported()) {
+                    return;
+                }
+                // 放大预览内容。
+                int zoom = mCameraParameters.getZoom();
+                if (zoom < mCameraParameters.getMaxZoom()) {
+                    mCameraParameters.setZoom(zoom + 1);
+                }
+                mCamera.setParameters(mCameraParameters);
+            }
+        });
     }
 
     @Override
     public void zoomOut() {
-        if (!mCameraParameters.isZoomSupported()) {
-            return;
-        }
-        // 缩小预览内容。
-        int zoom = mCameraParameters.getZoom();
-        if (zoom > 0) {
-            mCameraParameters.setZoom(zoom - 1);
-        }
-        mCamera.setParameters(mCameraParameters);
+        postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null || !mCameraParameters.isZoomSupported()) {
+                    return;
+                }
+                // 缩小预览内容。
+                int zoom = mCameraParameters.getZoom();
+                if (zoom > 0) {
+                    mCameraParameters.setZoom(zoom - 1);
+                }
+                mCamera.setParameters(mCameraParameters);
+            }
+        });
     }
 
     /**
-     * 拍照。
+     * 拍照，在相机线程调用。
      */
     private void captureStillPicture() {
         mCameraParameters.setRotation(getRotation());
@@ -340,18 +684,115 @@ public class CameraManager extends BaseCameraManager {
         mCamera.takePicture(null, null, null, new Camera.PictureCallback() {
             @Override
             public void onPictureTaken(byte[] data, Camera camera) {
-                // 保存照片。
-                savePicture(data);
-                // 回调。
-                mOnPictureListener.onPictureTaken(mPictureFile, thumbForPicture(mPictureFile));
+                // 在保存线程中保存照片并回调。
+                persistPicture(ByteBuffer.wrap(data), null);
                 camera.cancelAutoFocus();
                 // 恢复预览。
                 camera.startPreview();
-                setCapturing(false);
+                // 相机已完成拍摄，无需等待保存即可再次拍照。
+                onPictureExposed();
+                if (isBursting()) {
+                    // 继续连拍。
+                    mCameraHandler.postDelayed(mBurstTask, mBurstInterval);
+                }
             }
         });
     }
 
+    /**
+     * 启动相机线程。上一个相机线程还在关闭相机时，先等待其结束，保证相机按顺序打开和关闭。
+     */
+    private void startCameraThread() {
+        final HandlerThread previousThread = mCameraThread;
+        mCameraThread = new HandlerThread("CameraLegacy");
+        mCameraThread.start();
+        mCameraHandler = new Handler(mCameraThread.getLooper());
+        isCameraThreadRunning = true;
+        if (previousThread != null) {
+            mCameraHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        previousThread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 执行完已提交的命令后结束相机线程。
+     */
+    private void stopCameraThread() {
+        if (!isCameraThreadRunning) {
+            return;
+        }
+        isCameraThreadRunning = false;
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Looper looper = Looper.myLooper();
+                if (looper != null) {
+                    looper.quit();
+                }
+            }
+        });
+    }
+
+    /**
+     * 提交命令到相机线程，按提交的顺序执行。
+     *
+     * @return 相机线程没有启动时返回 false。
+     */
+    private boolean postToCameraThread(Runnable command) {
+        return isCameraThreadRunning && mCameraHandler.post(command);
+    }
+
+    /**
+     * 在相机线程执行并等待完成，用于需要抛出异常的录像操作。
+     *
+     * @throws IOException 相机线程没有启动或执行时抛出的 IOException。
+     */
+    private void runOnCameraThread(Callable<Void> callable) throws IOException {
+        try {
+            callOnCameraThread(callable);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 在相机线程执行并等待结果，执行时抛出的异常在调用线程重新抛出。
+     *
+     * @throws IOException 相机线程没有启动。
+     */
+    private <T> T callOnCameraThread(Callable<T> callable) throws Exception {
+        Handler handler = mCameraHandler;
+        if (handler != null && Looper.myLooper() == handler.getLooper()) {
+            return callable.call();
+        }
+        if (!isCameraThreadRunning) {
+            throw new IOException("Camera thread is not running");
+        }
+        FutureTask<T> task = new FutureTask<>(callable);
+        if (!handler.post(task)) {
+            throw new IOException("Camera thread is not running");
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
     /**
      * 获取拍摄方向。
      *
@@ -382,4 +823,41 @@ public class CameraManager extends BaseCameraManager {
         }
     }
 
+    /**
+     * 预览回调的缓冲区及其对应的帧，所有处理器处理完后在相机线程归还给相机。
+     */
+    private static final class PreviewBuffer implements Runnable {
+
+        private final Camera mCamera;
+        private final Handler mHandler;
+        private final byte[] mData;
+        private final Frame mFrame;
+        private final Runnable mReturnTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mCamera.addCallbackBuffer(mData);
+                } catch (RuntimeException e) {
+                    // 相机已经释放，缓冲区不再需要。
+                }
+            }
+        };
+
+        PreviewBuffer(Camera camera, Handler handler, FrameDispatcher dispatcher, byte[] data, int width, int height) {
+            mCamera = camera;
+            mHandler = handler;
+            mData = data;
+            mFrame = dispatcher.createFrame(data, width, height, this);
+        }
+
+        @Override
+        public void run() {
+            if (Looper.myLooper() == mHandler.getLooper()) {
+                mReturnTask.run();
+            } else {
+                mHandler.post(mReturnTask);
+            }
+        }
+    }
+
 }
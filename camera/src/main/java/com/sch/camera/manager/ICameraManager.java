@@ -16,10 +16,18 @@
 
 package com.sch.camera.manager;
 
+import android.graphics.RectF;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.view.MotionEvent;
 
 import com.sch.camera.annotation.Facing;
 import com.sch.camera.annotation.Flash;
+import com.sch.camera.annotation.FrameDelivery;
+import com.sch.camera.frame.FrameProcessor;
+import com.sch.camera.frame.FrameStats;
+import com.sch.camera.frame.LumaAnalyzer;
 import com.sch.camera.listener.OnPictureListener;
 import com.sch.camera.listener.OnVideoListener;
 import com.sch.camera.widget.AutoFitTextureView;
@@ -84,6 +92,69 @@ public interface ICameraManager {
      */
     void takePicture();
 
+    /**
+     * 连拍。不再为每张照片单独对焦测光，每张照片拍摄完成后立即回调 {@link OnPictureListener}。
+     * 连拍的照片同样计入 {@link #setMaxPicturesInFlight(int)} 的限制，超出剩余名额的张数不会拍摄。
+     *
+     * @param count      拍摄张数。
+     * @param intervalMs 两张照片的间隔时间，单位 ms，0 表示尽可能快地拍摄。
+     */
+    void captureBurst(@IntRange(from = 1) int count, @IntRange(from = 0) long intervalMs);
+
+    /**
+     * 设置最多同时处理（已拍摄但尚未保存完毕）的照片数量。
+     * 大于 1 时每张照片保存到独立的文件，下一次拍照只需等待相机完成拍摄，不再等待保存。
+     *
+     * @param count 最多同时处理的照片数量。
+     */
+    void setMaxPicturesInFlight(@IntRange(from = 1) int count);
+
+    /**
+     * 获取最近一次拍照的连拍间隔，即从按下快门到可以再次拍照的时间。
+     *
+     * @return 连拍间隔，单位 ms，还没有拍照时返回 -1。
+     */
+    long getShotToShotLatency();
+
+    /**
+     * 获取最近一次开始打开相机的时间。
+     *
+     * @return SystemClock.elapsedRealtime() 时间，单位 ms，还没有打开相机时返回 -1。
+     */
+    long getOpenStartTime();
+
+    /**
+     * 获取最近一次相机打开完成的时间。
+     *
+     * @return SystemClock.elapsedRealtime() 时间，单位 ms，相机还没有打开时返回 -1。
+     */
+    long getCameraOpenedTime();
+
+    /**
+     * 获取最近一次打开相机后第一帧预览画面到达的时间，与 {@link #getOpenStartTime()} 的差值即首帧耗时。
+     *
+     * @return SystemClock.elapsedRealtime() 时间，单位 ms，还没有预览画面时返回 -1。
+     */
+    long getFirstFrameTime();
+
+    /**
+     * 预热录像，在按下录像按钮时调用，提前创建并准备录像器。
+     * 之后调用 {@link #startVideoRecord()} 时直接使用预热的录像器，不需要录像时调用 {@link #cancelVideoRecordPrewarm()}。
+     */
+    void prewarmVideoRecord();
+
+    /**
+     * 丢弃预热的录像器。
+     */
+    void cancelVideoRecordPrewarm();
+
+    /**
+     * 获取最近一次录像从按下录像按钮（没有预热时从开始录像）到录制第一帧的耗时。
+     *
+     * @return 耗时，单位 ms，还没有录像时返回 -1。
+     */
+    long getVideoStartLatency();
+
     /**
      * 开始摄像。
      *
@@ -98,6 +169,73 @@ public interface ICameraManager {
      */
     void stopVideoRecord() throws Exception;
 
+    /**
+     * 暂停录像，预览会话保持不变。
+     * 录像器支持暂停时编码器继续运行，恢复后时间戳连续；否则结束当前片段，结束录像时无损拼接所有片段。
+     *
+     * @return 是否已暂停，没有在录像或设备不支持时返回 false。
+     */
+    boolean pauseVideoRecord();
+
+    /**
+     * 恢复 {@link #pauseVideoRecord()} 暂停的录像。
+     *
+     * @throws IOException 录制新的片段时，初始化 MediaRecorder 可能抛出异常。
+     */
+    void resumeVideoRecord() throws IOException;
+
+    /**
+     * 录像是否已暂停。
+     */
+    boolean isVideoRecordPaused();
+
+    /**
+     * 录像时拍照，不中断录像，照片通过 {@link OnPictureListener} 回调。
+     * Camera2 在录像会话中直接拍摄，否则截取预览画面。
+     *
+     * @return 是否开始拍照，没有在录像或正在处理的照片达到上限时返回 false。
+     */
+    boolean takeVideoSnapshot();
+
+    /**
+     * 添加预览帧处理器，已添加的处理器不会重复添加。每个处理器在自己的线程处理帧，暂停和恢复相机后仍然有效。
+     * Camera2 输出 YUV_420_888 格式的帧，只在预览时输出，有处理器时录像需要重建会话；旧 API 输出 NV21 格式的帧。
+     *
+     * @param processor     处理器。
+     * @param delivery      分发方式。
+     * @param frameInterval {@link FrameProcessor#DELIVERY_SKIP} 时每多少帧处理一帧，其他方式忽略。
+     */
+    void addFrameProcessor(@NonNull FrameProcessor processor, @FrameDelivery int delivery,
+                           @IntRange(from = 1) int frameInterval);
+
+    /**
+     * 移除预览帧处理器。
+     *
+     * @param processor 处理器。
+     */
+    void removeFrameProcessor(@NonNull FrameProcessor processor);
+
+    /**
+     * 获取预览帧处理器的统计。Camera2 在零延迟拍照的会话和录像时不输出帧，统计不会增加。
+     *
+     * @param processor 处理器。
+     * @return 统计，处理器不存在时返回 null。
+     */
+    @Nullable
+    FrameStats getFrameStats(@NonNull FrameProcessor processor);
+
+    /**
+     * 设置亮度分析器。Camera2 在预览时单独输出一路低分辨率的 YUV 流，分析器只拿到 Y 平面；
+     * 有帧处理器时受输出流组合的限制不再单独输出，改为分析预览尺寸的帧。
+     * 分析的宽度在下次打开相机时生效，区域立即生效。
+     *
+     * @param analyzer 分析器，null 表示移除。
+     * @param width    分析帧的宽度，使用不小于该宽度且与预览比例相同的最小输出尺寸。
+     * @param roi      分析的区域，按帧（未旋转）宽高的比例表示，null 表示整帧。
+     * @return 是否支持，旧 API 不支持。
+     */
+    boolean setLumaAnalyzer(@Nullable LumaAnalyzer analyzer, @IntRange(from = 1) int width, @Nullable RectF roi);
+
     /**
      * 设置拍照监听器。
      *
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.manager;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import com.sch.camera.DefOptions;
+import com.sch.camera.annotation.PersistPolicy;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Created by StoneHui on 2018/9/3.
+ * <p>
+ * 拍摄结果的保存执行器。
+ * <p>
+ * 保存文件、生成缩略图等耗时操作在独立的工作线程中执行，不再占用相机线程。
+ * 队列有容量上限，队列已满时按 {@link PersistPolicy} 处理；任务按优先级执行，优先级数值越小越先执行。
+ */
+class PersistExecutor {
+
+    /**
+     * 优先级，生成缩略图并回调。
+     */
+    static final int PRIORITY_THUMB = 0;
+    /**
+     * 优先级，保存原图。
+     */
+    static final int PRIORITY_PICTURE = 1;
+    /**
+     * 优先级，将文件同步到磁盘。
+     */
+    static final int PRIORITY_SYNC = 2;
+
+    private static final int PRIORITY_COUNT = 3;
+
+    /**
+     * 各优先级的任务队列。
+     */
+    private final ArrayDeque<Task>[] mQueues;
+    private final Object mLock = new Object();
+
+    private final int mThreadCount;
+    private final int mQueueSize;
+    @PersistPolicy
+    private final int mPolicy;
+
+    /**
+     * 队列中的任务数量。
+     */
+    private int mSize = 0;
+    private boolean isRunning = false;
+    /**
+     * 工作线程的代数，每次启动加一。上一代工作线程发现代数变化后不再取任务，执行完手上的任务即退出。
+     */
+    private int mGeneration = 0;
+    /**
+     * 所有尚未退出的工作线程，包括仍在执行任务的上一代工作线程。
+     */
+    private final Set<Thread> mWorkers = new HashSet<>();
+
+    /**
+     * 初始化。
+     *
+     * @param options 配置项。
+     */
+    @SuppressWarnings("unchecked")
+    PersistExecutor(@NonNull DefOptions options) {
+        mThreadCount = Math.max(1, options.getPersistThreadCount());
+        mQueueSize = Math.max(1, options.getPersistQueueSize());
+        mPolicy = options.getPersistPolicy();
+        mQueues = new ArrayDeque[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mQueues[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * 启动工作线程。
+     */
+    void start() {
+        synchronized (mLock) {
+            if (isRunning) {
+                return;
+            }
+            isRunning = true;
+            final int generation = ++mGeneration;
+            for (int i = 0; i < mThreadCount; i++) {
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        try {
+                            loop(generation);
+                        } finally {
+                            synchronized (mLock) {
+                                mWorkers.remove(Thread.currentThread());
+                            }
+                        }
+                    }
+                }, "CameraPersist-" + i);
+                mWorkers.add(worker);
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * 停止工作线程，已提交的任务会先执行完毕。
+     */
+    void shutdown() {
+        synchronized (mLock) {
+            isRunning = false;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * 提交任务。执行器未启动时直接在当前线程执行。
+     *
+     * @param task     任务。
+     * @param priority 优先级。
+     * @return 任务是否被接受，被拒绝的任务会回调 {@link Task#discard()}。
+     */
+    boolean execute(@NonNull Task task, int priority) {
+        Task dropped = null;
+        boolean runInline = false;
+        synchronized (mLock) {
+            // 工作线程提交的后续任务不受容量限制，避免工作线程等待自己而死锁。
+            boolean isWorker = isWorkerThread();
+            while (isRunning && !isWorker && mSize >= mQueueSize && mPolicy == DefOptions.PERSIST_POLICY_BLOCK) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (!isRunning) {
+                runInline = true;
+            } else {
+                if (!isWorker && mSize >= mQueueSize && mPolicy == DefOptions.PERSIST_POLICY_DROP_OLDEST) {
+                    dropped = pollLowestPriority(priority);
+                }
+                if (!isWorker && mSize >= mQueueSize) {
+                    // 没有可丢弃的任务，拒绝新任务。
+                    dropped = task;
+                } else {
+                    mQueues[priority].offer(task);
+                    mSize++;
+                    mLock.notifyAll();
+                }
+            }
+        }
+        if (runInline) {
+            task.run();
+            return true;
+        }
+        if (dropped != null) {
+            dropped.discard();
+        }
+        return dropped != task;
+    }
+
+    /**
+     * 提交不受容量限制的任务，不会阻塞提交的线程，也不会被丢弃。
+     * 用于不能丢弃、提交线程又不能等待的任务，如编码线程回调的视频分段。执行器未启动时直接在当前线程执行。
+     *
+     * @param task     任务。
+     * @param priority 优先级。
+     */
+    void executeUnbounded(@NonNull Task task, int priority) {
+        synchronized (mLock) {
+            if (isRunning) {
+                mQueues[priority].offer(task);
+                mSize++;
+                mLock.notifyAll();
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * 当前线程是否是工作线程。
+     */
+    private boolean isWorkerThread() {
+        return mWorkers.contains(Thread.currentThread());
+    }
+
+    /**
+     * 从优先级最低的非空队列中取出最早提交的任务，只考虑优先级不高于指定优先级的队列。
+     * 因此同步任务最先被丢弃，其次是保存原图的任务。
+     */
+    private Task pollLowestPriority(int priority) {
+        for (int i = PRIORITY_COUNT - 1; i >= priority; i--) {
+            if (!mQueues[i].isEmpty()) {
+                mSize--;
+                return mQueues[i].poll();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 工作线程循环执行任务。
+     *
+     * @param generation 工作线程所属的代数。
+     */
+    private void loop(int generation) {
+        while (true) {
+            Task task = null;
+            synchronized (mLock) {
+                while (mSize == 0 && isRunning && generation == mGeneration) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (generation != mGeneration || mSize == 0) {
+                    // 已被新一代工作线程取代，或已停止且队列为空。
+                    return;
+                }
+                for (ArrayDeque<Task> queue : mQueues) {
+                    if (!queue.isEmpty()) {
+                        task = queue.poll();
+                        break;
+                    }
+                }
+                mSize--;
+                mLock.notifyAll();
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 保存任务。
+     */
+    static abstract class Task implements Runnable {
+
+        /**
+         * 任务被丢弃时的回调，用于释放任务持有的资源。
+         */
+        void discard() {
+        }
+
+    }
+
+}
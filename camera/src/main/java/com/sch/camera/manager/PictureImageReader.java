@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera.manager;
+
+import android.media.Image;
+import android.media.ImageReader;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * 拍照用的 ImageReader，记录已获取但未释放的 Image 数量。
+ * <p>
+ * 关闭 ImageReader 会使它的所有 Image 失效，因此关闭时仍有 Image 在保存线程中时，
+ * 推迟到最后一个 Image 释放后，由释放它的线程关闭 ImageReader，调用方无需等待保存完成。
+ */
+class PictureImageReader {
+
+    private final ImageReader mReader;
+
+    /**
+     * 已获取但未释放的 Image 数量。
+     */
+    private int mAcquiredCount = 0;
+    private boolean isClosed = false;
+
+    /**
+     * 初始化。
+     *
+     * @param reader ImageReader。
+     */
+    PictureImageReader(@NonNull ImageReader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * 获取 ImageReader。
+     */
+    @NonNull
+    ImageReader getReader() {
+        return mReader;
+    }
+
+    /**
+     * 获取下一张图片，已关闭时返回 null。
+     */
+    @Nullable
+    synchronized Image acquireNextImage() {
+        if (isClosed) {
+            return null;
+        }
+        Image image;
+        try {
+            image = mReader.acquireNextImage();
+        } catch (IllegalStateException e) {
+            // 已达到 maxImages。
+            e.printStackTrace();
+            return null;
+        }
+        if (image != null) {
+            mAcquiredCount++;
+        }
+        return image;
+    }
+
+    /**
+     * 获取已获取但未释放的 Image 数量。
+     */
+    synchronized int getAcquiredCount() {
+        return mAcquiredCount;
+    }
+
+    /**
+     * 释放图片，ImageReader 已关闭且这是最后一张图片时同时关闭 ImageReader。
+     *
+     * @param image 由 {@link #acquireNextImage()} 获取的图片。
+     */
+    void release(@NonNull Image image) {
+        boolean shouldClose;
+        synchronized (this) {
+            image.close();
+            mAcquiredCount--;
+            shouldClose = isClosed && mAcquiredCount == 0;
+        }
+        if (shouldClose) {
+            mReader.close();
+        }
+    }
+
+    /**
+     * 关闭 ImageReader。仍有图片未释放时推迟到最后一张图片释放后关闭。
+     */
+    void close() {
+        mReader.setOnImageAvailableListener(null, null);
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            if (mAcquiredCount > 0) {
+                return;
+            }
+        }
+        mReader.close();
+    }
+
+}
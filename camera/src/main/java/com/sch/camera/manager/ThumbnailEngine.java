@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.manager;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sch.camera.ExifHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Created by StoneHui on 2018/9/10.
+ * <p>
+ * 缩略图生成器。
+ * <p>
+ * 直接使用内存中的 JPEG 数据生成缩略图，优先使用 EXIF 中内嵌的缩略图；
+ * 根据目标尺寸计算采样率，并通过 inBitmap 复用解码用的 Bitmap。
+ */
+class ThumbnailEngine {
+
+    /**
+     * 默认的缩略图目标尺寸（长边），单位 px。
+     */
+    static final int DEFAULT_TARGET_SIZE = 320;
+
+    /**
+     * 缩略图的压缩质量。
+     */
+    private static final int THUMB_QUALITY = 90;
+
+    /**
+     * 最多缓存的 Bitmap 数量。
+     */
+    private static final int MAX_POOL_SIZE = 2;
+
+    private final int mTargetSize;
+
+    private final ArrayDeque<Bitmap> mBitmapPool = new ArrayDeque<>();
+
+    /**
+     * 初始化。
+     *
+     * @param targetSize 缩略图目标尺寸（长边），单位 px。
+     */
+    ThumbnailEngine(int targetSize) {
+        mTargetSize = targetSize;
+    }
+
+    /**
+     * 生成缩略图并保存。
+     *
+     * @param jpeg        JPEG 数据，position 到 limit 之间的内容，不会被修改。
+     * @param orientation 缩略图需要应用的 EXIF 方向。
+     * @param thumbFile   缩略图文件。
+     * @return 缩略图文件，生成失败时返回 null。
+     */
+    @Nullable
+    File createThumbnail(@NonNull ByteBuffer jpeg, int orientation, @NonNull File thumbFile) {
+        Bitmap decoded = decode(jpeg);
+        if (decoded == null) {
+            return null;
+        }
+        Bitmap thumb = decoded;
+        Matrix matrix = ExifHelper.getOrientationMatrix(orientation);
+        if (matrix != null) {
+            thumb = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, false);
+        }
+        boolean isSaved = save(thumb, thumbFile);
+        if (thumb != decoded) {
+            thumb.recycle();
+        }
+        release(decoded);
+        return isSaved ? thumbFile : null;
+    }
+
+    /**
+     * 清空 Bitmap 缓存。
+     */
+    synchronized void clear() {
+        for (Bitmap bitmap : mBitmapPool) {
+            bitmap.recycle();
+        }
+        mBitmapPool.clear();
+    }
+
+    /**
+     * 解码缩略图，EXIF 内嵌的缩略图足够大时直接使用。
+     */
+    @Nullable
+    private Bitmap decode(ByteBuffer jpeg) {
+        ByteBuffer embedded = ExifHelper.getThumbnail(jpeg);
+        if (embedded != null) {
+            BitmapFactory.Options options = decodeBounds(embedded);
+            if (Math.max(options.outWidth, options.outHeight) >= mTargetSize) {
+                Bitmap bitmap = decode(embedded, options);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+            }
+        }
+        BitmapFactory.Options options = decodeBounds(jpeg);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        return decode(jpeg, options);
+    }
+
+    /**
+     * 解码图片尺寸。
+     */
+    private BitmapFactory.Options decodeBounds(ByteBuffer data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+        return options;
+    }
+
+    /**
+     * 按目标尺寸采样解码。
+     *
+     * @param data    图片数据。
+     * @param options 已解码尺寸的配置。
+     */
+    @Nullable
+    private Bitmap decode(ByteBuffer data, BitmapFactory.Options options) {
+        int sampleSize = calculateSampleSize(options.outWidth, options.outHeight, mTargetSize);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // KITKAT 之前 inBitmap 要求尺寸完全相同且 inSampleSize 为 1，不复用。
+            options.inBitmap = acquire(
+                    (options.outWidth / sampleSize + 1) * (options.outHeight / sampleSize + 1) * 4);
+        }
+        try {
+            return BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+        } catch (IllegalArgumentException e) {
+            // inBitmap 不可用，重新分配。
+            if (options.inBitmap == null) {
+                return null;
+            }
+            options.inBitmap = null;
+            return BitmapFactory.decodeStream(new ByteBufferInputStream(data), null, options);
+        }
+    }
+
+    /**
+     * 计算采样率，保证采样后的长边不小于目标尺寸。
+     *
+     * @param width      图片宽度。
+     * @param height     图片高度。
+     * @param targetSize 目标尺寸（长边）。
+     * @return 2 的幂次的采样率。
+     */
+    static int calculateSampleSize(int width, int height, int targetSize) {
+        int longSide = Math.max(width, height);
+        int sampleSize = 1;
+        while (longSide / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 从缓存中获取不小于指定字节数的 Bitmap。
+     */
+    @Nullable
+    private synchronized Bitmap acquire(int byteCount) {
+        Iterator<Bitmap> iterator = mBitmapPool.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getAllocationByteCount() >= byteCount) {
+                iterator.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 回收 Bitmap 到缓存中。
+     */
+    private synchronized void release(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || !bitmap.isMutable()
+                || mBitmapPool.size() >= MAX_POOL_SIZE) {
+            bitmap.recycle();
+            return;
+        }
+        mBitmapPool.offer(bitmap);
+    }
+
+    /**
+     * 保存缩略图。
+     */
+    private boolean save(Bitmap bitmap, File file) {
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(file);
+            return bitmap.compress(Bitmap.CompressFormat.JPEG, THUMB_QUALITY, fos);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            try {
+                if (fos != null) {
+                    fos.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 读取 ByteBuffer 的输入流，不复制数据。
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] bytes, int offset, int length) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, mBuffer.remaining());
+            mBuffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sch.camera.manager;
+
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Created by StoneHui on 2018/9/6.
+ * <p>
+ * 零延迟拍照（ZSL）的环形缓冲区，保存最近的若干帧图片及其拍摄结果。
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+class ZslRingBuffer {
+
+    /**
+     * 最多保存的图片数量。
+     */
+    private final int mSize;
+
+    private final ArrayDeque<Image> mImages;
+    private final ArrayDeque<TotalCaptureResult> mResults;
+
+    /**
+     * 初始化。
+     *
+     * @param size 最多保存的图片数量。ImageReader 的 maxImages 至少需要 size + 2。
+     */
+    ZslRingBuffer(int size) {
+        mSize = size;
+        mImages = new ArrayDeque<>(size);
+        mResults = new ArrayDeque<>(size * 2);
+    }
+
+    /**
+     * 添加图片，缓冲区已满时释放最早的图片。
+     *
+     * @param image 图片。
+     */
+    synchronized void add(Image image) {
+        trim();
+        mImages.offer(image);
+    }
+
+    /**
+     * 缓冲区已满时释放最早的图片，为获取新图片腾出 ImageReader 的空间。
+     */
+    synchronized void trim() {
+        while (mImages.size() >= mSize) {
+            mImages.poll().close();
+        }
+    }
+
+    /**
+     * 添加拍摄结果，用于重处理。
+     *
+     * @param result 拍摄结果。
+     */
+    synchronized void addResult(TotalCaptureResult result) {
+        while (mResults.size() >= mSize * 2) {
+            mResults.poll();
+        }
+        mResults.offer(result);
+    }
+
+    /**
+     * 取出时间戳与指定时间最接近的图片，取出的图片由调用方释放。
+     *
+     * @param timestamp 时间戳，单位 ns，小于 0 时取出最新的图片。
+     * @return 图片，缓冲区为空时返回 null。
+     */
+    @Nullable
+    synchronized Image take(long timestamp) {
+        if (mImages.isEmpty()) {
+            return null;
+        }
+        if (timestamp < 0) {
+            return mImages.pollLast();
+        }
+        Image closest = null;
+        long minDiff = Long.MAX_VALUE;
+        for (Image image : mImages) {
+            long diff = Math.abs(image.getTimestamp() - timestamp);
+            if (diff < minDiff) {
+                minDiff = diff;
+                closest = image;
+            }
+        }
+        mImages.remove(closest);
+        return closest;
+    }
+
+    /**
+     * 查找指定时间戳（CaptureResult.SENSOR_TIMESTAMP）对应的拍摄结果。
+     *
+     * @param timestamp 图片的时间戳。
+     * @return 拍摄结果，没有找到时返回 null。
+     */
+    @Nullable
+    synchronized TotalCaptureResult findResult(long timestamp) {
+        Iterator<TotalCaptureResult> iterator = mResults.descendingIterator();
+        while (iterator.hasNext()) {
+            TotalCaptureResult result = iterator.next();
+            Long sensorTimestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (sensorTimestamp != null && sensorTimestamp == timestamp) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 释放所有图片并清空缓冲区。
+     */
+    synchronized void clear() {
+        for (Image image : mImages) {
+            image.close();
+        }
+        mImages.clear();
+        mResults.clear();
+    }
+
+}
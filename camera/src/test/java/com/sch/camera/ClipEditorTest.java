@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * {@link ClipEditor} 参数检查的单元测试，检查在创建输出文件之前进行，不需要真实的视频。
+ */
+public class ClipEditorTest {
+
+    private static final File INPUT = new File("input.mp4");
+    private static final File OUTPUT = new File("output.mp4");
+
+    @Test
+    public void checkClips_valid() {
+        ClipEditor.checkClips(Collections.singletonList(INPUT), new long[]{0}, new long[]{1000}, OUTPUT);
+        ClipEditor.checkClips(Arrays.asList(INPUT, new File("input2.mp4")), new long[]{0, 500},
+                new long[]{Long.MAX_VALUE, Long.MAX_VALUE}, OUTPUT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkClips_noInput() {
+        ClipEditor.checkClips(Collections.<File>emptyList(), new long[0], new long[0], OUTPUT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkClips_negativeStart() {
+        ClipEditor.checkClips(Collections.singletonList(INPUT), new long[]{-1}, new long[]{1000}, OUTPUT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkClips_endNotAfterStart() {
+        ClipEditor.checkClips(Collections.singletonList(INPUT), new long[]{1000}, new long[]{1000}, OUTPUT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkClips_outputIsInput() {
+        List<File> inputs = Arrays.asList(new File("input2.mp4"), new File(INPUT.getAbsolutePath()));
+        ClipEditor.checkClips(inputs, new long[]{0, 0}, new long[]{Long.MAX_VALUE, Long.MAX_VALUE}, INPUT);
+    }
+
+}
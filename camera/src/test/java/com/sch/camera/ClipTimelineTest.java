@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import org.junit.Test;
+
+import static com.sch.camera.ClipTimeline.TRACK_AUDIO;
+import static com.sch.camera.ClipTimeline.TRACK_VIDEO;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * {@link ClipTimeline} 的单元测试。
+ */
+public class ClipTimelineTest {
+
+    /**
+     * 关键帧每秒一个，数组末尾的空位不计入关键帧数量。
+     */
+    private static final long[] KEY_FRAMES_US = {1000000, 2000000, 3000000, 4000000, 0, 0};
+    private static final int KEY_FRAME_COUNT = 4;
+
+    @Test
+    public void alignToKeyFrame_beforeFirstKeyFrame() {
+        assertEquals(1000000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, 0));
+        assertEquals(1000000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, 999999));
+    }
+
+    @Test
+    public void alignToKeyFrame_exactHit() {
+        for (int i = 0; i < KEY_FRAME_COUNT; i++) {
+            assertEquals(KEY_FRAMES_US[i], ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, KEY_FRAMES_US[i]));
+        }
+    }
+
+    @Test
+    public void alignToKeyFrame_betweenKeyFrames() {
+        assertEquals(1000000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, 1000001));
+        assertEquals(2000000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, 2500000));
+        assertEquals(3000000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, 3999999));
+    }
+
+    @Test
+    public void alignToKeyFrame_afterLastKeyFrame() {
+        // 数组中 count 之后的值不参与查找。
+        assertEquals(4000000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, 4000001));
+        assertEquals(4000000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, KEY_FRAME_COUNT, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void alignToKeyFrame_noKeyFrame() {
+        assertEquals(2500000, ClipTimeline.alignToKeyFrame(KEY_FRAMES_US, 0, 2500000));
+        assertEquals(2500000, ClipTimeline.alignToKeyFrame(new long[0], -1, 2500000));
+    }
+
+    @Test
+    public void map_outOfRange() {
+        ClipTimeline timeline = new ClipTimeline(2000000, 3000000, 0);
+        assertEquals(-1, timeline.map(TRACK_VIDEO, 1999999));
+        assertEquals(-1, timeline.map(TRACK_VIDEO, 3000000));
+        assertEquals(-1, timeline.map(TRACK_AUDIO, 3500000));
+        assertEquals(0, timeline.map(TRACK_VIDEO, 2000000));
+        assertEquals(999999, timeline.map(TRACK_AUDIO, 2999999));
+    }
+
+    @Test
+    public void map_rebasesOnOffset() {
+        // 第二个片段接在 5s 之后输出。
+        ClipTimeline timeline = new ClipTimeline(2000000, Long.MAX_VALUE, 5000000);
+        assertEquals(5000000, timeline.map(TRACK_VIDEO, 2000000));
+        assertEquals(5033333, timeline.map(TRACK_VIDEO, 2033333));
+        assertEquals(5500000, timeline.map(TRACK_AUDIO, 2500000));
+    }
+
+    @Test
+    public void getOutputEndUs_empty() {
+        ClipTimeline timeline = new ClipTimeline(0, 1000000, 7000000);
+        assertEquals(7000000, timeline.getOutputEndUs());
+    }
+
+    @Test
+    public void getOutputEndUs_videoOnly() {
+        ClipTimeline timeline = new ClipTimeline(1000000, Long.MAX_VALUE, 0);
+        for (long timeUs = 1000000; timeUs < 2000000; timeUs += 40000) {
+            timeline.map(TRACK_VIDEO, timeUs);
+        }
+        // 最后一帧 1960000，加上帧间隔 40000。
+        assertEquals(1000000, timeline.getOutputEndUs());
+    }
+
+    @Test
+    public void getOutputEndUs_bothTracks() {
+        ClipTimeline timeline = new ClipTimeline(1000000, Long.MAX_VALUE, 3000000);
+        for (long timeUs = 1000000; timeUs < 2000000; timeUs += 40000) {
+            timeline.map(TRACK_VIDEO, timeUs);
+        }
+        for (long timeUs = 1000000; timeUs < 2050000; timeUs += 23220) {
+            timeline.map(TRACK_AUDIO, timeUs);
+        }
+        // 音频最后一帧 1000000 + 45 * 23220 = 2044900，晚于视频，结束时间取音频。
+        assertEquals(2044900 + 23220 - 1000000 + 3000000, timeline.getOutputEndUs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyRange() {
+        new ClipTimeline(1000000, 1000000, 0);
+    }
+
+}
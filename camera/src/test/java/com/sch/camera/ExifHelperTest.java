@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * {@link ExifHelper} 的单元测试，只使用 ByteBuffer 接口，不依赖 Android 运行环境。
+ */
+public class ExifHelperTest {
+
+    private static final byte[] SOI = {(byte) 0xFF, (byte) 0xD8};
+    private static final byte[] APP0 = {
+            (byte) 0xFF, (byte) 0xE0, 0x00, 0x10,
+            'J', 'F', 'I', 'F', 0x00, 0x01, 0x01, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00
+    };
+    /**
+     * 代替图像数据的 DQT 段和 SOS 之后的内容，只需要能被跳过。
+     */
+    private static final byte[] BODY = {
+            (byte) 0xFF, (byte) 0xDB, 0x00, 0x04, 0x01, 0x02,
+            (byte) 0xFF, (byte) 0xDA, 0x00, 0x02, 0x55, 0x66, (byte) 0xFF, (byte) 0xD9
+    };
+
+    @Test
+    public void mirrorOrientationFlipsDisplayedImage() {
+        int[] expected = {0, 2, 1, 4, 3, 6, 5, 8, 7};
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            assertEquals("orientation " + orientation, expected[orientation], ExifHelper.mirrorOrientation(orientation));
+        }
+        // 无效的方向按正常处理。
+        assertEquals(2, ExifHelper.mirrorOrientation(0));
+        assertEquals(2, ExifHelper.mirrorOrientation(9));
+    }
+
+    @Test
+    public void mirrorInsertsApp1AfterApp0() {
+        byte[] jpeg = concat(SOI, APP0, BODY);
+        byte[] mirrored = join(ExifHelper.mirror(ByteBuffer.wrap(jpeg)));
+        assertEquals(2, ExifHelper.getOrientation(ByteBuffer.wrap(mirrored)));
+        // APP0 仍然紧跟 SOI，原数据原样保留在 APP1 两侧。
+        assertArrayEquals(concat(SOI, APP0), copyOf(mirrored, 0, SOI.length + APP0.length));
+        assertEquals(0xE1, mirrored[SOI.length + APP0.length + 1] & 0xFF);
+        assertArrayEquals(BODY, copyOf(mirrored, mirrored.length - BODY.length, mirrored.length));
+    }
+
+    @Test
+    public void mirrorInsertsApp1AfterSoiWithoutApp0() {
+        byte[] jpeg = concat(SOI, BODY);
+        byte[] mirrored = join(ExifHelper.mirror(ByteBuffer.wrap(jpeg)));
+        assertEquals(2, ExifHelper.getOrientation(ByteBuffer.wrap(mirrored)));
+        assertEquals(0xE1, mirrored[SOI.length + 1] & 0xFF);
+        assertArrayEquals(BODY, copyOf(mirrored, mirrored.length - BODY.length, mirrored.length));
+    }
+
+    @Test
+    public void mirrorRewritesOrientationTag() {
+        int[][] cases = {{6, 5}, {8, 7}, {1, 2}, {3, 4}};
+        for (boolean littleEndian : new boolean[]{false, true}) {
+            for (int[] pair : cases) {
+                byte[] jpeg = concat(SOI, exifApp1(pair[0], littleEndian), BODY);
+                assertEquals(pair[0], ExifHelper.getOrientation(ByteBuffer.wrap(jpeg)));
+                ByteBuffer[] segments = ExifHelper.mirror(ByteBuffer.wrap(jpeg));
+                assertNotNull(segments);
+                byte[] mirrored = join(segments);
+                // 只修改标签值，长度不变。
+                assertEquals(jpeg.length, mirrored.length);
+                assertEquals(pair[1], ExifHelper.getOrientation(ByteBuffer.wrap(mirrored)));
+            }
+        }
+    }
+
+    @Test
+    public void mirrorRespectsBufferPosition() {
+        byte[] jpeg = concat(new byte[]{1, 2, 3}, SOI, exifApp1(6, false), BODY);
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg);
+        buffer.position(3);
+        byte[] mirrored = join(ExifHelper.mirror(buffer));
+        assertEquals(jpeg.length - 3, mirrored.length);
+        assertEquals(5, ExifHelper.getOrientation(ByteBuffer.wrap(mirrored)));
+    }
+
+    @Test
+    public void mirrorRejectsInvalidJpeg() {
+        assertNull(ExifHelper.mirror(ByteBuffer.wrap(new byte[]{0x00, 0x01, 0x02, 0x03})));
+    }
+
+    /**
+     * 只有 IFD0 且只有方向标签的 EXIF APP1 段。
+     */
+    private static byte[] exifApp1(int orientation, boolean littleEndian) {
+        ByteBuffer tiff = ByteBuffer.allocate(26);
+        tiff.order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        tiff.put(littleEndian ? (byte) 'I' : (byte) 'M').put(littleEndian ? (byte) 'I' : (byte) 'M');
+        tiff.putShort((short) 0x2A).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+        byte[] header = {(byte) 0xFF, (byte) 0xE1, 0x00, (byte) (2 + 6 + 26), 'E', 'x', 'i', 'f', 0x00, 0x00};
+        return concat(header, tiff.array());
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.write(part, 0, part.length);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] join(ByteBuffer[] segments) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (ByteBuffer segment : segments) {
+            byte[] bytes = new byte[segment.remaining()];
+            segment.duplicate().get(bytes);
+            output.write(bytes, 0, bytes.length);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] copyOf(byte[] bytes, int from, int to) {
+        byte[] copy = new byte[to - from];
+        System.arraycopy(bytes, from, copy, 0, copy.length);
+        return copy;
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera.frame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * {@link FrameKernels} 的单元测试，只使用数组和 ByteBuffer 接口，不依赖 Android 运行环境。
+ */
+public class FrameKernelsTest {
+
+    /**
+     * 定点数颜色转换与浮点参考值允许的误差。
+     */
+    private static final int COLOR_TOLERANCE = 2;
+
+    private FrameKernels mKernels;
+    private FrameKernels mParallelKernels;
+
+    @Before
+    public void setUp() {
+        mKernels = new FrameKernels(1);
+        mParallelKernels = new FrameKernels(4);
+    }
+
+    @After
+    public void tearDown() {
+        mKernels.release();
+        mParallelKernels.release();
+    }
+
+    @Test
+    public void nv21ToArgbMatchesReference() {
+        int width = 6;
+        int height = 4;
+        byte[] nv21 = randomBytes(width * height * 3 / 2, 1);
+        int[] argb = new int[width * height];
+        mKernels.nv21ToArgb(nv21, width, height, argb);
+        int frameSize = width * height;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int uvIndex = frameSize + (row / 2) * width + (col / 2) * 2;
+                assertColor(referenceArgb(nv21[row * width + col], nv21[uvIndex + 1], nv21[uvIndex]),
+                        argb[row * width + col]);
+            }
+        }
+    }
+
+    @Test
+    public void nv21ChromaOrderIsVu() {
+        int width = 2;
+        int height = 2;
+        // 亮度居中，第一个色度字节（V）最大，第二个（U）居中：结果偏红，蓝色不变。
+        byte[] nv21 = {(byte) 128, (byte) 128, (byte) 128, (byte) 128, (byte) 255, (byte) 128};
+        int[] argb = new int[width * height];
+        mKernels.nv21ToArgb(nv21, width, height, argb);
+        for (int color : argb) {
+            assertEquals(0xFF, color >>> 24);
+            assertEquals(255, (color >> 16) & 0xFF);
+            assertEquals(128, color & 0xFF);
+        }
+    }
+
+    @Test
+    public void yuv420SemiPlanarWithRowPadding() {
+        // 奇数宽高，行跨度大于宽度，U、V 交错存放（NV12），像素跨度为 2。
+        int width = 5;
+        int height = 3;
+        int yRowStride = 8;
+        int uvRowStride = 8;
+        byte[] y = randomBytes(yRowStride * height, 2);
+        byte[] uv = randomBytes(uvRowStride * 2, 3);
+        ByteBuffer uPlane = ByteBuffer.wrap(uv, 0, uv.length - 1).slice();
+        ByteBuffer vPlane = ByteBuffer.wrap(uv, 1, uv.length - 1).slice();
+        int[] argb = new int[width * height];
+        mKernels.yuv420ToArgb(ByteBuffer.wrap(y), yRowStride, 1, uPlane, vPlane, uvRowStride, 2, width, height, argb);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int uvIndex = (row / 2) * uvRowStride + (col / 2) * 2;
+                assertColor(referenceArgb(y[row * yRowStride + col], uv[uvIndex], uv[uvIndex + 1]),
+                        argb[row * width + col]);
+            }
+        }
+    }
+
+    @Test
+    public void yuv420PlanarWithRowPadding() {
+        // 奇数宽高，三个平面分开存放（I420），色度行跨度大于色度宽度。
+        int width = 5;
+        int height = 3;
+        int yRowStride = 7;
+        int uvRowStride = 4;
+        byte[] y = randomBytes(yRowStride * height, 4);
+        byte[] u = randomBytes(uvRowStride * 2, 5);
+        byte[] v = randomBytes(uvRowStride * 2, 6);
+        int[] argb = new int[width * height];
+        mKernels.yuv420ToArgb(ByteBuffer.wrap(y), yRowStride, 1, ByteBuffer.wrap(u), ByteBuffer.wrap(v),
+                uvRowStride, 1, width, height, argb);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int uvIndex = (row / 2) * uvRowStride + col / 2;
+                assertColor(referenceArgb(y[row * yRowStride + col], u[uvIndex], v[uvIndex]),
+                        argb[row * width + col]);
+            }
+        }
+    }
+
+    @Test
+    public void yuv420MatchesNv21WithSameLayout() {
+        // 按 NV21 的内存布局传入三个平面，结果与 nv21ToArgb 完全相同。
+        int width = 16;
+        int height = 8;
+        int frameSize = width * height;
+        byte[] nv21 = randomBytes(frameSize * 3 / 2, 7);
+        ByteBuffer yPlane = ByteBuffer.wrap(nv21, 0, frameSize).slice();
+        ByteBuffer vPlane = ByteBuffer.wrap(nv21, frameSize, frameSize / 2).slice();
+        ByteBuffer uPlane = ByteBuffer.wrap(nv21, frameSize + 1, frameSize / 2 - 1).slice();
+        int[] expected = new int[frameSize];
+        int[] actual = new int[frameSize];
+        mKernels.nv21ToArgb(nv21, width, height, expected);
+        mKernels.yuv420ToArgb(yPlane, width, 1, uPlane, vPlane, width, 2, width, height, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void yuv420ToLumaWithStrides() {
+        int width = 5;
+        int height = 3;
+        int yRowStride = 12;
+        int yPixelStride = 2;
+        byte[] y = randomBytes(yRowStride * height, 8);
+        byte[] luma = new byte[width * height];
+        mKernels.yuv420ToLuma(ByteBuffer.wrap(y), yRowStride, yPixelStride, width, height, luma);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                assertEquals(y[row * yRowStride + col * yPixelStride], luma[row * width + col]);
+            }
+        }
+    }
+
+    @Test
+    public void downscaleBoxByTwo() {
+        byte[] src = {
+                0, 2, 10, 20,
+                4, 6, 30, 40,
+                1, 1, 100, 100,
+                1, 2, (byte) 200, (byte) 200,
+        };
+        byte[] dst = new byte[4];
+        mKernels.downscaleBox(src, 4, 4, dst, 2, 2);
+        assertArrayEquals(new byte[]{3, 25, 1, (byte) 150}, dst);
+    }
+
+    @Test
+    public void downscaleBoxByThree() {
+        byte[] src = {
+                0, 10, 20, 30, 40, 50,
+                0, 10, 20, 30, 40, 50,
+                0, 10, 20, 30, 40, 50,
+        };
+        byte[] dst = new byte[2];
+        mKernels.downscaleBox(src, 6, 3, dst, 2, 1);
+        assertArrayEquals(new byte[]{10, 40}, dst);
+    }
+
+    @Test
+    public void downscaleBoxByNonIntegerFactor() {
+        // 7 -> 3：区域依次为 [0, 2)、[2, 4)、[4, 7)。
+        byte[] src = {0, 10, 20, 30, 40, 50, 60};
+        byte[] dst = new byte[3];
+        mKernels.downscaleBox(src, 7, 1, dst, 3, 1);
+        assertArrayEquals(new byte[]{5, 25, 50}, dst);
+    }
+
+    @Test
+    public void downscaleBoxArgbAveragesEachChannel() {
+        int[] src = {
+                0xFF000000, 0xFF0408FF,
+                0x00102030, 0x00000000,
+        };
+        int[] dst = new int[1];
+        mKernels.downscaleBox(src, 2, 2, dst, 1, 1);
+        assertEquals(0x7F050A4B, dst[0]);
+    }
+
+    @Test
+    public void downscaleBilinearSameSizeIsIdentity() {
+        byte[] src = randomBytes(7 * 5, 9);
+        byte[] dst = new byte[src.length];
+        mKernels.downscaleBilinear(src, 7, 5, dst, 7, 5);
+        assertArrayEquals(src, dst);
+    }
+
+    @Test
+    public void downscaleBilinearByTwoAveragesQuads() {
+        int width = 8;
+        int height = 6;
+        byte[] src = randomBytes(width * height, 10);
+        byte[] dst = new byte[width * height / 4];
+        mKernels.downscaleBilinear(src, width, height, dst, width / 2, height / 2);
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                int index = row * 2 * width + col * 2;
+                int sum = (src[index] & 0xFF) + (src[index + 1] & 0xFF)
+                        + (src[index + width] & 0xFF) + (src[index + width + 1] & 0xFF);
+                assertEquals((sum + 2) / 4, dst[row * width / 2 + col] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void downscaleBilinearArgbKeepsSolidColor() {
+        int[] src = new int[9 * 7];
+        Arrays.fill(src, 0x80402010);
+        int[] dst = new int[4 * 3];
+        mKernels.downscaleBilinear(src, 9, 7, dst, 4, 3);
+        for (int color : dst) {
+            assertEquals(0x80402010, color);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downscaleRejectsEmptySize() {
+        mKernels.downscaleBilinear(new byte[4], 2, 2, new byte[4], 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downscaleBoxRejectsUpscale() {
+        mKernels.downscaleBox(new byte[4], 2, 2, new byte[9], 3, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nv21ToArgbRejectsShortInput() {
+        mKernels.nv21ToArgb(new byte[4 * 4], 4, 4, new int[4 * 4]);
+    }
+
+    @Test
+    public void parallelResultsMatchSingleThread() {
+        // 行数足够多时分给多个线程，分段边界不影响结果。
+        int width = 64;
+        int height = 200;
+        byte[] nv21 = randomBytes(width * height * 3 / 2, 11);
+        int[] expected = new int[width * height];
+        int[] actual = new int[width * height];
+        mKernels.nv21ToArgb(nv21, width, height, expected);
+        mParallelKernels.nv21ToArgb(nv21, width, height, actual);
+        assertArrayEquals(expected, actual);
+
+        int[] expectedBox = new int[21 * 67];
+        int[] actualBox = new int[21 * 67];
+        mKernels.downscaleBox(expected, width, height, expectedBox, 21, 67);
+        mParallelKernels.downscaleBox(expected, width, height, actualBox, 21, 67);
+        assertArrayEquals(expectedBox, actualBox);
+
+        byte[] expectedLuma = new byte[30 * 90];
+        byte[] actualLuma = new byte[30 * 90];
+        mKernels.downscaleBilinear(nv21, width, height, expectedLuma, 30, 90);
+        mParallelKernels.downscaleBilinear(nv21, width, height, actualLuma, 30, 90);
+        assertArrayEquals(expectedLuma, actualLuma);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * BT.601 全范围的浮点参考实现。
+     */
+    private static int referenceArgb(byte yByte, byte uByte, byte vByte) {
+        double y = yByte & 0xFF;
+        double u = (uByte & 0xFF) - 128;
+        double v = (vByte & 0xFF) - 128;
+        return 0xFF000000 | (clamp(y + 1.402 * v) << 16)
+                | (clamp(y - 0.344136 * u - 0.714136 * v) << 8) | clamp(y + 1.772 * u);
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static void assertColor(int expected, int actual) {
+        assertEquals(expected >>> 24, actual >>> 24);
+        for (int shift = 0; shift < 24; shift += 8) {
+            int diff = Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF));
+            assertTrue("expected " + Integer.toHexString(expected) + " but was " + Integer.toHexString(actual),
+                    diff <= COLOR_TOLERANCE);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015-2018 Shi ChaoHui
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.sch.camera.manager;
+
+import org.junit.Test;
+
+import static android.hardware.camera2.CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_3;
+import static android.hardware.camera2.CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL;
+import static android.hardware.camera2.CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_FULL;
+import static android.hardware.camera2.CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+import static android.hardware.camera2.CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED;
+import static android.hardware.camera2.CameraCharacteristics.LENS_FACING_BACK;
+import static android.hardware.camera2.CameraCharacteristics.LENS_FACING_FRONT;
+import static com.sch.camera.manager.BackendSelector.BACKEND_CAMERA2;
+import static com.sch.camera.manager.BackendSelector.BACKEND_LEGACY;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created by StoneHui on 2018/9/12.
+ * <p>
+ * {@link BackendSelector} 的单元测试，只使用编译期常量，不依赖 Android 运行环境。
+ */
+public class BackendSelectorTest {
+
+    /**
+     * 硬件支持等级、是否有输出流配置、期望的后端。
+     */
+    private static final Object[][] BACKEND_TABLE = {
+            {INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY, true, BACKEND_LEGACY},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED, true, BACKEND_CAMERA2},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_FULL, true, BACKEND_CAMERA2},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_3, true, BACKEND_CAMERA2},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL, true, BACKEND_CAMERA2},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY, false, BACKEND_LEGACY},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED, false, BACKEND_LEGACY},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_FULL, false, BACKEND_LEGACY},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_3, false, BACKEND_LEGACY},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL, false, BACKEND_LEGACY},
+            // 未知的等级按 LEGACY 处理。
+            {99, true, BACKEND_LEGACY},
+    };
+
+    /**
+     * 硬件支持等级从低到高，同一行的等级相同。
+     */
+    private static final int[][] RANK_ORDER = {
+            {INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED, INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_FULL},
+            {INFO_SUPPORTED_HARDWARE_LEVEL_3},
+    };
+
+    @Test
+    public void chooseBackend() {
+        for (Object[] row : BACKEND_TABLE) {
+            int level = (Integer) row[0];
+            boolean hasStreamConfiguration = (Boolean) row[1];
+            assertEquals("level " + level + ", stream configuration " + hasStreamConfiguration,
+                    (int) (Integer) row[2], BackendSelector.chooseBackend(level, hasStreamConfiguration));
+        }
+    }
+
+    @Test
+    public void rank() {
+        for (int i = 0; i < RANK_ORDER.length; i++) {
+            for (int level : RANK_ORDER[i]) {
+                assertEquals("level " + level, i, BackendSelector.rank(level));
+            }
+        }
+    }
+
+    @Test
+    public void findPrimary_keepsFirstIdEvenIfLaterLensIsBetter() {
+        // 多摄手机上副摄的等级可能更高，仍然打开 id 最靠前的主摄。
+        int[] facings = {LENS_FACING_BACK, LENS_FACING_BACK, LENS_FACING_BACK};
+        assertEquals(0, BackendSelector.findPrimary(facings, LENS_FACING_BACK));
+    }
+
+    @Test
+    public void findPrimary_filtersByFacing() {
+        int[] facings = {LENS_FACING_FRONT, LENS_FACING_BACK, LENS_FACING_FRONT, LENS_FACING_BACK};
+        assertEquals(1, BackendSelector.findPrimary(facings, LENS_FACING_BACK));
+        assertEquals(0, BackendSelector.findPrimary(facings, LENS_FACING_FRONT));
+        assertEquals(-1, BackendSelector.findPrimary(new int[0], LENS_FACING_BACK));
+        assertEquals(-1, BackendSelector.findPrimary(new int[]{LENS_FACING_FRONT}, LENS_FACING_BACK));
+    }
+
+    @Test
+    public void primaryLevelDecidesBackend() {
+        // 主摄为 LEGACY 时即使副摄为 LEVEL_3 也使用旧 API，主摄为 LIMITED 及以上时使用 Camera2。
+        int[] facings = {LENS_FACING_BACK, LENS_FACING_BACK};
+        int[][] levelsTable = {
+                {INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY, INFO_SUPPORTED_HARDWARE_LEVEL_3},
+                {INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED, INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY},
+        };
+        int[] expected = {BACKEND_LEGACY, BACKEND_CAMERA2};
+        for (int i = 0; i < levelsTable.length; i++) {
+            int primary = BackendSelector.findPrimary(facings, LENS_FACING_BACK);
+            assertEquals("table row " + i, expected[i],
+                    BackendSelector.chooseBackend(levelsTable[i][primary], true));
+        }
+    }
+
+}